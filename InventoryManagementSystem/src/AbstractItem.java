@@ -3,14 +3,21 @@ import java.io.Serializable;
 /**
  * Abstract class that implements Item, Categorizable, Breakable, Perishable, and Sellable interfaces.
  * Provides common functionality such as getting item details and default implementations for category, breakable, perishable, and sellable attributes.
+ * The category is kept as a code of the shared SymbolTable, so items with the same category share one string
+ * and categories are compared by their codes. The description is kept as a Symbol of the shared table with weak
+ * entries, so items with the same description share one string, and descriptions nobody holds any more are dropped.
  */
 
 public abstract class AbstractItem implements Item, Categorizable, Breakable, Perishable, Sellable, Serializable {
     //This helps maintain compatibility across different versions of the program
     private static final long serialVersionUID = 1L;
+    private static final SymbolTable SYMBOLS = SymbolTable.shared();
+    private static final SymbolTable DESCRIPTIONS = SymbolTable.sharedWeak();
     private String name;
-    private String category;
-    private String description;
+    //Code of the category in SYMBOLS
+    private int category = SymbolTable.NONE;
+    //Entry of the description in DESCRIPTIONS, which the table keeps while an item holds it
+    private SymbolTable.Symbol description;
     private boolean breakable;
     private boolean perishable;
     private double price;
@@ -23,7 +30,7 @@ public abstract class AbstractItem implements Item, Categorizable, Breakable, Pe
     // Constructor to initialize item details
     public AbstractItem(String name, String description, boolean breakable, boolean perishable, double price) {
         this.name = name;
-        this.description = description;
+        this.description = DESCRIPTIONS.intern(description);
         this.breakable = breakable;
         this.perishable = perishable;
         this.price = price;
@@ -33,33 +40,63 @@ public abstract class AbstractItem implements Item, Categorizable, Breakable, Pe
         return this.name;
     }
 
+    public String getDescription() {
+        return this.description == null ? null : this.description.getValue();
+    }
+
+    /**
+     * Gets the code of the description in SymbolTable.sharedWeak, items with the same description have the same code.
+     * The code stays valid while the item is reachable.
+     */
+    public int getDescriptionCode() {
+        return this.description == null ? SymbolTable.NONE : this.description.getCode();
+    }
+
     @Override
     public String getItemDetails() {
-        return "Name of product: " + this.name + ", Category: " + this.category + ", Price: " + this.price;
+        return getItemDetails(this.price);
+    }
+
+    //Details with the given price instead of the current one
+    protected String getItemDetails(double price) {
+        return "Name of product: " + this.name + ", Category: " + getCategory() + ", Price: " + price;
     }
 
     @Override
     public double calculateValue(int quantity) {
-        return this.price * quantity;
+        return calculateValue(quantity, getPrice());
+    }
+
+    //Value with the given price instead of the current one
+    protected double calculateValue(int quantity, double price) {
+        return price * quantity;
     }
 
     @Override
     public void displayDescription() {
         System.out.println("Description of product " + this.name);
-        System.out.println(this.description);
+        System.out.println(getDescription());
     }
 
     //Checks if Category is already set and if it is throws an error
     @Override
     public void setCategory(String category) {
-        if (this.category != null) {
+        if (this.category != SymbolTable.NONE) {
             throw new UnsupportedOperationException("Category cannot be changed once set.");
         }
-        this.category = category;
+        this.category = SYMBOLS.encode(category);
     }
 
     @Override
     public String getCategory() {
+        return SYMBOLS.decode(this.category);
+    }
+
+    /**
+     * Gets the code of the category in the shared SymbolTable, SymbolTable.NONE if the item has no category.
+     * Categories which only differ in case have the same folded code, see SymbolTable.fold.
+     */
+    public int getCategoryCode() {
         return this.category;
     }
 
@@ -98,7 +135,19 @@ public abstract class AbstractItem implements Item, Categorizable, Breakable, Pe
             throw new IllegalArgumentException("Price can't be 0 or less!");
         }
 
+        beforePriceChange();
         this.price = price;
+        afterPriceChange();
+    }
+
+    // Called right before the price changes, subclasses can override it to observe price changes
+    protected void beforePriceChange() {
+
+    }
+
+    // Called right after the price changed
+    protected void afterPriceChange() {
+
     }
 
     @Override
@@ -0,0 +1,105 @@
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class representing the shopping carts of all sessions, keyed by session ID.
+ * A cart is created the first time its session uses it and is evicted once the session has been inactive
+ * for the idle timeout. Sessions only touch their own entry of a concurrent map, so they don't wait for each other.
+ */
+
+public final class CartRegistry {
+    private final ConcurrentHashMap<String, ShoppingCart> carts;
+    private final long idleTimeoutNanos;
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * Creates the registry and starts evicting idle carts in the background.
+     *
+     * @param idleTimeout How long a cart is kept after its session last used it.
+     * @throws IllegalArgumentException If the timeout is not positive.
+     */
+    public CartRegistry(Duration idleTimeout) {
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("Idle timeout must be positive.");
+        }
+
+        this.carts = new ConcurrentHashMap<>();
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cart-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        //Checking twice per timeout keeps a cart at most one and a half timeouts after its last use
+        long period = Math.max(this.idleTimeoutNanos / 2, TimeUnit.MILLISECONDS.toNanos(1));
+        this.evictor.scheduleAtFixedRate(this::evictIdleCarts, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the cart of a session, creating it if the session doesn't have one yet, and marks the session as active.
+     *
+     * @param sessionId The ID of the session.
+     */
+    public ShoppingCart getCart(String sessionId) {
+        //The cart is touched inside compute, so the eviction can't remove it between the lookup and the touch
+        return this.carts.compute(sessionId, (id, cart) -> {
+            if (cart == null) {
+                cart = new ShoppingCart();
+            }
+            cart.touch(System.nanoTime());
+            return cart;
+        });
+    }
+
+    /**
+     * Gets the cart of a session without creating one.
+     *
+     * @param sessionId The ID of the session.
+     * @return The cart, or null if the session doesn't have one.
+     */
+    public ShoppingCart findCart(String sessionId) {
+        return this.carts.computeIfPresent(sessionId, (id, cart) -> {
+            cart.touch(System.nanoTime());
+            return cart;
+        });
+    }
+
+    /**
+     * Removes the cart of a session, for example when the session ends.
+     *
+     * @param sessionId The ID of the session.
+     */
+    public void removeCart(String sessionId) {
+        this.carts.remove(sessionId);
+    }
+
+    /**
+     * Gets the number of sessions which currently have a cart.
+     */
+    public int size() {
+        return this.carts.size();
+    }
+
+    /**
+     * Removes the carts of all sessions which have been inactive for longer than the idle timeout.
+     */
+    public void evictIdleCarts() {
+        long now = System.nanoTime();
+        for (String sessionId : this.carts.keySet()) {
+            //Checked again inside computeIfPresent so a cart used in the meantime is kept
+            this.carts.computeIfPresent(sessionId,
+                    (id, cart) -> now - cart.getLastAccess() > this.idleTimeoutNanos ? null : cart);
+        }
+    }
+
+    /**
+     * Stops the background eviction.
+     */
+    public void close() {
+        this.evictor.shutdownNow();
+    }
+}
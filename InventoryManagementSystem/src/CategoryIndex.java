@@ -0,0 +1,73 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class representing a secondary index of the inventory by category.
+ * Maps every category, ignoring case, to the IDs of its items, so the items or the number of items
+ * of a category are found without going through the whole inventory.
+ * Categories are keyed by the code of their lower-case form in the shared SymbolTable, so no strings are compared.
+ * The InventoryManager keeps it up to date when items are added, removed or loaded.
+ */
+
+public final class CategoryIndex {
+    //Folded code of the category -> IDs of the items in it
+    private final ConcurrentHashMap<Integer, Set<Integer>> itemIDs;
+
+    public CategoryIndex() {
+        this.itemIDs = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Creates the index of a collection of items at once, for example after a load.
+     *
+     * @param items The items to index.
+     */
+    public CategoryIndex(Collection<? extends InventoryItem> items) {
+        this();
+        for (InventoryItem item : items) {
+            add(item);
+        }
+    }
+
+    public void add(InventoryItem item) {
+        if (item.getCategoryCode() == SymbolTable.NONE) {
+            return;
+        }
+        this.itemIDs.computeIfAbsent(SymbolTable.shared().fold(item.getCategoryCode()), category -> ConcurrentHashMap.newKeySet())
+                .add(item.getId());
+    }
+
+    public void remove(InventoryItem item) {
+        if (item.getCategoryCode() == SymbolTable.NONE) {
+            return;
+        }
+        //Emptied categories are kept, there are only a few of them and they are likely to be used again
+        Set<Integer> ids = this.itemIDs.get(SymbolTable.shared().fold(item.getCategoryCode()));
+        if (ids != null) {
+            ids.remove(item.getId());
+        }
+    }
+
+    /**
+     * Gets the IDs of the items in a category.
+     *
+     * @param category The category, case doesn't matter.
+     * @return Read-only set of the IDs which reflects later changes, empty if the category has no items.
+     */
+    public Set<Integer> getItemIDs(String category) {
+        Set<Integer> ids = this.itemIDs.get(SymbolTable.shared().lookupFolded(category));
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * Gets the number of items in a category.
+     *
+     * @param category The category, case doesn't matter.
+     */
+    public int count(String category) {
+        Set<Integer> ids = this.itemIDs.get(SymbolTable.shared().lookupFolded(category));
+        return ids == null ? 0 : ids.size();
+    }
+}
@@ -0,0 +1,89 @@
+import java.time.Duration;
+
+/**
+ * Class representing a circuit breaker in front of a payment provider.
+ * After a number of failures in a row the circuit opens and calls fail fast instead of waiting for a provider
+ * which is down. Once the open time has passed a single trial call is let through, its result closes the
+ * circuit again or keeps it open for another period.
+ */
+
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    //Volatile so isRejecting can be checked on every payment without taking the lock
+    private volatile State state;
+    private int consecutiveFailures;
+    private volatile long openedAt;
+
+    /**
+     * Creates a closed circuit breaker.
+     *
+     * @param failureThreshold The number of failures in a row which opens the circuit.
+     * @param openDuration     How long the circuit stays open before a trial call.
+     * @throws IllegalArgumentException If the threshold is less than 1 or the duration is negative.
+     */
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be at least 1.");
+        }
+        if (openDuration.isNegative()) {
+            throw new IllegalArgumentException("Open duration can't be negative.");
+        }
+
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.state = State.CLOSED;
+    }
+
+    /**
+     * Checks if a call may go to the provider. In the half-open state only the first caller gets through.
+     */
+    public synchronized boolean allowRequest() {
+        switch (this.state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - this.openedAt >= this.openNanos) {
+                    this.state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                //The trial call is still running
+                return false;
+        }
+    }
+
+    /**
+     * Checks without locking if calls are currently failed fast, either because the circuit is open
+     * or because a trial call is running.
+     */
+    public boolean isRejecting() {
+        State current = this.state;
+        return current == State.HALF_OPEN
+                || (current == State.OPEN && System.nanoTime() - this.openedAt < this.openNanos);
+    }
+
+    public synchronized void recordSuccess() {
+        this.consecutiveFailures = 0;
+        this.state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure() {
+        this.consecutiveFailures++;
+        if (this.state == State.HALF_OPEN || this.consecutiveFailures >= this.failureThreshold) {
+            this.state = State.OPEN;
+            this.openedAt = System.nanoTime();
+        }
+    }
+
+    public State getState() {
+        return this.state;
+    }
+}
@@ -0,0 +1,237 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Class representing a thread-safe map from int keys to objects with open addressing and linear probing,
+ * used for the main inventory store.
+ * Reads don't lock: a key is written after its value and read before it, so a reader that finds a key
+ * also sees its value. Writers are synchronized with each other.
+ * A removed key stays in its slot with a null value, so a reader's probe run never changes under it,
+ * and putting the key again reuses the slot. When used slots reach three quarters of the table, the live
+ * entries are copied into a new table which replaces the old one at once.
+ * Iterating the values is weakly consistent: values which are in the map during the whole iteration are returned,
+ * values added or removed meanwhile may or may not be.
+ */
+
+public class ConcurrentIntObjectMap<V> implements IntKeyedMap<V> {
+    //Marks an empty slot, so it can't be used as a key
+    private static final int FREE = Integer.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private static final class Table {
+        private final int[] keys;
+        private final Object[] values;
+
+        private Table(int capacity) {
+            this.keys = new int[capacity];
+            Arrays.fill(this.keys, FREE);
+            this.values = new Object[capacity];
+        }
+    }
+
+    private volatile Table table;
+    private volatile int size;
+    //Slots with a key, including removed ones. Only used by writers.
+    private int used;
+
+    public ConcurrentIntObjectMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Creates a map which holds the expected number of entries without growing.
+     */
+    public ConcurrentIntObjectMap(int expectedSize) {
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key == FREE) {
+            return null;
+        }
+
+        Table table = this.table;
+        int mask = table.keys.length - 1;
+        for (int slot = IntObjectMap.hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int found = (int) KEYS.getAcquire(table.keys, slot);
+            if (found == key) {
+                return (V) VALUES.getAcquire(table.values, slot);
+            }
+            if (found == FREE) {
+                return null;
+            }
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Sets the value of a key.
+     *
+     * @return The previous value, or null if the map didn't have the key.
+     * @throws IllegalArgumentException If the key is Integer.MIN_VALUE or the value is null.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V put(int key, V value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Key can't be " + FREE + ".");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Value can't be null.");
+        }
+
+        int slot = findSlot(this.table, key);
+        if (slot >= 0) {
+            V previous = (V) this.table.values[slot];
+            VALUES.setRelease(this.table.values, slot, value);
+            if (previous == null) {
+                this.size++;
+            }
+            return previous;
+        }
+
+        if (this.used + 1 > this.table.keys.length / 4 * 3) {
+            rehash();
+        }
+        Table table = this.table;
+        int mask = table.keys.length - 1;
+        slot = IntObjectMap.hash(key) & mask;
+        while (table.keys[slot] != FREE) {
+            slot = (slot + 1) & mask;
+        }
+        //The value first, so a reader which sees the key sees the value too
+        VALUES.setRelease(table.values, slot, value);
+        KEYS.setRelease(table.keys, slot, key);
+        this.used++;
+        this.size++;
+        return null;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @return The removed value, or null if the map didn't have the key.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V remove(int key) {
+        if (key == FREE) {
+            return null;
+        }
+
+        int slot = findSlot(this.table, key);
+        if (slot < 0 || this.table.values[slot] == null) {
+            return null;
+        }
+
+        V removed = (V) this.table.values[slot];
+        VALUES.setRelease(this.table.values, slot, null);
+        this.size--;
+        return removed;
+    }
+
+    public synchronized void clear() {
+        this.table = new Table(MIN_CAPACITY);
+        this.used = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Gets the values of the map. Iterating doesn't lock and is weakly consistent.
+     */
+    @Override
+    public Iterable<V> values() {
+        return () -> new Iterator<>() {
+            private final Table table = ConcurrentIntObjectMap.this.table;
+            private int slot = -1;
+            private V next = advance();
+
+            @SuppressWarnings("unchecked")
+            private V advance() {
+                while (++this.slot < this.table.values.length) {
+                    V value = (V) VALUES.getAcquire(this.table.values, this.slot);
+                    if (value != null) {
+                        return value;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public V next() {
+                if (this.next == null) {
+                    throw new NoSuchElementException();
+                }
+                V value = this.next;
+                this.next = advance();
+                return value;
+            }
+        };
+    }
+
+    //Returns the slot of the key, or -1 if it isn't in the table. The slot's value is null if the key was removed.
+    private static int findSlot(Table table, int key) {
+        int mask = table.keys.length - 1;
+        for (int slot = IntObjectMap.hash(key) & mask; table.keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (table.keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    //Copies the live entries into a new table, which is larger only if most used slots are live
+    private void rehash() {
+        Table old = this.table;
+        //Room for as many entries again, so rehashing stays rare
+        Table table = new Table(capacityFor((this.size + 1) * 2));
+        int mask = table.keys.length - 1;
+        for (int i = 0; i < old.keys.length; i++) {
+            Object value = old.values[i];
+            if (value != null) {
+                int slot = IntObjectMap.hash(old.keys[i]) & mask;
+                while (table.keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                table.keys[slot] = old.keys[i];
+                table.values[slot] = value;
+            }
+        }
+        //The volatile write publishes the filled table to readers
+        this.table = table;
+        this.used = this.size;
+    }
+
+    //Rehashed at three quarters used, so probe runs stay short
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity / 4 * 3 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
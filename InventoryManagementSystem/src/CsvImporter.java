@@ -0,0 +1,382 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Class representing the bulk importer for inventory CSV files in the format written by saveInventory
+ * (ItemID,Name,Quantity,Category,Price).
+ * The file is split into line-aligned chunks which are memory-mapped and parsed in parallel on a ForkJoinPool.
+ * Parsed chunks are merged into the InventoryManager in file order and in batches.
+ * Only a fixed number of chunks is in flight at a time, so the memory use doesn't depend on the file size.
+ * Rows that can't be imported are collected in an ImportReport instead of aborting the import.
+ */
+
+public class CsvImporter {
+    private static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int BATCH_SIZE = 10_000;
+
+    private final InventoryManager manager;
+    private final int parallelism;
+    private int chunkSize;
+    //The CSV has no columns for the subtype details, so imported items get these defaults
+    private LocalDate defaultWarranty;
+    private LocalDate defaultExpirationDate;
+    private double defaultWeight;
+    private String defaultDescription;
+
+    public CsvImporter(InventoryManager manager) {
+        this(manager, Runtime.getRuntime().availableProcessors());
+    }
+
+    public CsvImporter(InventoryManager manager, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+
+        this.manager = manager;
+        this.parallelism = parallelism;
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+        this.defaultWarranty = LocalDate.now().plusYears(1);
+        this.defaultExpirationDate = LocalDate.now().plusDays(30);
+        this.defaultWeight = 0;
+        this.defaultDescription = "";
+    }
+
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1024) {
+            throw new IllegalArgumentException("Chunk size must be at least 1024 bytes.");
+        }
+
+        this.chunkSize = chunkSize;
+    }
+
+    public void setDefaultWarranty(LocalDate defaultWarranty) {
+        this.defaultWarranty = defaultWarranty;
+    }
+
+    public void setDefaultExpirationDate(LocalDate defaultExpirationDate) {
+        this.defaultExpirationDate = defaultExpirationDate;
+    }
+
+    public void setDefaultWeight(double defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    public void setDefaultDescription(String defaultDescription) {
+        this.defaultDescription = defaultDescription;
+    }
+
+    /**
+     * Imports all rows from a CSV file into the inventory.
+     * Rows with an ID that is already in use are rejected, the existing item is kept.
+     *
+     * @param filename The name of the CSV file.
+     * @return Report with the number of imported rows and the reasons for rejected rows.
+     * @throws IOException If an I/O error occurs while reading the file.
+     */
+    public ImportReport importFile(String filename) throws IOException {
+        ImportReport report = new ImportReport();
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            long line = 1;
+            ArrayDeque<Future<ParsedChunk>> inFlight = new ArrayDeque<>();
+
+            while (start < size) {
+                long end = alignToLine(channel, Math.min(start + this.chunkSize, size), size);
+                final long chunkStart = start;
+                final long chunkEnd = end;
+                final boolean firstChunk = start == 0;
+
+                inFlight.add(pool.submit(() -> parseChunk(channel, chunkStart, chunkEnd, firstChunk)));
+                start = end;
+
+                //Two chunks per thread keep the pool busy while the oldest one is merged
+                if (inFlight.size() >= this.parallelism * 2) {
+                    line = merge(await(inFlight.poll()), line, report);
+                }
+            }
+
+            while (!inFlight.isEmpty()) {
+                line = merge(await(inFlight.poll()), line, report);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return report;
+    }
+
+    //Moves the position to the first byte after the next line break, so no line is split between two chunks
+    private static long alignToLine(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return size;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+
+        return size;
+    }
+
+    private static ParsedChunk await(Future<ParsedChunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import was interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Import failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private ParsedChunk parseChunk(FileChannel channel, long start, long end, boolean firstChunk) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        ParsedChunk chunk = new ParsedChunk();
+        int limit = buffer.limit();
+        int lineStart = 0;
+
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int next = lineEnd + 1;
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+
+            chunk.lineCount++;
+            boolean header = firstChunk && chunk.lineCount == 1 && startsWith(buffer, lineStart, lineEnd, "ItemID");
+            if (!header && lineEnd > lineStart) {
+                parseRow(buffer, lineStart, lineEnd, chunk);
+            }
+
+            lineStart = next;
+        }
+
+        return chunk;
+    }
+
+    //The name may contain commas because saveInventory doesn't quote it, so the ID is taken from the front
+    //and quantity, category and price from the back of the row
+    private static void parseRow(ByteBuffer buffer, int start, int end, ParsedChunk chunk) {
+        int firstComma = indexOf(buffer, start, end);
+        int priceComma = lastIndexOf(buffer, start, end);
+        int categoryComma = priceComma > start ? lastIndexOf(buffer, start, priceComma) : -1;
+        int quantityComma = categoryComma > start ? lastIndexOf(buffer, start, categoryComma) : -1;
+
+        if (firstComma < 0 || quantityComma <= firstComma) {
+            chunk.addError("Expected 5 columns: ItemID,Name,Quantity,Category,Price");
+            return;
+        }
+
+        try {
+            int id = parseInt(buffer, start, firstComma);
+            String name = decode(buffer, firstComma + 1, quantityComma);
+            int quantity = parseInt(buffer, quantityComma + 1, categoryComma);
+            String category = decode(buffer, categoryComma + 1, priceComma).trim();
+            double price = Double.parseDouble(decode(buffer, priceComma + 1, end));
+
+            if (id < 0) {
+                chunk.addError("Id can't be less than 0");
+            } else if (quantity < 0) {
+                chunk.addError("Quantity can't be less than 0.");
+            } else if (!(price > 0)) {
+                chunk.addError("Price can't be 0 or less!");
+            } else {
+                chunk.rows.add(new ParsedRow(chunk.lineCount, id, name, quantity, category, price));
+            }
+        } catch (NumberFormatException e) {
+            chunk.addError("Invalid number: " + e.getMessage());
+        }
+    }
+
+    //Builds the items of a parsed chunk and adds them to the inventory, returns the line number of the next chunk
+    private long merge(ParsedChunk chunk, long firstLine, ImportReport report) {
+        int errorIndex = 0;
+        ArrayList<InventoryItem> batch = new ArrayList<>(Math.min(BATCH_SIZE, chunk.rows.size()));
+
+        for (ParsedRow row : chunk.rows) {
+            //Parse errors are reported in line order together with the errors found while merging
+            while (errorIndex < chunk.errorLines.size() && chunk.errorLines.get(errorIndex) < row.line) {
+                report.addError(firstLine + chunk.errorLines.get(errorIndex) - 1, chunk.errorReasons.get(errorIndex));
+                errorIndex++;
+            }
+
+            try {
+                if (this.manager.getItem(row.id) != null) {
+                    report.addError(firstLine + row.line - 1, "Item with ID " + row.id + " is already in the inventory.");
+                    continue;
+                }
+
+                batch.add(createItem(row));
+                if (batch.size() == BATCH_SIZE) {
+                    this.manager.addItems(batch);
+                    report.addImported(batch.size());
+                    batch.clear();
+                }
+            } catch (IllegalArgumentException e) {
+                report.addError(firstLine + row.line - 1, e.getMessage());
+            }
+        }
+
+        while (errorIndex < chunk.errorLines.size()) {
+            report.addError(firstLine + chunk.errorLines.get(errorIndex) - 1, chunk.errorReasons.get(errorIndex));
+            errorIndex++;
+        }
+
+        if (!batch.isEmpty()) {
+            this.manager.addItems(batch);
+            report.addImported(batch.size());
+        }
+
+        return firstLine + chunk.lineCount;
+    }
+
+    private InventoryItem createItem(ParsedRow row) {
+        switch (row.category.toLowerCase()) {
+            case "electronics":
+                return new ElectronicsItem(row.name, row.id, row.quantity, this.defaultWarranty, this.defaultDescription, row.price);
+            case "grocery":
+                return new GroceryItem(row.name, row.id, row.quantity, this.defaultExpirationDate, this.defaultDescription, row.price);
+            case "fragile":
+                return new FragileItem(row.name, row.id, row.quantity, this.defaultWeight, this.defaultDescription, row.price);
+            default:
+                throw new IllegalArgumentException("Unknown category: " + row.category);
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer.get(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == ',') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int lastIndexOf(ByteBuffer buffer, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (buffer.get(i) == ',') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    //Parses a decimal int directly from the bytes without creating a String
+    private static int parseInt(ByteBuffer buffer, int start, int end) {
+        while (start < end && buffer.get(start) == ' ') {
+            start++;
+        }
+        while (end > start && buffer.get(end - 1) == ' ') {
+            end--;
+        }
+        if (start == end) {
+            throw new NumberFormatException("empty value");
+        }
+
+        boolean negative = buffer.get(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException(decode(buffer, start, end));
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(decode(buffer, start, end));
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw new NumberFormatException(decode(buffer, start, end));
+            }
+        }
+
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException(decode(buffer, start, end));
+        }
+
+        return (int) value;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //A row which passed parsing, the item is created when the chunk is merged
+    private static class ParsedRow {
+        private final int line;
+        private final int id;
+        private final String name;
+        private final int quantity;
+        private final String category;
+        private final double price;
+
+        private ParsedRow(int line, int id, String name, int quantity, String category, double price) {
+            this.line = line;
+            this.id = id;
+            this.name = name;
+            this.quantity = quantity;
+            this.category = category;
+            this.price = price;
+        }
+    }
+
+    //Result of parsing one chunk, line numbers are relative to the start of the chunk
+    private static class ParsedChunk {
+        private final ArrayList<ParsedRow> rows = new ArrayList<>();
+        private final ArrayList<Integer> errorLines = new ArrayList<>();
+        private final ArrayList<String> errorReasons = new ArrayList<>();
+        private int lineCount;
+
+        private void addError(String reason) {
+            this.errorLines.add(this.lineCount);
+            this.errorReasons.add(reason);
+        }
+    }
+}
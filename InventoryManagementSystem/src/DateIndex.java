@@ -0,0 +1,148 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Class representing a secondary index of the inventory by a date of the items, like the expiration date of groceries
+ * or the end of the warranty of electronics.
+ * Items are kept in one bucket per day, ordered by day, so the items of a range of days are found by visiting
+ * only those buckets, and the buckets of past days can be taken out at once without going through the whole inventory.
+ * Items without the date are not indexed.
+ * Items taken out with their bucket are put back by restock once they have stock again, so they are taken again.
+ * The InventoryManager keeps it up to date when items are added, removed or loaded and after every stock change.
+ * All methods except restock are synchronized.
+ */
+
+public final class DateIndex {
+    //Epoch day -> IDs of the items with that date
+    private final TreeMap<Long, HashSet<Integer>> buckets;
+    private final Function<InventoryItem, LocalDate> dateOf;
+    //Last day whose bucket was taken, items with a date up to it are only in the index if they were put back
+    private volatile long takenUntil = Long.MIN_VALUE;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param dateOf Gets the date an item is indexed by, or null if the item has none.
+     */
+    public DateIndex(Function<InventoryItem, LocalDate> dateOf) {
+        this.buckets = new TreeMap<>();
+        this.dateOf = dateOf;
+    }
+
+    /**
+     * Creates the index of a collection of items at once, for example after a load.
+     *
+     * @param dateOf Gets the date an item is indexed by, or null if the item has none.
+     * @param items  The items to index.
+     */
+    public DateIndex(Function<InventoryItem, LocalDate> dateOf, Collection<? extends InventoryItem> items) {
+        this(dateOf);
+        for (InventoryItem item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Creates the index of the expiration dates of the grocery items.
+     */
+    public static DateIndex ofExpirations(Collection<? extends InventoryItem> items) {
+        return new DateIndex(DateIndex::expirationOf, items);
+    }
+
+    /**
+     * Creates the index of the warranties of the electronics items.
+     */
+    public static DateIndex ofWarranties(Collection<? extends InventoryItem> items) {
+        return new DateIndex(DateIndex::warrantyOf, items);
+    }
+
+    public synchronized void add(InventoryItem item) {
+        LocalDate date = this.dateOf.apply(item);
+        if (date == null) {
+            return;
+        }
+        this.buckets.computeIfAbsent(date.toEpochDay(), day -> new HashSet<>()).add(item.getId());
+    }
+
+    public synchronized void remove(InventoryItem item) {
+        LocalDate date = this.dateOf.apply(item);
+        if (date == null) {
+            return;
+        }
+
+        HashSet<Integer> ids = this.buckets.get(date.toEpochDay());
+        if (ids != null && ids.remove(item.getId()) && ids.isEmpty()) {
+            this.buckets.remove(date.toEpochDay());
+        }
+    }
+
+    /**
+     * Gets the IDs of the items with a date in a range of days.
+     *
+     * @param from The first day of the range.
+     * @param to   The last day of the range.
+     * @return ArrayList with the IDs ordered by date.
+     */
+    public synchronized ArrayList<Integer> getItemIDs(LocalDate from, LocalDate to) {
+        ArrayList<Integer> ids = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return ids;
+        }
+
+        for (HashSet<Integer> bucket : this.buckets.subMap(from.toEpochDay(), true, to.toEpochDay(), true).values()) {
+            ids.addAll(bucket);
+        }
+        return ids;
+    }
+
+    /**
+     * Takes the items with a date up to a day out of the index.
+     *
+     * @param day The last day whose items are taken.
+     * @return ArrayList with the IDs of the taken items ordered by date.
+     */
+    public synchronized ArrayList<Integer> takeItemIDsUntil(LocalDate day) {
+        //Set before the buckets are taken, see restock
+        this.takenUntil = Math.max(this.takenUntil, day.toEpochDay());
+        ArrayList<Integer> ids = new ArrayList<>();
+        Map.Entry<Long, HashSet<Integer>> bucket;
+        while ((bucket = this.buckets.firstEntry()) != null && bucket.getKey() <= day.toEpochDay()) {
+            ids.addAll(bucket.getValue());
+            this.buckets.pollFirstEntry();
+        }
+        return ids;
+    }
+
+    /**
+     * Puts an item back whose bucket was taken, if it has stock again, so the next takeItemIDsUntil takes it again.
+     * Called after every stock change, items with a later date or without stock are passed over without locking.
+     * The stock is changed before takenUntil is read here and takenUntil is set before the stock is read by whoever
+     * uses the taken IDs, so stock added while its bucket is taken is seen by one of them.
+     */
+    public void restock(InventoryItem item) {
+        LocalDate date = this.dateOf.apply(item);
+        if (date != null && date.toEpochDay() <= this.takenUntil && item.getQuantity() > 0) {
+            add(item);
+        }
+    }
+
+    /**
+     * Gets the date an item is indexed by, or null if the item has none.
+     */
+    public LocalDate dateOf(InventoryItem item) {
+        return this.dateOf.apply(item);
+    }
+
+    private static LocalDate expirationOf(InventoryItem item) {
+        return item instanceof GroceryItem grocery ? grocery.getExpirationLocalDate() : null;
+    }
+
+    private static LocalDate warrantyOf(InventoryItem item) {
+        return item instanceof ElectronicsItem electronics ? electronics.getWarrantyDate() : null;
+    }
+}
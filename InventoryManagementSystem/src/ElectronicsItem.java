@@ -16,18 +16,27 @@ public class ElectronicsItem extends InventoryItem{
 
     //We set the category to Electronics and breakable to true because this type of item can break and perishable to false
     public ElectronicsItem(String name, int id, int quantity, String warranty, String description, double price) {
+        this(name, id, quantity, LocalDate.parse(warranty), description, price);
+    }
+
+    // Constructor used when the warranty is already parsed, for example when loading a snapshot
+    ElectronicsItem(String name, int id, int quantity, LocalDate warranty, String description, double price) {
         super(name, id, quantity, description, true, false, price);
         setCategory("Electronics");
-        this.warranty = LocalDate.parse(warranty);
+        this.warranty = warranty;
     }
 
     public String getWarranty() {
         return this.warranty.toString();
     }
 
+    public LocalDate getWarrantyDate() {
+        return this.warranty;
+    }
+
     @Override
-    public String getItemDetails() {
-        return super.getItemDetails() + ", Warranty: " + this.warranty;
+    protected String getTypeDetails() {
+        return ", Warranty: " + this.warranty;
     }
 
     @Override
@@ -35,8 +44,8 @@ public class ElectronicsItem extends InventoryItem{
         if (isBreakable()) {
             LocalDate today = LocalDate.now();
 
-            if (today.getMonth() == this.warranty.getMonth() && today.getYear() == this.warranty.getYear() &&
-                    today.getDayOfYear() == this.warranty.getDayOfYear()) {
+            //The warranty covers every day up to and including its last day
+            if (!today.isAfter(this.warranty)) {
                 System.out.println("Product is broken but is still in warranty so it will be replaced!");
             } else {
                 System.out.println("Product is broken and out of warranty! No replacement!");
@@ -22,13 +22,13 @@ public class FragileItem  extends InventoryItem {
     }
 
     @Override
-    public double calculateValue(int quantity) {
-        return getPrice() * quantity + 5 * this.weight; // Adding extra cost based on weight
+    protected double calculateValue(int quantity, double price) {
+        return price * quantity + 5 * this.weight; // Adding extra cost based on weight
     }
 
     @Override
-    public String getItemDetails() {
-        return super.getItemDetails() + ", Weight: " + this.weight;
+    protected String getTypeDetails() {
+        return ", Weight: " + this.weight;
     }
 
     @Override
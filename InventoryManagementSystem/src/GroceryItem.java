@@ -14,32 +14,40 @@ public class GroceryItem extends InventoryItem {
     }
 
     public GroceryItem(String name, int id, int quantity, String expirationDate, String description, double price) {
+        this(name, id, quantity, LocalDate.parse(expirationDate), description, price);
+    }
+
+    // Constructor used when the expiration date is already parsed, for example when loading a snapshot
+    GroceryItem(String name, int id, int quantity, LocalDate expirationDate, String description, double price) {
         super(name, id, quantity, description, false, true, price);
         setCategory("Grocery");
-        this.expirationDate = LocalDate.parse(expirationDate);
+        this.expirationDate = expirationDate;
     }
 
     public String getExpirationDate() {
         return expirationDate.toString();
     }
 
+    public LocalDate getExpirationLocalDate() {
+        return this.expirationDate;
+    }
+
     @Override
-    public double calculateValue(int quantity) {
-        return getPrice() * quantity * 0.9; // 10% discount for groceries.
+    protected double calculateValue(int quantity, double price) {
+        return price * quantity * 0.9; // 10% discount for groceries.
     }
 
     @Override
-    public String getItemDetails() {
-        return super.getItemDetails() + ", Expiration Date: " + this.expirationDate;
+    protected String getTypeDetails() {
+        return ", Expiration Date: " + this.expirationDate;
     }
 
-    //Check if today is the same day as expirationDate or and if it is that means the product is expired.
+    //Check if today is the expirationDate or later and if it is that means the product is expired.
     @Override
     public void handleExpiration() {
         LocalDate today = LocalDate.now();
 
-        if (today.getMonth() == this.expirationDate.getMonth() && today.getYear() == this.expirationDate.getYear() &&
-                today.getDayOfYear() == this.expirationDate.getDayOfYear()) {
+        if (!today.isBefore(this.expirationDate)) {
             System.out.println("Product is expired");
         } else {
             System.out.println("Product is still good to use!");
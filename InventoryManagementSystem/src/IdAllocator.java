@@ -0,0 +1,321 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class representing the set of IDs in use, for items or for orders.
+ * IDs are split into chunks of 65536 IDs by their upper 16 bits, like a roaring bitmap. A chunk keeps the lower
+ * 16 bits of its IDs in a sorted array while it holds at most 4096 of them, and in an 8 KB bitmap above that,
+ * so sparse IDs take 2 bytes each and dense ones a single bit. A bitmap turns back into an array once half
+ * of its IDs are released, so a chunk at the limit doesn't convert on every claim and release.
+ * Every chunk counts its IDs, so the search for a free ID skips full chunks without looking at their bits.
+ * Claims and releases within a chunk are serialized by the lock of the chunk, while isInUse and the search for
+ * a free ID read its current array or bitmap without locking. Only IDs from 0 to Integer.MAX_VALUE can be used.
+ */
+
+public class IdAllocator {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int WORDS_PER_CHUNK = CHUNK_SIZE / Long.SIZE;
+    private static final int CHUNK_COUNT = 1 << (Integer.SIZE - 1 - CHUNK_BITS);
+    //Above this many IDs an array would take more than the 8 KB of a bitmap
+    private static final int ARRAY_MAX = 4096;
+    private static final int ARRAY_MIN = ARRAY_MAX / 2;
+    private static final char[] EMPTY = new char[0];
+
+    private static final class Chunk {
+        //A sorted char[] of the lower bits of the IDs, or an AtomicLongArray bitmap once there are more than
+        //ARRAY_MAX. Only replaced under the lock of the chunk, a published array is never changed.
+        private volatile Object container = EMPTY;
+        private volatile int used;
+
+        private synchronized boolean add(char low) {
+            Object container = this.container;
+            if (container instanceof AtomicLongArray bitmap) {
+                long bits = bitmap.get(low >>> 6);
+                if ((bits & (1L << low)) != 0) {
+                    return false;
+                }
+                bitmap.set(low >>> 6, bits | (1L << low));
+            } else {
+                char[] array = (char[]) container;
+                int index = Arrays.binarySearch(array, low);
+                if (index >= 0) {
+                    return false;
+                }
+                index = -index - 1;
+
+                if (array.length == ARRAY_MAX) {
+                    AtomicLongArray bitmap = toBitmap(array);
+                    bitmap.set(low >>> 6, bitmap.get(low >>> 6) | (1L << low));
+                    this.container = bitmap;
+                } else {
+                    char[] grown = new char[array.length + 1];
+                    System.arraycopy(array, 0, grown, 0, index);
+                    grown[index] = low;
+                    System.arraycopy(array, index, grown, index + 1, array.length - index);
+                    this.container = grown;
+                }
+            }
+            this.used++;
+            return true;
+        }
+
+        private synchronized boolean remove(char low) {
+            Object container = this.container;
+            if (container instanceof AtomicLongArray bitmap) {
+                long bits = bitmap.get(low >>> 6);
+                if ((bits & (1L << low)) == 0) {
+                    return false;
+                }
+                bitmap.set(low >>> 6, bits & ~(1L << low));
+                this.used--;
+                if (this.used == ARRAY_MIN) {
+                    this.container = toArray(bitmap, ARRAY_MIN);
+                }
+            } else {
+                char[] array = (char[]) container;
+                int index = Arrays.binarySearch(array, low);
+                if (index < 0) {
+                    return false;
+                }
+
+                char[] shrunk = array.length == 1 ? EMPTY : new char[array.length - 1];
+                System.arraycopy(array, 0, shrunk, 0, index);
+                System.arraycopy(array, index + 1, shrunk, index, array.length - index - 1);
+                this.container = shrunk;
+                this.used--;
+            }
+            return true;
+        }
+
+        private boolean contains(char low) {
+            Object container = this.container;
+            if (container instanceof AtomicLongArray bitmap) {
+                return (bitmap.get(low >>> 6) & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch((char[]) container, low) >= 0;
+        }
+
+        //Lowest free offset in the chunk from the given one up, -1 if there is none
+        private int nextFree(int offset) {
+            Object container = this.container;
+            if (container instanceof AtomicLongArray bitmap) {
+                for (int word = offset >>> 6; word < WORDS_PER_CHUNK; word++) {
+                    long free = ~bitmap.get(word);
+                    //In the first word only the bits from the offset up count
+                    if (word == offset >>> 6) {
+                        free &= -1L << offset;
+                    }
+                    if (free != 0) {
+                        return (word << 6) + Long.numberOfTrailingZeros(free);
+                    }
+                }
+                return -1;
+            }
+
+            //The IDs from the offset up are free unless they follow each other in the array
+            char[] array = (char[]) container;
+            int index = Arrays.binarySearch(array, (char) offset);
+            int free = offset;
+            if (index >= 0) {
+                while (index < array.length && array[index] == free) {
+                    index++;
+                    free++;
+                }
+            }
+            return free < CHUNK_SIZE ? free : -1;
+        }
+
+        private static AtomicLongArray toBitmap(char[] array) {
+            long[] words = new long[WORDS_PER_CHUNK];
+            for (char low : array) {
+                words[low >>> 6] |= 1L << low;
+            }
+            return new AtomicLongArray(words);
+        }
+
+        private static char[] toArray(AtomicLongArray bitmap, int count) {
+            char[] array = new char[count];
+            int index = 0;
+            for (int word = 0; word < WORDS_PER_CHUNK; word++) {
+                long bits = bitmap.get(word);
+                while (bits != 0) {
+                    array[index++] = (char) ((word << 6) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            return array;
+        }
+    }
+
+    private final AtomicReferenceArray<Chunk> chunks;
+    private final AtomicInteger size;
+    //Highest ID ever claimed, -1 before the first claim
+    private final AtomicInteger highest;
+
+    public IdAllocator() {
+        this.chunks = new AtomicReferenceArray<>(CHUNK_COUNT);
+        this.size = new AtomicInteger();
+        this.highest = new AtomicInteger(-1);
+    }
+
+    /**
+     * Claims an ID.
+     *
+     * @param id The ID.
+     * @return True if the ID was claimed, false if it already was in use.
+     * @throws IllegalArgumentException If the ID is less than 0.
+     */
+    public boolean claim(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Id can't be less than 0");
+        }
+
+        if (!getOrCreateChunk(id >>> CHUNK_BITS).add((char) id)) {
+            return false;
+        }
+
+        this.size.incrementAndGet();
+        if (id > this.highest.get()) {
+            this.highest.accumulateAndGet(id, Math::max);
+        }
+        return true;
+    }
+
+    /**
+     * Releases an ID so it can be claimed again.
+     *
+     * @param id The ID.
+     * @return True if the ID was in use.
+     */
+    public boolean release(int id) {
+        if (id < 0) {
+            return false;
+        }
+
+        Chunk chunk = this.chunks.get(id >>> CHUNK_BITS);
+        if (chunk == null || !chunk.remove((char) id)) {
+            return false;
+        }
+
+        this.size.decrementAndGet();
+        return true;
+    }
+
+    public boolean isInUse(int id) {
+        if (id < 0) {
+            return false;
+        }
+
+        Chunk chunk = this.chunks.get(id >>> CHUNK_BITS);
+        return chunk != null && chunk.contains((char) id);
+    }
+
+    /**
+     * Gets the number of IDs in use.
+     */
+    public int size() {
+        return this.size.get();
+    }
+
+    /**
+     * Finds the lowest ID which is not in use, without claiming it.
+     *
+     * @param from The lowest ID to consider.
+     * @return The free ID, or -1 if all IDs from the given one up are in use.
+     */
+    public int nextFree(int from) {
+        int id = Math.max(from, 0);
+        for (int index = id >>> CHUNK_BITS; index < CHUNK_COUNT; index++) {
+            int chunkStart = index << CHUNK_BITS;
+            Chunk chunk = this.chunks.get(index);
+            if (chunk == null) {
+                return Math.max(id, chunkStart);
+            }
+            if (chunk.used == CHUNK_SIZE) {
+                continue;
+            }
+
+            int free = chunk.nextFree(Math.max(id, chunkStart) - chunkStart);
+            if (free >= 0) {
+                return chunkStart + free;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Claims the lowest free ID from the given one up.
+     *
+     * @param from The lowest ID to consider.
+     * @return The claimed ID.
+     * @throws IllegalStateException If all IDs from the given one up are in use.
+     */
+    public int claimNext(int from) {
+        int id = from;
+        while (true) {
+            id = nextFree(id);
+            if (id < 0) {
+                throw new IllegalStateException("No free IDs left from " + from + ".");
+            }
+            if (claim(id)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Claims a block of consecutive IDs above every ID claimed so far, for IDs which are handed out in sequence
+     * and never reused, like order IDs.
+     *
+     * @param count The number of IDs in the block.
+     * @return The first ID of the block.
+     * @throws IllegalStateException If there are not enough IDs left above the highest claimed one.
+     */
+    public synchronized int claimBlock(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Block size must be greater than 0.");
+        }
+
+        int start = this.highest.get() + 1;
+        while (true) {
+            if (start < 0 || start > Integer.MAX_VALUE - count) {
+                throw new IllegalStateException("No block of " + count + " free IDs left.");
+            }
+
+            //Another thread may claim a single ID inside the block meanwhile, then the block starts after it
+            int claimed = 0;
+            while (claimed < count && claim(start + claimed)) {
+                claimed++;
+            }
+            if (claimed == count) {
+                return start;
+            }
+            for (int i = 0; i < claimed; i++) {
+                release(start + i);
+            }
+            start += claimed + 1;
+        }
+    }
+
+    /**
+     * Gets the highest ID ever claimed, -1 if none was.
+     */
+    public int getHighest() {
+        return this.highest.get();
+    }
+
+    private Chunk getOrCreateChunk(int index) {
+        Chunk chunk = this.chunks.get(index);
+        if (chunk == null) {
+            Chunk created = new Chunk();
+            chunk = this.chunks.compareAndExchange(index, null, created);
+            if (chunk == null) {
+                chunk = created;
+            }
+        }
+        return chunk;
+    }
+}
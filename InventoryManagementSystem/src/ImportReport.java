@@ -0,0 +1,62 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class representing the result of a CSV bulk import.
+ * Counts the imported and rejected rows and keeps the reasons for the first rejected rows.
+ */
+
+public class ImportReport {
+    //Only the first errors are kept so a file full of bad rows can't exhaust the memory
+    private static final int MAX_ERRORS = 1000;
+
+    private long importedCount;
+    private long rejectedCount;
+    private final ArrayList<String> errors;
+
+    public ImportReport() {
+        this.errors = new ArrayList<>();
+    }
+
+    /**
+     * Counts imported rows.
+     *
+     * @param count The number of rows that were added to the inventory.
+     */
+    public void addImported(long count) {
+        this.importedCount += count;
+    }
+
+    /**
+     * Records a row that was not imported.
+     *
+     * @param line   The line number of the row in the file.
+     * @param reason Why the row was rejected.
+     */
+    public void addError(long line, String reason) {
+        this.rejectedCount++;
+        if (this.errors.size() < MAX_ERRORS) {
+            this.errors.add("Line " + line + ": " + reason);
+        }
+    }
+
+    public long getImportedCount() {
+        return this.importedCount;
+    }
+
+    public long getRejectedCount() {
+        return this.rejectedCount;
+    }
+
+    /**
+     * Gets the reasons for the first rejected rows.
+     */
+    public List<String> getErrors() {
+        return this.errors;
+    }
+
+    @Override
+    public String toString() {
+        return "Imported rows: " + this.importedCount + ", Rejected rows: " + this.rejectedCount;
+    }
+}
@@ -0,0 +1,281 @@
+import java.util.Arrays;
+
+/**
+ * Class representing a map from int keys to int values, used for the items of carts and orders like ItemID -> quantity.
+ * Keys and values are stored in two primitive arrays with open addressing, so nothing is boxed
+ * and adding or looking up an item doesn't allocate.
+ * Entries are visited without allocating either, through forEach or through the slots:
+ * <pre>
+ * for (int slot = map.first(); slot >= 0; slot = map.next(slot)) {
+ *     int itemID = map.keyAt(slot);
+ *     int quantity = map.valueAt(slot);
+ * }
+ * </pre>
+ * Not thread safe, the owner synchronizes access.
+ */
+
+public class IntIntMap {
+    //Marks an empty slot, so it can't be used as a key
+    private static final int FREE = Integer.MIN_VALUE;
+    private static final int MIN_CAPACITY = 8;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * Called with every key and value of the map.
+     */
+    public interface EntryConsumer {
+        void accept(int key, int value);
+    }
+
+    public IntIntMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Creates a map which holds the expected number of entries without growing.
+     */
+    public IntIntMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        //Kept at most half full, so probe runs stay short
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new int[capacity];
+        Arrays.fill(this.keys, FREE);
+        this.values = new int[capacity];
+    }
+
+    /**
+     * Creates a copy of a map.
+     */
+    public IntIntMap(IntIntMap other) {
+        this.keys = other.keys.clone();
+        this.values = other.values.clone();
+        this.size = other.size;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return findSlot(key) >= 0;
+    }
+
+    /**
+     * Gets the value of a key, or the default value if the map doesn't have the key.
+     */
+    public int getOrDefault(int key, int defaultValue) {
+        int slot = findSlot(key);
+        return slot < 0 ? defaultValue : this.values[slot];
+    }
+
+    /**
+     * Sets the value of a key.
+     *
+     * @throws IllegalArgumentException If the key is Integer.MIN_VALUE.
+     */
+    public void put(int key, int value) {
+        int slot = insertSlot(key);
+        this.values[slot] = value;
+    }
+
+    /**
+     * Adds to the value of a key, a missing key starts from 0.
+     *
+     * @return The value after adding.
+     * @throws IllegalArgumentException If the key is Integer.MIN_VALUE.
+     */
+    public int add(int key, int amount) {
+        int slot = insertSlot(key);
+        this.values[slot] += amount;
+        return this.values[slot];
+    }
+
+    /**
+     * Adds all entries of another map to the values of this one.
+     */
+    public void addAll(IntIntMap other) {
+        for (int slot = other.first(); slot >= 0; slot = other.next(slot)) {
+            add(other.keyAt(slot), other.valueAt(slot));
+        }
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @return True if the key was in the map.
+     */
+    public boolean remove(int key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return false;
+        }
+
+        deleteSlot(slot);
+        this.size--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, FREE);
+        this.size = 0;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = first(); slot >= 0; slot = next(slot)) {
+            consumer.accept(this.keys[slot], this.values[slot]);
+        }
+    }
+
+    /**
+     * Gets the first used slot, or -1 if the map is empty.
+     */
+    public int first() {
+        return next(-1);
+    }
+
+    /**
+     * Gets the used slot after the given one, or -1 if there isn't one.
+     * The map must not change while its slots are visited.
+     */
+    public int next(int slot) {
+        for (int i = slot + 1; i < this.keys.length; i++) {
+            if (this.keys[i] != FREE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int keyAt(int slot) {
+        return this.keys[slot];
+    }
+
+    public int valueAt(int slot) {
+        return this.values[slot];
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof IntIntMap map) || map.size != this.size) {
+            return false;
+        }
+        for (int slot = first(); slot >= 0; slot = next(slot)) {
+            int otherSlot = map.findSlot(this.keys[slot]);
+            if (otherSlot < 0 || map.values[otherSlot] != this.values[slot]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int slot = first(); slot >= 0; slot = next(slot)) {
+            hash += this.keys[slot] ^ this.values[slot];
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int slot = first(); slot >= 0; slot = next(slot)) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(this.keys[slot]).append('=').append(this.values[slot]);
+        }
+        return sb.append('}').toString();
+    }
+
+    //Returns the slot of the key, or -1 if it isn't in the map
+    private int findSlot(int key) {
+        if (key == FREE) {
+            return -1;
+        }
+
+        int mask = this.keys.length - 1;
+        for (int slot = hash(key) & mask; this.keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (this.keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    //Returns the slot of the key, claiming a free slot with value 0 if it isn't in the map yet
+    private int insertSlot(int key) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Key can't be " + FREE + ".");
+        }
+
+        int mask = this.keys.length - 1;
+        int slot = hash(key) & mask;
+        while (this.keys[slot] != FREE) {
+            if (this.keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if ((this.size + 1) * 2 > this.keys.length) {
+            grow();
+            return insertSlot(key);
+        }
+        this.keys[slot] = key;
+        this.values[slot] = 0;
+        this.size++;
+        return slot;
+    }
+
+    //Empties a slot and moves later entries of the same probe run back, so lookups never need tombstones
+    private void deleteSlot(int slot) {
+        int mask = this.keys.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (this.keys[next] != FREE) {
+            int home = hash(this.keys[next]) & mask;
+            //The entry may move into the hole only if the hole lies between its home slot and its current slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                this.keys[hole] = this.keys[next];
+                this.values[hole] = this.values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.keys[hole] = FREE;
+    }
+
+    private void grow() {
+        int[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+
+        this.keys = new int[oldKeys.length * 2];
+        Arrays.fill(this.keys, FREE);
+        this.values = new int[oldValues.length * 2];
+        this.size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                this.values[insertSlot(oldKeys[i])] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Interface for maps with primitive int keys, so looking up a key doesn't box it.
+ * Implemented by IntObjectMap for data owned by one thread and by ConcurrentIntObjectMap for shared data.
+ */
+public interface IntKeyedMap<V> {
+    /**
+     * Gets the value of a key, or null if the map doesn't have the key.
+     */
+    V get(int key);
+
+    int size();
+
+    boolean isEmpty();
+
+    /**
+     * Gets the values of the map, to be used in a for-each loop.
+     */
+    Iterable<V> values();
+}
@@ -0,0 +1,209 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Class representing a map from int keys to objects with open addressing and linear probing.
+ * The keys are kept in a primitive array next to an array of the values, so an entry costs two array
+ * elements instead of a map entry and a boxed key, and a lookup reads the keys array without following pointers.
+ * Not thread safe, used for data owned by a single thread. ConcurrentIntObjectMap is the variant for shared data.
+ */
+
+public class IntObjectMap<V> implements IntKeyedMap<V> {
+    //Marks an empty slot, so it can't be used as a key
+    private static final int FREE = Integer.MIN_VALUE;
+    private static final int MIN_CAPACITY = 8;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    public IntObjectMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Creates a map which holds the expected number of entries without growing.
+     */
+    public IntObjectMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        //Grown at three quarters full, so probe runs stay short
+        while (capacity / 4 * 3 < expectedSize) {
+            capacity <<= 1;
+        }
+        this.keys = new int[capacity];
+        Arrays.fill(this.keys, FREE);
+        this.values = new Object[capacity];
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = findSlot(key);
+        return slot < 0 ? null : (V) this.values[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return findSlot(key) >= 0;
+    }
+
+    /**
+     * Sets the value of a key.
+     *
+     * @return The previous value, or null if the map didn't have the key.
+     * @throws IllegalArgumentException If the key is Integer.MIN_VALUE or the value is null.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Key can't be " + FREE + ".");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Value can't be null.");
+        }
+
+        int mask = this.keys.length - 1;
+        int slot = hash(key) & mask;
+        while (this.keys[slot] != FREE) {
+            if (this.keys[slot] == key) {
+                V previous = (V) this.values[slot];
+                this.values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (this.size + 1 > this.keys.length / 4 * 3) {
+            grow();
+            return put(key, value);
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.size++;
+        return null;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @return The removed value, or null if the map didn't have the key.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+
+        V removed = (V) this.values[slot];
+        deleteSlot(slot);
+        this.size--;
+        return removed;
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, FREE);
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+
+    /**
+     * Gets the values of the map. The map must not change while they are iterated.
+     */
+    @Override
+    public Iterable<V> values() {
+        return () -> new Iterator<>() {
+            private int slot = nextSlot(-1);
+
+            @Override
+            public boolean hasNext() {
+                return this.slot >= 0;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V next() {
+                if (this.slot < 0) {
+                    throw new NoSuchElementException();
+                }
+                V value = (V) values[this.slot];
+                this.slot = nextSlot(this.slot);
+                return value;
+            }
+        };
+    }
+
+    private int nextSlot(int slot) {
+        for (int i = slot + 1; i < this.keys.length; i++) {
+            if (this.keys[i] != FREE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //Returns the slot of the key, or -1 if it isn't in the map
+    private int findSlot(int key) {
+        if (key == FREE) {
+            return -1;
+        }
+
+        int mask = this.keys.length - 1;
+        for (int slot = hash(key) & mask; this.keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (this.keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    //Empties a slot and moves later entries of the same probe run back, so lookups never need tombstones
+    private void deleteSlot(int slot) {
+        int mask = this.keys.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (this.keys[next] != FREE) {
+            int home = hash(this.keys[next]) & mask;
+            //The entry may move into the hole only if the hole lies between its home slot and its current slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                this.keys[hole] = this.keys[next];
+                this.values[hole] = this.values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.keys[hole] = FREE;
+        this.values[hole] = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void grow() {
+        int[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+
+        this.keys = new int[oldKeys.length * 2];
+        Arrays.fill(this.keys, FREE);
+        this.values = new Object[oldValues.length * 2];
+        this.size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                put(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+
+    static int hash(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,345 @@
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class representing running totals of the inventory and the open orders: the value and units in stock,
+ * the value and units of every category, and the number and total of the open orders.
+ * The totals are updated by the difference an event makes instead of being summed up again, so reading them is O(1).
+ * Every item remembers what it last added to the totals, an update reads the current quantity and price of the item
+ * and adds the difference. Updates of one item lock only that item, the totals are LongAdders,
+ * so stock changes of different items don't wait for each other. Only the totals of the category are updated,
+ * the totals of the inventory are the sum over the few categories.
+ * Values are kept in fixed point with 4 decimals, so adding and taking back the same amounts always ends
+ * where it started, without rounding errors piling up.
+ * Open orders are valued like Order.calculateOrderTotal, with the current prices of their items.
+ * The InventoryManager keeps it up to date when items are added, removed or loaded, after every stock or price change
+ * and when orders are opened or closed.
+ */
+
+public class InventoryAggregates {
+    //Values are stored as value * SCALE
+    private static final double SCALE = 10_000;
+
+    //Running totals of one category
+    private static final class CategoryTotals {
+        //The category as it was first seen
+        private final String name;
+        private final LongAdder value = new LongAdder();
+        private final LongAdder units = new LongAdder();
+
+        private CategoryTotals(String name) {
+            this.name = name;
+        }
+    }
+
+    //What one item ID adds to the totals, guarded by its own monitor. The item keeps a reference to it.
+    static final class Entry {
+        private final int itemID;
+        //The item in the inventory with the ID, null if there is none
+        private InventoryItem item;
+        //Folded code of the category the item was counted in and its totals
+        private int categoryCode = SymbolTable.NONE;
+        private CategoryTotals category;
+        private long value;
+        private int units;
+        //Units and lines of the open orders for the ID, counted also while the item isn't in the inventory
+        private long orderedUnits;
+        private int orderLines;
+        private long orderValue;
+        //Set when the entry was dropped from the map, updates then start over with the new entry
+        private boolean retired;
+
+        private Entry(int itemID) {
+            this.itemID = itemID;
+        }
+    }
+
+    //ItemID -> entry, for every item in the inventory and every item of an open order
+    private final ConcurrentIntObjectMap<Entry> entries;
+    //Folded SymbolTable code of the category -> totals, and the totals of the items without a category
+    private final ConcurrentHashMap<Integer, CategoryTotals> categories;
+    private final CategoryTotals uncategorized;
+    private final LongAdder openOrders;
+    private final LongAdder openOrderValue;
+
+    public InventoryAggregates() {
+        this.entries = new ConcurrentIntObjectMap<>();
+        this.categories = new ConcurrentHashMap<>();
+        this.uncategorized = new CategoryTotals(null);
+        this.openOrders = new LongAdder();
+        this.openOrderValue = new LongAdder();
+    }
+
+    /**
+     * Adds an item to the totals, an item with the same ID is replaced.
+     */
+    public void add(InventoryItem item) {
+        while (true) {
+            Entry entry = entry(item.getId());
+            synchronized (entry) {
+                if (!entry.retired) {
+                    entry.item = item;
+                    //Set before the stock is read, so a change is seen either by the refresh or by its update
+                    item.setAggregatesEntry(entry);
+                    refresh(entry);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes an item out of the totals. Open orders for it don't count it anymore, like Order.calculateOrderTotal.
+     */
+    public void remove(InventoryItem item) {
+        Entry entry = this.entries.get(item.getId());
+        if (entry == null) {
+            return;
+        }
+
+        synchronized (entry) {
+            if (entry.item != item) {
+                return;
+            }
+            entry.item = null;
+            refresh(entry);
+        }
+        retireIfUnused(item.getId());
+    }
+
+    /**
+     * Brings the totals in line with the current quantity and price of an item after they changed.
+     * Items which were replaced or removed are ignored.
+     */
+    public void update(InventoryItem item) {
+        Entry entry = item.getAggregatesEntry();
+        if (entry == null) {
+            return;
+        }
+
+        synchronized (entry) {
+            if (entry.item == item && !entry.retired) {
+                refresh(entry);
+            }
+        }
+    }
+
+    /**
+     * Counts an order which was opened.
+     */
+    public void orderOpened(Order order) {
+        addOrder(order, 1);
+        this.openOrders.increment();
+    }
+
+    /**
+     * Stops counting an order which was processed or removed.
+     */
+    public void orderClosed(Order order) {
+        addOrder(order, -1);
+        this.openOrders.decrement();
+    }
+
+    /**
+     * Starts over with a new collection of items, for example after a load. Open orders are kept.
+     * No other method may run at the same time.
+     */
+    public void reset(Collection<? extends InventoryItem> items) {
+        for (Entry entry : this.entries.values()) {
+            synchronized (entry) {
+                entry.item = null;
+                refresh(entry);
+            }
+        }
+        for (InventoryItem item : items) {
+            add(item);
+        }
+        for (Entry entry : this.entries.values()) {
+            if (entry.item == null) {
+                retireIfUnused(entry.itemID);
+            }
+        }
+    }
+
+    /**
+     * Gets the value of all items in stock, like the sum of calculateValue of every item with its quantity.
+     */
+    public double getTotalValue() {
+        long total = this.uncategorized.value.sum();
+        for (CategoryTotals totals : this.categories.values()) {
+            total += totals.value.sum();
+        }
+        return total / SCALE;
+    }
+
+    /**
+     * Gets the number of units of all items in stock.
+     */
+    public long getTotalUnits() {
+        long total = this.uncategorized.units.sum();
+        for (CategoryTotals totals : this.categories.values()) {
+            total += totals.units.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Gets the value of the items in stock in a category.
+     *
+     * @param category The category, case doesn't matter.
+     */
+    public double getCategoryValue(String category) {
+        CategoryTotals totals = this.categories.get(SymbolTable.shared().lookupFolded(category));
+        return totals == null ? 0 : totals.value.sum() / SCALE;
+    }
+
+    /**
+     * Gets the number of units in stock in a category.
+     *
+     * @param category The category, case doesn't matter.
+     */
+    public long getCategoryUnits(String category) {
+        CategoryTotals totals = this.categories.get(SymbolTable.shared().lookupFolded(category));
+        return totals == null ? 0 : totals.units.sum();
+    }
+
+    /**
+     * Gets the value of the items in stock of every category.
+     *
+     * @return Map like category -> value, with every category that ever had items.
+     */
+    public LinkedHashMap<String, Double> getValueByCategory() {
+        LinkedHashMap<String, Double> valueByCategory = new LinkedHashMap<>();
+        for (CategoryTotals totals : this.categories.values()) {
+            valueByCategory.put(totals.name, totals.value.sum() / SCALE);
+        }
+        return valueByCategory;
+    }
+
+    /**
+     * Gets the number of open orders.
+     */
+    public long getOpenOrderCount() {
+        return this.openOrders.sum();
+    }
+
+    /**
+     * Gets the total of all open orders with the current prices of their items.
+     */
+    public double getOpenOrderTotal() {
+        return this.openOrderValue.sum() / SCALE;
+    }
+
+    //Adds or takes back the lines of an order, sign is 1 or -1
+    private void addOrder(Order order, int sign) {
+        IntIntMap itemsOrdered = order.getItemsOrdered();
+        for (int slot = itemsOrdered.first(); slot >= 0; slot = itemsOrdered.next(slot)) {
+            int itemID = itemsOrdered.keyAt(slot);
+            while (true) {
+                Entry entry = entry(itemID);
+                synchronized (entry) {
+                    if (!entry.retired) {
+                        entry.orderedUnits += (long) sign * itemsOrdered.valueAt(slot);
+                        entry.orderLines += sign;
+                        refresh(entry);
+                        break;
+                    }
+                }
+            }
+            if (sign < 0) {
+                retireIfUnused(itemID);
+            }
+        }
+    }
+
+    //Recalculates what the entry adds to the totals and adds the difference, the caller holds the entry's monitor
+    private void refresh(Entry entry) {
+        InventoryItem item = entry.item;
+        long value = 0;
+        int units = 0;
+        long orderValue = 0;
+        int categoryCode = SymbolTable.NONE;
+        CategoryTotals category = this.uncategorized;
+        if (item != null) {
+            units = item.getQuantity();
+            value = toFixed(item.calculateValue(units));
+            if (entry.orderLines != 0) {
+                //calculateValue is a price per unit plus a part which doesn't depend on the quantity, like the
+                //surcharge of fragile items, which every order line pays once
+                double fixedPart = item.calculateValue(0);
+                double perUnit = item.calculateValue(1) - fixedPart;
+                orderValue = toFixed(perUnit * entry.orderedUnits + fixedPart * entry.orderLines);
+            }
+            //The category of an item is set once, so it is looked up only when the folded code differs
+            categoryCode = SymbolTable.shared().fold(item.getCategoryCode());
+            if (categoryCode == entry.categoryCode && entry.category != null) {
+                category = entry.category;
+            } else if (categoryCode != SymbolTable.NONE) {
+                category = this.categories.computeIfAbsent(categoryCode, code -> new CategoryTotals(item.getCategory()));
+            }
+        }
+
+        if (category != entry.category) {
+            if (entry.category != null) {
+                addIfChanged(entry.category.value, -entry.value);
+                addIfChanged(entry.category.units, -entry.units);
+            }
+            addIfChanged(category.value, value);
+            addIfChanged(category.units, units);
+        } else {
+            addIfChanged(category.value, value - entry.value);
+            addIfChanged(category.units, units - entry.units);
+        }
+        addIfChanged(this.openOrderValue, orderValue - entry.orderValue);
+
+        entry.categoryCode = categoryCode;
+        entry.category = category;
+        entry.value = value;
+        entry.units = units;
+        entry.orderValue = orderValue;
+    }
+
+    private Entry entry(int itemID) {
+        Entry entry = this.entries.get(itemID);
+        if (entry != null) {
+            return entry;
+        }
+
+        synchronized (this.entries) {
+            entry = this.entries.get(itemID);
+            if (entry == null) {
+                entry = new Entry(itemID);
+                this.entries.put(itemID, entry);
+            }
+            return entry;
+        }
+    }
+
+    //Drops the entry of an ID which has neither an item nor open orders
+    private void retireIfUnused(int itemID) {
+        synchronized (this.entries) {
+            Entry entry = this.entries.get(itemID);
+            if (entry == null) {
+                return;
+            }
+            synchronized (entry) {
+                if (entry.item == null && entry.orderLines == 0) {
+                    entry.retired = true;
+                    this.entries.remove(itemID);
+                }
+            }
+        }
+    }
+
+    private static void addIfChanged(LongAdder adder, long difference) {
+        if (difference != 0) {
+            adder.add(difference);
+        }
+    }
+
+    private static long toFixed(double value) {
+        return Math.round(value * SCALE);
+    }
+}
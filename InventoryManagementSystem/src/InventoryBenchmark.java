@@ -0,0 +1,754 @@
+import java.lang.ref.Reference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Command-line benchmarks for the parts of the inventory management system which are built for throughput.
+ * Every benchmark compares the new path with the simple one it replaces on the same data.
+ *
+ * Usage: java InventoryBenchmark [benchmark...]
+ * Without arguments all benchmarks are run. Available benchmarks: payments, views, orders, itemmap, valuation, search,
+ * watermark, symbols, aggregates
+ * The itemmap and search benchmarks keep 10 million entries, run them with a heap of about 3 GB (-Xmx3g),
+ * the symbols benchmark needs about 4 GB (-Xmx4g).
+ */
+
+public class InventoryBenchmark {
+    public static void main(String[] args) {
+        List<String> benchmarks = args.length > 0 ? List.of(args) : List.of("payments", "views", "orders", "itemmap", "valuation", "search",
+                "watermark", "symbols", "aggregates");
+
+        for (String benchmark : benchmarks) {
+            switch (benchmark) {
+                case "payments":
+                    benchmarkPayments();
+                    break;
+                case "views":
+                    benchmarkViews();
+                    break;
+                case "orders":
+                    benchmarkOrders();
+                    break;
+                case "itemmap":
+                    benchmarkItemMap();
+                    break;
+                case "valuation":
+                    benchmarkValuation();
+                    break;
+                case "search":
+                    benchmarkSearch();
+                    break;
+                case "watermark":
+                    benchmarkWatermark();
+                    break;
+                case "symbols":
+                    benchmarkSymbols();
+                    break;
+                case "aggregates":
+                    benchmarkAggregates();
+                    break;
+                default:
+                    System.out.println("Unknown benchmark: " + benchmark);
+                    break;
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Charges payments against a simulated provider with a 20 ms round trip, once one at a time on the caller's
+     * thread and once through the batched asynchronous channel.
+     */
+    private static void benchmarkPayments() {
+        System.out.println("Payments, simulated provider with 20 ms round trip, 0-5 ms jitter and 1% failed batches");
+        Duration roundTrip = Duration.ofMillis(20);
+        Duration perPayment = Duration.ofNanos(20_000);
+        Duration jitter = Duration.ofMillis(5);
+
+        SimulatedPaymentGateway sequentialGateway = new SimulatedPaymentGateway(roundTrip, perPayment, jitter, 0.01);
+        int sequentialPayments = 100;
+        long failed = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < sequentialPayments; i++) {
+            PaymentRequest payment = new PaymentRequest(PaymentType.CREDIT_CARD, "4000000000000000", 10);
+            try {
+                sequentialGateway.charge(payment.getType(), List.of(payment)).join();
+            } catch (RuntimeException e) {
+                failed++;
+            }
+        }
+        report("One at a time", sequentialPayments, failed, System.nanoTime() - start);
+
+        SimulatedPaymentGateway batchedGateway = new SimulatedPaymentGateway(roundTrip, perPayment, jitter, 0.01);
+        PaymentProcessor processor = new PaymentProcessor(batchedGateway);
+        processor.addPaymentMethod("4000000000000000", "123");
+        processor.addPaymentMethod("buyer@example.com", "secret");
+
+        int batchedPayments = 20_000;
+        AtomicLong batchedFailed = new AtomicLong();
+        List<CompletableFuture<Void>> results = new ArrayList<>(batchedPayments);
+        start = System.nanoTime();
+        for (int i = 0; i < batchedPayments; i++) {
+            CompletableFuture<Void> payment = i % 2 == 0
+                    ? processor.processCreditCardPaymentAsync(10, "4000000000000000", "123")
+                    : processor.processPayPalPaymentAsync(10, "buyer@example.com", "secret");
+            results.add(payment.exceptionally(error -> {
+                batchedFailed.incrementAndGet();
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(results.toArray(CompletableFuture<?>[]::new)).join();
+        report("Batched async", batchedPayments, batchedFailed.get(), System.nanoTime() - start);
+        System.out.println("  Provider calls: " + batchedGateway.getBatches() + " successful batches");
+
+        processor.close();
+    }
+
+    /**
+     * Totals all open orders through a view after every price was raised, compared with the totals of the live
+     * inventory from before the raise. Half of the items are groceries and fragile items, so the totals only match
+     * if the view values every line like calculateValue, with the grocery discount and the fragile surcharge.
+     *
+     * @throws IllegalStateException If a total of the view differs from the one the order was charged with.
+     */
+    private static void benchmarkViews() {
+        int itemCount = 100_000;
+        int orderCount = 100_000;
+        int passes = 10;
+        System.out.println("Order totals of a view, " + String.format("%,d", itemCount) + " items, "
+                + String.format("%,d", orderCount) + " open orders, prices raised after the view was opened");
+
+        InventoryManager manager = new InventoryManager();
+        ArrayList<InventoryItem> items = new ArrayList<>(itemCount);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int id = 1; id <= itemCount; id++) {
+            InventoryItem.releaseId(id);
+            double price = 1 + random.nextInt(1000) / 10.0;
+            switch (id % 3) {
+                case 0:
+                    items.add(new GroceryItem("Item " + id, id, 1_000_000, "2030-01-01", "", price));
+                    break;
+                case 1:
+                    items.add(new FragileItem("Item " + id, id, 1_000_000, 0.5 + random.nextInt(50) / 10.0, "", price));
+                    break;
+                default:
+                    items.add(new ElectronicsItem("Item " + id, id, 1_000_000, "2030-01-01", "", price));
+                    break;
+            }
+        }
+        manager.addItems(items);
+        manager.runBatch(() -> {
+            for (int i = 0; i < orderCount; i++) {
+                IntIntMap order = new IntIntMap(2);
+                order.put(1 + random.nextInt(itemCount), 1 + random.nextInt(3));
+                order.put(1 + random.nextInt(itemCount), 1 + random.nextInt(3));
+                manager.placeOrder(order);
+            }
+        });
+
+        ArrayList<Order> orders = manager.getOrders();
+        double[] charged = new double[orders.size()];
+        long start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            for (int i = 0; i < charged.length; i++) {
+                charged[i] = manager.calculateOrderTotal(orders.get(i));
+            }
+        }
+        double liveMillis = (System.nanoTime() - start) / 1e6 / passes;
+
+        double viewMillis;
+        try (InventoryView view = manager.openView()) {
+            for (InventoryItem item : items) {
+                item.setPrice(item.getPrice() * 1.1);
+            }
+
+            double[] totals = new double[charged.length];
+            start = System.nanoTime();
+            for (int pass = 0; pass < passes; pass++) {
+                for (int i = 0; i < totals.length; i++) {
+                    totals[i] = view.calculateOrderTotal(orders.get(i));
+                }
+            }
+            viewMillis = (System.nanoTime() - start) / 1e6 / passes;
+
+            for (int i = 0; i < totals.length; i++) {
+                if (Math.abs(totals[i] - charged[i]) > 1e-9) {
+                    throw new IllegalStateException("View total of order " + orders.get(i).getOrderID() + " is "
+                            + totals[i] + " but it was charged " + charged[i]);
+                }
+            }
+        }
+
+        System.out.printf("  %-28s %14s%n", "Totals of all open orders", "ms");
+        System.out.printf("  %-28s %,14.2f%n", "Live inventory", liveMillis);
+        System.out.printf("  %-28s %,14.2f%n", "View after the price raise", viewMillis);
+        System.out.println("  All " + String.format("%,d", charged.length) + " totals of the view match the charged ones");
+    }
+
+    /**
+     * Looks up, removes and replaces a random open order, with a growing number of open orders.
+     * Compares the queue the open orders were kept in, which is searched from the start, with the OrderStore.
+     */
+    private static void benchmarkOrders() {
+        System.out.println("Open orders, find + remove + add of a random order");
+        System.out.printf("  %12s %16s %16s%n", "Open orders", "Queue ns/op", "OrderStore ns/op");
+
+        for (int openOrders = 1_000; openOrders <= 1_000_000; openOrders *= 10) {
+            //The queue is searched twice per operation, fewer operations keep the large sizes short
+            double queueNanos = measureQueue(openOrders, Math.max(100, 20_000_000 / openOrders));
+            double storeNanos = measureOrderStore(openOrders, 1_000_000);
+            System.out.printf("  %,12d %,16.0f %,16.0f%n", openOrders, queueNanos, storeNanos);
+        }
+    }
+
+    private static double measureQueue(int openOrders, int operations) {
+        ConcurrentLinkedQueue<Order> orders = new ConcurrentLinkedQueue<>();
+        for (int id = 1; id <= openOrders; id++) {
+            orders.add(newOrder(id));
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int nextID = openOrders + 1;
+        int[] openIDs = openOrderIDs(openOrders);
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            int index = random.nextInt(openOrders);
+            Order found = null;
+            for (Order order : orders) {
+                if (order.getOrderID() == openIDs[index]) {
+                    found = order;
+                    break;
+                }
+            }
+            orders.remove(found);
+            orders.add(newOrder(nextID));
+            openIDs[index] = nextID++;
+        }
+        return (System.nanoTime() - start) / (double) operations;
+    }
+
+    private static double measureOrderStore(int openOrders, int operations) {
+        OrderStore orders = new OrderStore();
+        for (int id = 1; id <= openOrders; id++) {
+            orders.add(newOrder(id));
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int nextID = openOrders + 1;
+        int[] openIDs = openOrderIDs(openOrders);
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            int index = random.nextInt(openOrders);
+            orders.remove(orders.get(openIDs[index]));
+            orders.add(newOrder(nextID));
+            openIDs[index] = nextID++;
+        }
+        return (System.nanoTime() - start) / (double) operations;
+    }
+
+    private static int[] openOrderIDs(int openOrders) {
+        int[] ids = new int[openOrders];
+        for (int i = 0; i < openOrders; i++) {
+            ids[i] = i + 1;
+        }
+        return ids;
+    }
+
+    /**
+     * Maps 10 million consecutive item IDs, like the inventory store does, once in a ConcurrentHashMap and once
+     * in a ConcurrentIntObjectMap, and compares the heap each map takes and the time of a random lookup.
+     * Every ID maps to the same value, so only the memory of the map itself is counted.
+     */
+    private static void benchmarkItemMap() {
+        int entries = 10_000_000;
+        int lookups = 20_000_000;
+        System.out.println("Item store, " + String.format("%,d", entries) + " items, random lookups by ID");
+        System.out.printf("  %-24s %14s %14s%n", "Map", "Bytes/entry", "Lookup ns/op");
+
+        Object value = new Object();
+        long before = usedHeap();
+        ConcurrentHashMap<Integer, Object> boxedMap = new ConcurrentHashMap<>(entries);
+        for (int id = 1; id <= entries; id++) {
+            boxedMap.put(id, value);
+        }
+        double boxedBytes = (usedHeap() - before) / (double) entries;
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            if (boxedMap.get(random.nextInt(entries) + 1) != null) {
+                found++;
+            }
+        }
+        double boxedNanos = (System.nanoTime() - start) / (double) lookups;
+        System.out.printf("  %-24s %,14.1f %,14.1f%n", "ConcurrentHashMap", boxedBytes, boxedNanos);
+        boxedMap = null;
+
+        before = usedHeap();
+        ConcurrentIntObjectMap<Object> intMap = new ConcurrentIntObjectMap<>(entries);
+        for (int id = 1; id <= entries; id++) {
+            intMap.put(id, value);
+        }
+        double intBytes = (usedHeap() - before) / (double) entries;
+
+        start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            if (intMap.get(random.nextInt(entries) + 1) != null) {
+                found++;
+            }
+        }
+        double intNanos = (System.nanoTime() - start) / (double) lookups;
+        System.out.printf("  %-24s %,14.1f %,14.1f%n", "ConcurrentIntObjectMap", intBytes, intNanos);
+
+        //Using the result keeps the lookups from being optimized away
+        if (found != 2L * lookups) {
+            System.out.println("  Missing entries: " + (2L * lookups - found));
+        }
+    }
+
+    /**
+     * Values 1 million items of all types and finds the ones low on stock, once by going through the item objects
+     * in the inventory store, like InventoryManager does without columns, and once through ItemColumns.
+     */
+    private static void benchmarkValuation() {
+        int itemCount = 1_000_000;
+        int passes = 50;
+        System.out.println("Valuation, " + String.format("%,d", itemCount) + " items of 4 types, " + passes + " passes");
+        System.out.printf("  %-16s %16s %16s%n", "Store", "Value ms/pass", "Low stock ms/pass");
+
+        ConcurrentIntObjectMap<InventoryItem> store = new ConcurrentIntObjectMap<>(itemCount);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int id = 1; id <= itemCount; id++) {
+            InventoryItem.releaseId(id);
+            int quantity = random.nextInt(100);
+            double price = 1 + random.nextInt(1000) / 10.0;
+            switch (id % 4) {
+                case 0:
+                    store.put(id, new ElectronicsItem("Item " + id, id, quantity, "2030-01-01", "", price));
+                    break;
+                case 1:
+                    store.put(id, new GroceryItem("Item " + id, id, quantity, "2030-01-01", "", price));
+                    break;
+                case 2:
+                    store.put(id, new FragileItem("Item " + id, id, quantity, random.nextInt(10), "", price));
+                    break;
+                default:
+                    InventoryItem item = new InventoryItem("Item " + id, id, quantity, "", false, false, price);
+                    item.setCategory("Tools");
+                    store.put(id, item);
+                    break;
+            }
+        }
+        ItemColumns columns = new ItemColumns();
+        for (InventoryItem item : store.values()) {
+            columns.add(item);
+        }
+
+        double objectTotal = 0;
+        long start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            objectTotal = 0;
+            for (InventoryItem item : store.values()) {
+                objectTotal += item.calculateValue(item.getQuantity());
+            }
+        }
+        double objectValueMillis = (System.nanoTime() - start) / 1e6 / passes;
+
+        int objectLowStock = 0;
+        start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            objectLowStock = 0;
+            for (InventoryItem item : store.values()) {
+                if (item.getQuantity() < 10) {
+                    objectLowStock++;
+                }
+            }
+        }
+        double objectLowStockMillis = (System.nanoTime() - start) / 1e6 / passes;
+
+        double columnTotal = 0;
+        start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            columnTotal = columns.getTotalValue();
+        }
+        double columnValueMillis = (System.nanoTime() - start) / 1e6 / passes;
+
+        int columnLowStock = 0;
+        start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            columnLowStock = columns.getLowStockItemIDs(10).length;
+        }
+        double columnLowStockMillis = (System.nanoTime() - start) / 1e6 / passes;
+
+        System.out.printf("  %-16s %,16.2f %,16.2f%n", "Item objects", objectValueMillis, objectLowStockMillis);
+        System.out.printf("  %-16s %,16.2f %,16.2f%n", "ItemColumns", columnValueMillis, columnLowStockMillis);
+        //Both sides must agree, the sums differ only in rounding because they add in a different order
+        System.out.printf("  Totals %,.2f and %,.2f, low stock %,d and %,d%n", objectTotal, columnTotal, objectLowStock, columnLowStock);
+
+        for (int id = 1; id <= itemCount; id++) {
+            InventoryItem.releaseId(id);
+        }
+    }
+
+    /**
+     * Indexes the names and descriptions of 10 million items in a TextIndex and searches them.
+     * Names are two words and a model number, descriptions four words, from a vocabulary of about 50,000 words.
+     */
+    private static void benchmarkSearch() {
+        int itemCount = 10_000_000;
+        int queries = 1_000;
+        String[] words = searchVocabulary();
+        System.out.println("Full-text search, " + String.format("%,d", itemCount) + " items, "
+                + String.format("%,d", words.length) + " words");
+
+        long before = usedHeap();
+        TextIndex index = new TextIndex();
+        long start = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int id = 1; id <= itemCount; id++) {
+            String name = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                    + " m" + random.nextInt(100_000);
+            String description = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)] + " "
+                    + words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)];
+            index.add(id, name, description);
+        }
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+        double megabytes = (usedHeap() - before) / 1e6;
+        System.out.printf("  Build %.1f s, %,.0f MB, %,d tokens%n", buildSeconds, megabytes, index.getTokenCount());
+
+        System.out.printf("  %-24s %12s %12s%n", "Query", "Avg ms", "Avg results");
+        String[] kinds = {"one word", "two words", "3-letter prefix", "word and prefix"};
+        for (String kind : kinds) {
+            long results = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                String word = words[random.nextInt(words.length)];
+                String other = words[random.nextInt(words.length)];
+                String query;
+                switch (kind) {
+                    case "one word":
+                        query = word;
+                        break;
+                    case "two words":
+                        query = word + " " + other;
+                        break;
+                    case "3-letter prefix":
+                        query = word.substring(0, 3);
+                        break;
+                    default:
+                        query = word + " " + other.substring(0, 3);
+                        break;
+                }
+                results += index.search(query, 20).length;
+            }
+            double millis = (System.nanoTime() - start) / 1e6 / queries;
+            System.out.printf("  %-24s %,12.3f %,12.1f%n", kind, millis, results / (double) queries);
+        }
+    }
+
+    /**
+     * Takes and puts back stock of random items, the way orders and restocks do, once without the low-stock check,
+     * once with every item watched but above its threshold and once with every item below it.
+     * Run with one thread and with one thread per core.
+     */
+    private static void benchmarkWatermark() {
+        int itemCount = 100_000;
+        int operations = 10_000_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("Low-stock check, " + String.format("%,d", itemCount) + " items, "
+                + String.format("%,d", operations) + " stock changes per thread");
+        System.out.printf("  %-20s %16s %16s%n", "Items", "ns/change 1 thr", "ns/change " + cores + " thr");
+
+        InventoryItem[] items = new InventoryItem[itemCount];
+        for (int id = 1; id <= itemCount; id++) {
+            InventoryItem.releaseId(id);
+            items[id - 1] = new InventoryItem("Item " + id, id, 1_000_000, "", false, false, 1.0);
+        }
+
+        String[] cases = {"Not checked", "Above threshold", "Below threshold"};
+        for (String name : cases) {
+            ReorderQueue queue = new ReorderQueue();
+            boolean checked = !name.equals("Not checked");
+            //Like InventoryManager, which checks after every change that took effect
+            ItemChangeListener listener = new ItemChangeListener() {
+                @Override
+                public void beforeItemChange(InventoryItem item) {
+
+                }
+
+                @Override
+                public void afterItemChange(InventoryItem item) {
+                    if (checked) {
+                        queue.check(item);
+                    }
+                }
+            };
+            int threshold = name.equals("Below threshold") ? 2_000_000 : 10;
+            for (InventoryItem item : items) {
+                item.setChangeListener(listener);
+                if (checked) {
+                    queue.setItemThreshold(item, threshold);
+                }
+            }
+
+            //Warm-up, so the first case isn't measured while it is compiled
+            measureStockChanges(items, operations / 10, 1);
+            double single = measureStockChanges(items, operations, 1);
+            double parallel = measureStockChanges(items, operations, cores);
+            System.out.printf("  %-20s %,16.1f %,16.1f%n", name, single, parallel);
+        }
+
+        for (InventoryItem item : items) {
+            item.setChangeListener(null);
+            InventoryItem.releaseId(item.getId());
+        }
+    }
+
+    //Average nanoseconds per stock change of one thread
+    private static double measureStockChanges(InventoryItem[] items, int operations, int threadCount) {
+        List<Thread> threads = new ArrayList<>();
+        AtomicLong nanos = new AtomicLong();
+        for (int t = 0; t < threadCount; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long start = System.nanoTime();
+                for (int i = 0; i < operations; i += 2) {
+                    InventoryItem item = items[random.nextInt(items.length)];
+                    item.tryDecrement(1);
+                    item.increment(1);
+                }
+                nanos.addAndGet(System.nanoTime() - start);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return nanos.get() / (double) threadCount / operations;
+    }
+
+    /**
+     * Creates 10 million items whose categories and descriptions come from 20 categories and 1,000 descriptions,
+     * every item with its own copy of the strings like items parsed from requests or files.
+     * Measures the heap while the copies are kept, like the items did before they stored SymbolTable codes,
+     * and after they are dropped. Then counts the items of a category by comparing strings and by comparing codes.
+     * Last drops the items and checks that the table with weak entries let go of the descriptions.
+     */
+    private static void benchmarkSymbols() {
+        int itemCount = 10_000_000;
+        String[] categories = new String[20];
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = "Category " + i;
+        }
+        String[] descriptions = new String[1_000];
+        for (int i = 0; i < descriptions.length; i++) {
+            descriptions[i] = "Standard description of product line number " + i;
+        }
+        System.out.println("Symbol table, " + String.format("%,d", itemCount) + " items, " + categories.length
+                + " categories, " + String.format("%,d", descriptions.length) + " descriptions");
+
+        long before = usedHeap();
+        InventoryItem[] items = new InventoryItem[itemCount];
+        String[] categoryCopies = new String[itemCount];
+        String[] descriptionCopies = new String[itemCount];
+        for (int id = 0; id < itemCount; id++) {
+            InventoryItem.releaseId(id);
+            descriptionCopies[id] = new String(descriptions[id % descriptions.length].toCharArray());
+            categoryCopies[id] = new String(categories[id % categories.length].toCharArray());
+            items[id] = new InventoryItem("Item " + id, id, 10, descriptionCopies[id], false, false, 1.0);
+            items[id].setCategory(categoryCopies[id]);
+        }
+        long withCopies = usedHeap() - before;
+        //Otherwise the compiled loop may treat the copies as dead before they are measured
+        Reference.reachabilityFence(categoryCopies);
+        Reference.reachabilityFence(descriptionCopies);
+        categoryCopies = null;
+        descriptionCopies = null;
+        long encoded = usedHeap() - before;
+        System.out.printf("  %-24s %,10.0f MB %,10.1f bytes/item%n", "Own strings per item", withCopies / 1e6,
+                withCopies / (double) itemCount);
+        System.out.printf("  %-24s %,10.0f MB %,10.1f bytes/item%n", "SymbolTable codes", encoded / 1e6,
+                encoded / (double) itemCount);
+
+        String category = "CATEGORY 7";
+        int passes = 5;
+        int byString = 0;
+        long start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            byString = 0;
+            for (InventoryItem item : items) {
+                if (category.equalsIgnoreCase(item.getCategory())) {
+                    byString++;
+                }
+            }
+        }
+        double stringMillis = (System.nanoTime() - start) / 1e6 / passes;
+
+        int byCode = 0;
+        start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            byCode = 0;
+            int folded = SymbolTable.shared().lookupFolded(category);
+            for (InventoryItem item : items) {
+                if (SymbolTable.shared().fold(item.getCategoryCode()) == folded) {
+                    byCode++;
+                }
+            }
+        }
+        double codeMillis = (System.nanoTime() - start) / 1e6 / passes;
+        System.out.printf("  Category match, equalsIgnoreCase %,.1f ms, codes %,.1f ms, %,d and %,d items%n",
+                stringMillis, codeMillis, byString, byCode);
+
+        for (InventoryItem item : items) {
+            InventoryItem.releaseId(item.getId());
+        }
+        int withItems = SymbolTable.sharedWeak().size();
+        items = null;
+        usedHeap();
+        System.out.printf("  Description entries with the items %,d, after they are dropped %,d%n",
+                withItems, SymbolTable.sharedWeak().size());
+    }
+
+    /**
+     * Reads the total value and the value of one category of 1 million items, once by going through the items
+     * like InventoryManager did before and once from InventoryAggregates.
+     * Then takes and puts back stock of random items with and without updating the running totals.
+     */
+    private static void benchmarkAggregates() {
+        int itemCount = 1_000_000;
+        int passes = 20;
+        System.out.println("Running totals, " + String.format("%,d", itemCount) + " items");
+
+        ConcurrentIntObjectMap<InventoryItem> store = new ConcurrentIntObjectMap<>(itemCount);
+        CategoryIndex categoryIndex = new CategoryIndex();
+        InventoryAggregates aggregates = new InventoryAggregates();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int id = 1; id <= itemCount; id++) {
+            InventoryItem.releaseId(id);
+            InventoryItem item = id % 2 == 0
+                    ? new ElectronicsItem("Item " + id, id, random.nextInt(100), "2030-01-01", "", 1 + random.nextInt(1000) / 10.0)
+                    : new GroceryItem("Item " + id, id, random.nextInt(100), "2030-01-01", "", 1 + random.nextInt(1000) / 10.0);
+            store.put(id, item);
+            categoryIndex.add(item);
+            aggregates.add(item);
+        }
+
+        double scanned = 0;
+        long start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            scanned = 0;
+            for (InventoryItem item : store.values()) {
+                scanned += item.calculateValue(item.getQuantity());
+            }
+        }
+        double scanMillis = (System.nanoTime() - start) / 1e6 / passes;
+
+        double scannedCategory = 0;
+        start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            scannedCategory = 0;
+            for (int itemID : categoryIndex.getItemIDs("Grocery")) {
+                InventoryItem item = store.get(itemID);
+                scannedCategory += item.calculateValue(item.getQuantity());
+            }
+        }
+        double scanCategoryMillis = (System.nanoTime() - start) / 1e6 / passes;
+
+        start = System.nanoTime();
+        double total = 0;
+        double category = 0;
+        for (int pass = 0; pass < passes; pass++) {
+            total = aggregates.getTotalValue();
+            category = aggregates.getCategoryValue("Grocery");
+        }
+        double readMillis = (System.nanoTime() - start) / 1e6 / passes;
+
+        System.out.printf("  %-20s %14s %14s%n", "Read", "Total ms", "Category ms");
+        System.out.printf("  %-20s %,14.3f %,14.3f%n", "Scan of the items", scanMillis, scanCategoryMillis);
+        System.out.printf("  %-20s %,14.4f %,14.4f%n", "Running totals", readMillis, readMillis);
+        System.out.printf("  Totals %,.2f and %,.2f, Grocery %,.2f and %,.2f%n", scanned, total, scannedCategory, category);
+
+        InventoryItem[] items = new InventoryItem[100_000];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = store.get(i + 1);
+        }
+        int operations = 10_000_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("  %-20s %16s %16s%n", "Stock change", "ns/change 1 thr", "ns/change " + cores + " thr");
+        for (boolean updated : new boolean[]{false, true}) {
+            ItemChangeListener listener = new ItemChangeListener() {
+                @Override
+                public void beforeItemChange(InventoryItem item) {
+
+                }
+
+                @Override
+                public void afterItemChange(InventoryItem item) {
+                    if (updated) {
+                        aggregates.update(item);
+                    }
+                }
+            };
+            for (InventoryItem item : items) {
+                item.setChangeListener(listener);
+            }
+
+            measureStockChanges(items, operations / 10, 1);
+            double single = measureStockChanges(items, operations, 1);
+            double parallel = measureStockChanges(items, operations, cores);
+            System.out.printf("  %-20s %,16.1f %,16.1f%n", updated ? "Totals updated" : "Not updated", single, parallel);
+        }
+
+        for (int id = 1; id <= itemCount; id++) {
+            InventoryItem.releaseId(id);
+        }
+    }
+
+    //Made-up words of four syllables
+    private static String[] searchVocabulary() {
+        String[] syllables = {"ka", "lo", "mi", "ne", "ru", "sa", "ti", "vo", "be", "da", "fu", "go", "hi", "jo", "pe"};
+        String[] words = new String[syllables.length * syllables.length * syllables.length * syllables.length];
+        int count = 0;
+        for (String first : syllables) {
+            for (String second : syllables) {
+                for (String third : syllables) {
+                    for (String fourth : syllables) {
+                        words[count++] = first + second + third + fourth;
+                    }
+                }
+            }
+        }
+        return words;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Order newOrder(int orderID) {
+        return new Order(orderID, new Date(), new IntIntMap());
+    }
+
+    private static void report(String name, long operations, long failed, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("  %-16s %,10d ops  %,8d failed  %8.2f s  %,12.0f ops/s%n",
+                name, operations, failed, seconds, operations / seconds);
+    }
+}
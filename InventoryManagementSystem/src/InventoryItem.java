@@ -1,15 +1,42 @@
-import java.util.HashSet;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 /**
  * Class representing an inventory item, extends AbstractItem.
  * Adds instance variables for item ID and quantity.
+ * The quantity is updated with compare-and-set, so tryDecrement and increment are safe without locks.
+ * When updates of one item keep colliding the quantity moves to a padded StockCounter.
  */
 
 public class InventoryItem extends AbstractItem {
-    //Static collection to keep all Ids from all instances that are in use so there won't be any duplicate IDs.
-    private static final HashSet<Integer> existingIDs = new HashSet<>();
+    //Static set of all Ids from all instances that are in use so there won't be any duplicate IDs.
+    private static final IdAllocator existingIDs = new IdAllocator();
+    private static final VarHandle QUANTITY;
+    //Stored in quantity once the stock has moved to hotQuantity
+    private static final int MOVED = Integer.MIN_VALUE;
+    //Failed compare-and-set attempts within one update before the stock moves to a padded counter
+    private static final int CONTENDED_RETRIES = 4;
+
+    static {
+        try {
+            QUANTITY = MethodHandles.lookup().findVarHandle(InventoryItem.class, "quantity", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private int id;
-    private int quantity;
+    private volatile int quantity;
+    //Set only for items whose stock updates are contended
+    private transient volatile StockCounter hotQuantity;
+    //Notified before the quantity or the price changes, set by the InventoryManager that holds the item
+    private transient ItemChangeListener changeListener;
+    //Low-stock threshold, 0 if none, and whether the item waits in the reorder queue, both written by the ReorderQueue.
+    //Kept next to the quantity so checking a stock change against them doesn't look anywhere else.
+    private transient volatile int lowStockThreshold;
+    private transient volatile boolean reorderQueued;
+    //What the item adds to the running totals of the InventoryAggregates, found without a lookup on every change
+    private transient volatile InventoryAggregates.Entry aggregatesEntry;
 
     // Default constructor for serialization
     public InventoryItem() {
@@ -21,17 +48,40 @@ public class InventoryItem extends AbstractItem {
                          boolean perishable, double price) {
         super(name, description, breakable, perishable, price);
 
-        //If the given ID is in the Set already it means it is used by another instance, and we should throw an error.
-        if (isIdInUse(id)) {
+        //If the given ID is claimed already it means it is used by another instance, and we should throw an error.
+        if (id < 0) {
+            throw new IllegalArgumentException("Id can't be less than 0");
+        } else if (!existingIDs.claim(id)) {
             throw new IllegalArgumentException("This Id is already in use. Choose another Id.");
         }
         this.id = id;
-        existingIDs.add(id);
         this.quantity = quantity;
     }
 
-    private boolean isIdInUse(int itemID) {
-        return existingIDs.contains(itemID);
+    /**
+     * Checks if an ID is used by an item.
+     */
+    public static boolean isIdInUse(int itemID) {
+        return existingIDs.isInUse(itemID);
+    }
+
+    /**
+     * Gets the lowest ID from the given one up which no item uses, without claiming it.
+     *
+     * @return The ID, or -1 if all IDs from the given one up are in use.
+     */
+    public static int nextFreeId(int from) {
+        return existingIDs.nextFree(from);
+    }
+
+    //Frees an ID so it can be used by a new instance, for example when an item is restored from a snapshot or removed.
+    static void releaseId(int itemID) {
+        existingIDs.release(itemID);
+    }
+
+    //Marks an ID as used without an instance, for example to take back a release when a snapshot can't be restored.
+    static void claimId(int itemID) {
+        existingIDs.claim(itemID);
     }
 
     public int getId() {
@@ -42,19 +92,19 @@ public class InventoryItem extends AbstractItem {
         if (id <  0) {
             throw new IllegalArgumentException("Id can't be less than 0");
             //We check if the ID we want to set is in use already.
-        } else if (isIdInUse(id)) {
+        } else if (!existingIDs.claim(id)) {
             throw new IllegalArgumentException("Id is already in use. Choose another Id!");
         }
 
 
-        //We remove the previous ID from the set because it is won't be in use and add the new one
-        existingIDs.remove(this.id);
+        //We release the previous ID because it won't be in use, the new one is claimed above
+        existingIDs.release(this.id);
         this.id = id;
-        existingIDs.add(id);
     }
 
     public int getQuantity() {
-        return this.quantity;
+        int quantity = this.quantity;
+        return quantity == MOVED ? hotCounter().get() : quantity;
     }
 
     public void setQuantity(int quantity) {
@@ -62,22 +112,208 @@ public class InventoryItem extends AbstractItem {
             throw new IllegalArgumentException("Quantity can't be less than 0.");
         }
 
-        this.quantity = quantity;
+        notifyChange();
+        while (true) {
+            StockCounter counter = this.hotQuantity;
+            if (counter != null) {
+                counter.set(quantity);
+                notifyChanged();
+                return;
+            }
+
+            int current = this.quantity;
+            if (current != MOVED && QUANTITY.compareAndSet(this, current, quantity)) {
+                notifyChanged();
+                return;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Takes stock if there is enough of it, without locking.
+     *
+     * @param amount The quantity to take.
+     * @return True if the stock was taken, false if there is less than the amount in stock.
+     * @throws IllegalArgumentException If the amount is less than 0.
+     */
+    public boolean tryDecrement(int amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount can't be less than 0.");
+        }
+
+        notifyChange();
+        int failures = 0;
+        while (true) {
+            int current = getQuantity();
+            if (current < amount) {
+                return false;
+            }
+            if (compareAndSetQuantity(current, current - amount)) {
+                notifyChanged();
+                return true;
+            }
+            failures = onContention(failures);
+        }
+    }
+
+    /**
+     * Adds stock without locking.
+     *
+     * @param amount The quantity to add.
+     * @return The quantity after adding the amount.
+     * @throws IllegalArgumentException If the amount is less than 0 or the quantity would overflow.
+     */
+    public int increment(int amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount can't be less than 0.");
+        }
+
+        notifyChange();
+        int failures = 0;
+        while (true) {
+            int current = getQuantity();
+            if (current > Integer.MAX_VALUE - amount) {
+                throw new IllegalArgumentException("Quantity can't be more than " + Integer.MAX_VALUE + ".");
+            }
+            if (compareAndSetQuantity(current, current + amount)) {
+                notifyChanged();
+                return current + amount;
+            }
+            failures = onContention(failures);
+        }
+    }
+
+    /**
+     * Sets the quantity only if it still is the expected one.
+     *
+     * @param expected The quantity the caller last read.
+     * @param quantity The new quantity.
+     * @return True if the quantity was set, false if it had changed in the meantime.
+     * @throws IllegalArgumentException If the new quantity is less than 0.
+     */
+    public boolean compareAndSet(int expected, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity can't be less than 0.");
+        }
+
+        notifyChange();
+        if (!compareAndSetQuantity(expected, quantity)) {
+            return false;
+        }
+        notifyChanged();
+        return true;
+    }
+
+    private boolean compareAndSetQuantity(int expected, int quantity) {
+        StockCounter counter = this.hotQuantity;
+        if (counter != null) {
+            return counter.compareAndSet(expected, quantity);
+        }
+        //Fails while the stock is moving, the caller then reads the quantity from the new counter
+        return QUANTITY.compareAndSet(this, expected, quantity);
+    }
+
+    private int onContention(int failures) {
+        if (++failures == CONTENDED_RETRIES && this.hotQuantity == null) {
+            moveToHotCounter();
+        }
+        Thread.onSpinWait();
+        return failures;
+    }
+
+    //Marks the inline quantity as moved and publishes the counter, readers wait for it in the short gap between
+    private void moveToHotCounter() {
+        int current = this.quantity;
+        if (current != MOVED && QUANTITY.compareAndSet(this, current, MOVED)) {
+            this.hotQuantity = new StockCounter(current);
+        }
+    }
+
+    private StockCounter hotCounter() {
+        StockCounter counter;
+        while ((counter = this.hotQuantity) == null) {
+            Thread.onSpinWait();
+        }
+        return counter;
+    }
+
+    void setChangeListener(ItemChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    int getLowStockThreshold() {
+        return this.lowStockThreshold;
+    }
+
+    void setLowStockThreshold(int lowStockThreshold) {
+        this.lowStockThreshold = lowStockThreshold;
+    }
+
+    boolean isReorderQueued() {
+        return this.reorderQueued;
+    }
+
+    void setReorderQueued(boolean reorderQueued) {
+        this.reorderQueued = reorderQueued;
+    }
+
+    InventoryAggregates.Entry getAggregatesEntry() {
+        return this.aggregatesEntry;
+    }
+
+    void setAggregatesEntry(InventoryAggregates.Entry aggregatesEntry) {
+        this.aggregatesEntry = aggregatesEntry;
+    }
+
+    private void notifyChange() {
+        if (this.changeListener != null) {
+            this.changeListener.beforeItemChange(this);
+        }
+    }
+
+    private void notifyChanged() {
+        ItemChangeListener listener = this.changeListener;
+        if (listener != null) {
+            listener.afterItemChange(this);
+        }
     }
 
     @Override
-    public double calculateValue(int quantity) {
-        return getPrice() * quantity;
+    protected void beforePriceChange() {
+        notifyChange();
+    }
+
+    @Override
+    protected void afterPriceChange() {
+        notifyChanged();
+        ItemChangeListener listener = this.changeListener;
+        if (listener != null) {
+            listener.afterPriceChange(this);
+        }
     }
 
     //Adding the new properties to the details
     @Override
     public String getItemDetails() {
-        return "ID: " + this.id + ", " + super.getItemDetails() + ", Quantity: " + this.quantity;
+        return getItemDetails(getQuantity(), getPrice());
+    }
+
+    /**
+     * Gets the details with the given quantity and price instead of the current ones,
+     * used to show the item as it was when an InventoryView was opened.
+     */
+    public String getItemDetails(int quantity, double price) {
+        return "ID: " + this.id + ", " + super.getItemDetails(price) + ", Quantity: " + quantity + getTypeDetails();
+    }
+
+    //Details of the type of item, appended by the subclasses
+    protected String getTypeDetails() {
+        return "";
     }
 
     @Override
     public String toString() {
-        return String.format("%s,%d,%d,%s,%.2f", super.getName(), this.id, this.quantity, super.getCategory(), super.getPrice());
+        return String.format("%s,%d,%d,%s,%.2f", super.getName(), this.id, getQuantity(), super.getCategory(), super.getPrice());
     }
 }
@@ -0,0 +1,536 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Class representing the append-only write-ahead journal of the inventory.
+ * Every mutation of the InventoryManager is written as a compact binary entry before it is applied.
+ * Entries are collected in memory and written and synced by a background thread, so entries appended
+ * by many callers while the previous batch is being synced share one fsync (group commit).
+ * Each journal continues from the snapshot with the same generation and is replayed on top of it on startup.
+ */
+
+public class InventoryJournal implements Closeable {
+    //"INVJ" in ASCII, used to recognize journal files
+    private static final int MAGIC = 0x494E564A;
+    private static final short VERSION = 1;
+    //magic, version, reserved and generation
+    private static final int HEADER_SIZE = 4 + 2 + 2 + 8;
+    //Every entry is framed as payload length, entry type, payload and CRC32C checksum of the type and payload
+    private static final int FRAME_SIZE = 4 + 1 + 4;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    static final byte ADD_ITEM = 1;
+    static final byte REMOVE_ITEM = 2;
+    static final byte SET_QUANTITY = 3;
+    static final byte CREATE_ORDER = 4;
+    static final byte REMOVE_ORDER = 5;
+    static final byte PROCESS_ORDER = 6;
+    static final byte ORDER_SEQUENCE = 7;
+    static final byte SET_PRICE = 8;
+
+    private final FileChannel channel;
+    private final long generation;
+    private final Object lock = new Object();
+    private final Thread flusher;
+    //Appenders fill the active buffer while the flusher writes the other one
+    private ByteBuffer active;
+    private ByteBuffer flushing;
+    private long appendedEntries;
+    private long durableEntries;
+    private IOException failure;
+    private boolean closed;
+
+    private InventoryJournal(FileChannel channel, long generation) {
+        this.channel = channel;
+        this.generation = generation;
+        this.active = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.flushing = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.flusher = new Thread(this::flushLoop, "inventory-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Creates a new, empty journal file, replacing the file if it exists.
+     *
+     * @param path       The file of the journal.
+     * @param generation The generation of the snapshot this journal continues from.
+     * @return The journal opened for appending.
+     * @throws IOException If an I/O error occurs while creating the file.
+     */
+    public static InventoryJournal create(Path path, long generation) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) 0);
+        header.putLong(generation);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+
+        return new InventoryJournal(channel, generation);
+    }
+
+    /**
+     * Replays the journal on top of the manager which already holds the snapshot with the given generation
+     * and opens the journal for appending. A journal prepared by an interrupted compaction is taken over first,
+     * and a torn entry at the end of the journal, left by a crash in the middle of a write, is cut off.
+     *
+     * @param path       The file of the journal.
+     * @param generation The generation of the snapshot loaded in the manager.
+     * @param manager    The manager the entries are applied to.
+     * @return The journal opened for appending.
+     * @throws IOException If an I/O error occurs or the journal doesn't belong to the snapshot.
+     */
+    public static InventoryJournal recover(Path path, long generation, InventoryManager manager) throws IOException {
+        Path compacted = compactionPath(path);
+        if (Files.exists(compacted)) {
+            if (Files.size(compacted) >= HEADER_SIZE && readGeneration(compacted) == generation) {
+                Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.delete(compacted);
+            }
+        }
+
+        if (!Files.exists(path) || Files.size(path) < HEADER_SIZE) {
+            return create(path, generation);
+        }
+
+        long journalGeneration = readGeneration(path);
+        if (journalGeneration != generation) {
+            throw new IOException("Journal " + path + " has generation " + journalGeneration
+                    + " but the snapshot has generation " + generation + ".");
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long validLength = replay(channel, manager);
+            channel.truncate(validLength);
+            channel.position(validLength);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        return new InventoryJournal(channel, generation);
+    }
+
+    /**
+     * Opens an existing journal for appending without replaying it.
+     *
+     * @param path       The file of the journal.
+     * @param generation The generation the journal is expected to have.
+     * @return The journal opened for appending.
+     * @throws IOException If an I/O error occurs or the journal has a different generation.
+     */
+    public static InventoryJournal open(Path path, long generation) throws IOException {
+        long journalGeneration = readGeneration(path);
+        if (journalGeneration != generation) {
+            throw new IOException("Journal " + path + " has generation " + journalGeneration
+                    + " but generation " + generation + " was expected.");
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+
+        return new InventoryJournal(channel, generation);
+    }
+
+    /**
+     * Gets the file to which a compaction writes the new journal before it replaces the current one.
+     */
+    static Path compactionPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    private static long readGeneration(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the whole header is in the buffer
+            }
+            header.flip();
+
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("File " + path + " is not an inventory journal.");
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported journal version " + version + ".");
+            }
+            header.getShort();
+
+            return header.getLong();
+        }
+    }
+
+    //Applies all complete entries and returns the length of the journal up to the last of them
+    private static long replay(FileChannel channel, InventoryManager manager) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Journal is too large to be replayed.");
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        CRC32C crc = new CRC32C();
+        int position = HEADER_SIZE;
+
+        while (position + FRAME_SIZE <= size) {
+            int length = buffer.getInt(position);
+            if (length < 0 || position + FRAME_SIZE + (long) length > size) {
+                break;
+            }
+
+            ByteBuffer entry = buffer.slice(position + 4, 1 + length);
+            crc.reset();
+            crc.update(entry.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(position + 5 + length)) {
+                break;
+            }
+
+            byte type = entry.get();
+            apply(type, entry, manager);
+            position += FRAME_SIZE + length;
+        }
+
+        return position;
+    }
+
+    private static void apply(byte type, ByteBuffer entry, InventoryManager manager) throws IOException {
+        switch (type) {
+            case ADD_ITEM -> {
+                byte itemType = entry.get();
+                byte flags = entry.get();
+                int id = entry.getInt();
+                int quantity = entry.getInt();
+                double price = entry.getDouble();
+                long subtypeValue = entry.getLong();
+                String name = getString(entry);
+                String description = getString(entry);
+                String category = getString(entry);
+
+                manager.addItem(InventorySnapshot.restoreItem(itemType, flags, id, quantity, price, name,
+                        description, category, subtypeValue));
+            }
+            case REMOVE_ITEM -> manager.removeItem(entry.getInt());
+            case SET_QUANTITY -> {
+                int itemID = entry.getInt();
+                manager.setQuantity(itemID, entry.getInt());
+            }
+            case SET_PRICE -> {
+                int itemID = entry.getInt();
+                manager.setPrice(itemID, entry.getDouble());
+            }
+            case CREATE_ORDER -> manager.restoreOrder(Order.readFrom(entry));
+            case REMOVE_ORDER, PROCESS_ORDER -> manager.discardOrder(entry.getInt());
+            case ORDER_SEQUENCE -> manager.restoreNextOrderID(entry.getInt());
+            default -> throw new IOException("Unknown journal entry type " + type + ".");
+        }
+    }
+
+    public long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * Gets the number of entries appended since the journal was opened.
+     */
+    public long getEntryCount() {
+        synchronized (this.lock) {
+            return this.appendedEntries;
+        }
+    }
+
+    /*
+     * The log methods only buffer the entry and return immediately.
+     * A mutation calls sync() once after all its entries are appended.
+     */
+
+    /**
+     * Records that an item was added to the inventory.
+     *
+     * @param item The added item.
+     */
+    public void logAddItem(InventoryItem item) {
+        byte[] name = toBytes(item.getName());
+        byte[] description = toBytes(item.getDescription());
+        byte[] category = toBytes(item.getCategory());
+
+        ByteBuffer payload = ByteBuffer.allocate(1 + 1 + 4 + 4 + 8 + 8
+                + stringSize(name) + stringSize(description) + stringSize(category));
+        payload.put(InventorySnapshot.typeOf(item));
+        payload.put(InventorySnapshot.flagsOf(item));
+        payload.putInt(item.getId());
+        payload.putInt(item.getQuantity());
+        payload.putDouble(item.getPrice());
+        payload.putLong(InventorySnapshot.subtypeValueOf(item));
+        putString(payload, name);
+        putString(payload, description);
+        putString(payload, category);
+
+        append(ADD_ITEM, payload);
+    }
+
+    /**
+     * Records that an item was removed from the inventory.
+     *
+     * @param itemID The ID of the removed item.
+     */
+    public void logRemoveItem(int itemID) {
+        append(REMOVE_ITEM, ByteBuffer.allocate(4).putInt(itemID));
+    }
+
+    /**
+     * Records the new stock of an item.
+     *
+     * @param itemID   The ID of the item.
+     * @param quantity The new quantity of the item.
+     */
+    public void logSetQuantity(int itemID, int quantity) {
+        append(SET_QUANTITY, ByteBuffer.allocate(8).putInt(itemID).putInt(quantity));
+    }
+
+    /**
+     * Records the new price of an item.
+     *
+     * @param itemID The ID of the item.
+     * @param price  The new price of the item.
+     */
+    public void logSetPrice(int itemID, double price) {
+        append(SET_PRICE, ByteBuffer.allocate(12).putInt(itemID).putDouble(price));
+    }
+
+    /**
+     * Records that an order was created. Stock changes of the order are recorded separately.
+     *
+     * @param order The created order.
+     */
+    public void logCreateOrder(Order order) {
+        ByteBuffer payload = ByteBuffer.allocate(order.getEncodedSize());
+        order.writeTo(payload);
+
+        append(CREATE_ORDER, payload);
+    }
+
+    /**
+     * Records that an order was removed. Stock changes of the removal are recorded separately.
+     *
+     * @param orderID The ID of the removed order.
+     */
+    public void logRemoveOrder(int orderID) {
+        append(REMOVE_ORDER, ByteBuffer.allocate(4).putInt(orderID));
+    }
+
+    /**
+     * Records that an order was paid and processed.
+     *
+     * @param orderID The ID of the processed order.
+     */
+    public void logProcessOrder(int orderID) {
+        append(PROCESS_ORDER, ByteBuffer.allocate(4).putInt(orderID));
+    }
+
+    /**
+     * Records the ID the next order will get, so it survives a compaction that drops all orders.
+     *
+     * @param nextOrderID The ID of the next order.
+     */
+    public void logOrderSequence(int nextOrderID) {
+        append(ORDER_SEQUENCE, ByteBuffer.allocate(4).putInt(nextOrderID));
+    }
+
+    /**
+     * Waits until every entry appended so far is written and synced to disk.
+     *
+     * @throws UncheckedIOException If the journal could not be written.
+     */
+    public void sync() {
+        synchronized (this.lock) {
+            awaitDurable(this.appendedEntries);
+        }
+    }
+
+    /**
+     * Syncs all appended entries and closes the journal file.
+     *
+     * @throws IOException If the journal could not be written or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this.lock) {
+            if (this.closed) {
+                return;
+            }
+
+            try {
+                awaitDurable(this.appendedEntries);
+            } catch (UncheckedIOException e) {
+                // the failure is reported below, the file still has to be closed
+            }
+
+            this.closed = true;
+            this.lock.notifyAll();
+        }
+
+        try {
+            this.flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.channel.close();
+
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    //Adds a framed entry to the active buffer, sync() waits until the flusher made it durable
+    private void append(byte type, ByteBuffer payload) {
+        payload.flip();
+        int length = payload.remaining();
+
+        CRC32C crc = new CRC32C();
+        crc.update(type);
+        crc.update(payload.duplicate());
+
+        synchronized (this.lock) {
+            checkUsable();
+
+            //Wait for the flusher when the entry doesn't fit, entries larger than the buffer get a bigger one
+            while (this.active.remaining() < FRAME_SIZE + length && this.active.position() > 0) {
+                this.lock.notifyAll();
+                waitForFlusher();
+                checkUsable();
+            }
+            if (this.active.capacity() < FRAME_SIZE + length) {
+                this.active = ByteBuffer.allocateDirect(FRAME_SIZE + length);
+            }
+
+            this.active.putInt(length);
+            this.active.put(type);
+            this.active.put(payload);
+            this.active.putInt((int) crc.getValue());
+
+            this.appendedEntries++;
+            this.lock.notifyAll();
+        }
+    }
+
+    //Has to be called while holding the lock
+    private void awaitDurable(long entry) {
+        while (this.durableEntries < entry) {
+            if (this.failure != null) {
+                throw new UncheckedIOException("Journal write failed.", this.failure);
+            }
+            waitForFlusher();
+        }
+    }
+
+    private void checkUsable() {
+        if (this.closed) {
+            throw new IllegalStateException("Journal is closed.");
+        }
+        if (this.failure != null) {
+            throw new UncheckedIOException("Journal write failed.", this.failure);
+        }
+    }
+
+    private void waitForFlusher() {
+        try {
+            this.lock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the journal.", e);
+        }
+    }
+
+    //Group commit: everything appended while the previous batch was synced is written with a single fsync
+    private void flushLoop() {
+        while (true) {
+            long batchEnd;
+            ByteBuffer batch;
+
+            synchronized (this.lock) {
+                while (this.active.position() == 0 && !this.closed) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (this.active.position() == 0) {
+                    return;
+                }
+
+                batch = this.active;
+                this.active = this.flushing;
+                this.flushing = batch;
+                batchEnd = this.appendedEntries;
+            }
+
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    this.channel.write(batch);
+                }
+                this.channel.force(false);
+                batch.clear();
+            } catch (IOException e) {
+                synchronized (this.lock) {
+                    this.failure = e;
+                    this.lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (this.lock) {
+                this.durableEntries = batchEnd;
+                this.lock.notifyAll();
+            }
+        }
+    }
+
+    private static byte[] toBytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,8 +1,25 @@
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Class representing the inventory management system.
@@ -10,24 +27,147 @@ import java.util.NoSuchElementException;
  * Provides methods to add, remove, display, categorize, save, and load items.
  * Also provides method to add, remove, list and process orders.
  * Has functionality to save data to a file and load data from a file.
+ * When a journal is opened every mutation is also written to the write-ahead journal, so it survives a crash.
+ * Saves, listings and reports work on a copy-on-write InventoryView, so they see one consistent version of the inventory
+ * and don't hold up orders and stock updates while they run.
+ * All methods are safe to call from many threads. Stock changes lock only the stripes of the items involved,
+ * so orders for different items run in parallel, and an order either takes the stock for all its items or for none.
+ * Every session has its own shopping cart, so shoppers don't share or wait for each other's carts.
+ * Items are indexed by category, so category listings and counts don't go through the whole inventory.
+ * Groceries and electronics are also indexed by expiration and warranty date, so expired items are written off
+ * by a sweep that doesn't go through the whole inventory. An index by price answers price ranges and top-N queries,
+ * and a full-text index over names and descriptions answers searches by words or their beginnings.
+ * Optionally the numeric fields of the items are also kept in columns, so low-stock scans go through primitive arrays.
+ * Running totals of the value and units in stock, overall and per category, and of the open orders are updated
+ * with every change, so they are read without going through the inventory.
+ * Items and categories can have low-stock thresholds, every stock change is checked against them and items which fall
+ * below are queued for replenishment, the ones which are short the most first.
  */
 
 public class InventoryManager {
-    //Collection to keep all items like itemID -> InventoryItem
-    private HashMap<Integer, InventoryItem> inventoryItems;
-    private ArrayList<Order> orders;
-    private ShoppingCart shoppingCart;
+    //Carts of sessions which haven't been used for this long are dropped
+    private static final Duration CART_IDLE_TIMEOUT = Duration.ofMinutes(30);
+    private static final int PIPELINE_CAPACITY = 4096;
+    private static final int PIPELINE_BATCH_SIZE = 256;
+    //Order IDs are taken from the allocator this many at a time, the journal records only the end of every block
+    private static final int ORDER_ID_BLOCK_SIZE = 1024;
+    //Items written off by one task of the expiration sweep
+    private static final int SWEEP_BATCH_SIZE = 256;
+    //Collection to keep all items like itemID -> InventoryItem, looked up without boxing the ID
+    private ConcurrentIntObjectMap<InventoryItem> inventoryItems;
+    //Item IDs by category, replaced together with inventoryItems
+    private CategoryIndex categoryIndex;
+    //Grocery items by expiration date and electronics items by end of warranty, replaced together with inventoryItems
+    private DateIndex expirationIndex;
+    private DateIndex warrantyIndex;
+    //Items by price, replaced together with inventoryItems
+    private PriceIndex priceIndex;
+    //Tokens of the names and descriptions of the items, replaced together with inventoryItems
+    private TextIndex textIndex;
+    //Running totals of the items in stock and the open orders
+    private final InventoryAggregates aggregates;
+    //Low-stock thresholds and the items below them, kept across loads
+    private final ReorderQueue reorderQueue;
+    //Runs the scheduled expiration sweep, null until startExpirationSweep is called
+    private ScheduledExecutorService expirationSweeper;
+    //Writes off the batches of a sweep, its threads end when no sweep runs for a while
+    private final ThreadPoolExecutor sweepWorkers;
+    //Numeric fields of the items in columns, null until enableColumns is called
+    private volatile ItemColumns columns;
+    //Open orders by ID, in the order they were placed
+    private final OrderStore orders;
+    private final CartRegistry carts;
+    //Single-writer pipeline behind createOrderAsync, null until first used
+    private OrderPipeline orderPipeline;
+    //Order IDs handed out or reserved so far
+    private final IdAllocator orderIDs;
+    //Next ID and end of the current block of order IDs, guarded by orderIDs. Equal when a new block is needed.
     private int nextOrderID;
+    private int orderIDBlockEnd;
+    //Journal and snapshot used for crash recovery, the journal is null until openJournal is called
+    private volatile InventoryJournal journal;
+    private Path snapshotPath;
+    private Path journalPath;
+    private long compactionThreshold;
+    //Persistent log of open and processed orders, null until openOrderLog is called
+    private OrderLog orderLog;
+    //Mutations hold the read lock, so they can run at the same time. Opening a view holds the write lock
+    //for a moment, so every view starts at a point where no mutation is half done.
+    private final ReentrantReadWriteLock gate;
+    //Versions with open views, every mutation records the previous state into each of them
+    private final CopyOnWriteArrayList<InventoryView.Version> versions;
+    //The version new views share as long as nothing changed, written under the write lock of the gate
+    private InventoryView.Version newestVersion;
+    private final ItemChangeListener itemListener;
+    private final ExecutorService snapshotExecutor;
+    //Guards the stock of the items, every stock change holds the stripes of the items it changes
+    private final StripedLock itemLocks;
 
     public InventoryManager() {
-        this.inventoryItems = new HashMap<>();
-        this.orders = new ArrayList<>();
-        this.shoppingCart = new ShoppingCart();
-        nextOrderID = 1;
+        this.inventoryItems = new ConcurrentIntObjectMap<>();
+        this.categoryIndex = new CategoryIndex();
+        this.expirationIndex = DateIndex.ofExpirations(List.of());
+        this.warrantyIndex = DateIndex.ofWarranties(List.of());
+        this.priceIndex = new PriceIndex();
+        this.textIndex = new TextIndex();
+        this.reorderQueue = new ReorderQueue();
+        this.aggregates = new InventoryAggregates();
+        this.orders = new OrderStore();
+        this.carts = new CartRegistry(CART_IDLE_TIMEOUT);
+        this.orderIDs = new IdAllocator();
+        //Order IDs start at 1
+        this.orderIDs.claim(0);
+        this.compactionThreshold = 100_000;
+        this.gate = new ReentrantReadWriteLock();
+        this.versions = new CopyOnWriteArrayList<>();
+        this.itemListener = new ItemChangeListener() {
+            @Override
+            public void beforeItemChange(InventoryItem item) {
+                InventoryManager.this.beforeItemChange(item);
+            }
+
+            @Override
+            public void afterItemChange(InventoryItem item) {
+                InventoryManager.this.afterItemChange(item);
+            }
+
+            @Override
+            public void afterPriceChange(InventoryItem item) {
+                InventoryManager.this.afterPriceChange(item);
+            }
+        };
+        this.snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.itemLocks = new StripedLock(1024);
+        int workers = Runtime.getRuntime().availableProcessors();
+        this.sweepWorkers = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "expiration-sweep-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.sweepWorkers.allowCoreThreadTimeOut(true);
     }
 
-    public ShoppingCart getCart() {
-        return this.shoppingCart;
+    /**
+     * Gets the shopping cart of a session, creating it on first use.
+     *
+     * @param sessionId The ID of the session.
+     */
+    public ShoppingCart getCart(String sessionId) {
+        return this.carts.getCart(sessionId);
+    }
+
+    /**
+     * Drops the shopping cart of a session which has ended.
+     *
+     * @param sessionId The ID of the session.
+     */
+    public void endSession(String sessionId) {
+        this.carts.removeCart(sessionId);
     }
 
     /**
@@ -36,7 +176,65 @@ public class InventoryManager {
      * @param item The item to add.
      */
     public void addItem(InventoryItem item) {
-        this.inventoryItems.put(item.getId(), item);
+        this.gate.readLock().lock();
+        try {
+            putItem(item);
+        } finally {
+            this.gate.readLock().unlock();
+            afterMutation();
+        }
+    }
+
+    /**
+     * Adds a batch of items to the inventory.
+     * When journaling, the whole batch is made durable at once instead of once per item.
+     *
+     * @param items The items to add.
+     */
+    public void addItems(Collection<? extends InventoryItem> items) {
+        this.gate.readLock().lock();
+        try {
+            for (InventoryItem item : items) {
+                putItem(item);
+            }
+        } finally {
+            this.gate.readLock().unlock();
+            afterMutation();
+        }
+    }
+
+    private void putItem(InventoryItem item) {
+        this.itemLocks.lock(item.getId());
+        try {
+            if (this.journal != null) {
+                this.journal.logAddItem(item);
+            }
+            for (InventoryView.Version version : this.versions) {
+                version.beforeItemAdded(item);
+            }
+            item.setChangeListener(this.itemListener);
+            InventoryItem replaced = this.inventoryItems.put(item.getId(), item);
+            if (replaced != null) {
+                this.categoryIndex.remove(replaced);
+                this.expirationIndex.remove(replaced);
+                this.warrantyIndex.remove(replaced);
+                this.textIndex.remove(replaced);
+            }
+            this.categoryIndex.add(item);
+            this.expirationIndex.add(item);
+            this.warrantyIndex.add(item);
+            //Replaces the entry of an item with the same ID
+            this.priceIndex.add(item);
+            this.textIndex.add(item);
+            //Replace the entries of an item with the same ID
+            this.reorderQueue.add(item);
+            this.aggregates.add(item);
+            if (this.columns != null) {
+                this.columns.add(item);
+            }
+        } finally {
+            this.itemLocks.unlock(item.getId());
+        }
     }
 
     /**
@@ -63,10 +261,113 @@ public class InventoryManager {
      * @throws NoSuchElementException If the item with the given ID doesn't exist.
      */
     public void removeItem(int itemID) {
-        if (!this.inventoryItems.containsKey(itemID)) {
+        this.gate.readLock().lock();
+        this.itemLocks.lock(itemID);
+        try {
+            InventoryItem item = getExistingItem(itemID);
+            if (this.journal != null) {
+                this.journal.logRemoveItem(itemID);
+            }
+            for (InventoryView.Version version : this.versions) {
+                version.beforeItemRemoved(item);
+            }
+            this.inventoryItems.remove(itemID);
+            InventoryItem.releaseId(itemID);
+            this.categoryIndex.remove(item);
+            this.expirationIndex.remove(item);
+            this.warrantyIndex.remove(item);
+            this.priceIndex.remove(item);
+            this.textIndex.remove(item);
+            this.reorderQueue.remove(item);
+            this.aggregates.remove(item);
+            if (this.columns != null) {
+                this.columns.remove(itemID);
+            }
+            item.setChangeListener(null);
+        } finally {
+            this.itemLocks.unlock(itemID);
+            this.gate.readLock().unlock();
+            afterMutation();
+        }
+    }
+
+    /**
+     * Sets the stock of an item in the inventory.
+     *
+     * @param itemID   The ID of the item.
+     * @param quantity The new quantity of the item.
+     * @throws NoSuchElementException   If the item with the given ID doesn't exist.
+     * @throws IllegalArgumentException If the quantity is less than 0.
+     */
+    public void setQuantity(int itemID, int quantity) {
+        this.gate.readLock().lock();
+        this.itemLocks.lock(itemID);
+        try {
+            updateQuantity(getExistingItem(itemID), quantity);
+        } finally {
+            this.itemLocks.unlock(itemID);
+            this.gate.readLock().unlock();
+            afterMutation();
+        }
+    }
+
+    /**
+     * Sets the price of an item in the inventory.
+     * Prices set on the item itself are not journaled, only the ones set through here survive a crash.
+     *
+     * @param itemID The ID of the item.
+     * @param price  The new price of the item.
+     * @throws NoSuchElementException   If the item with the given ID doesn't exist.
+     * @throws IllegalArgumentException If the price is 0 or less.
+     */
+    public void setPrice(int itemID, double price) {
+        if (price <= 0) {
+            throw new IllegalArgumentException("Price can't be 0 or less!");
+        }
+
+        this.gate.readLock().lock();
+        this.itemLocks.lock(itemID);
+        try {
+            //The stripe keeps price changes of the item in the journal in the order they are applied
+            InventoryItem item = getExistingItem(itemID);
+            if (this.journal != null) {
+                this.journal.logSetPrice(itemID, price);
+            }
+            item.setPrice(price);
+        } finally {
+            this.itemLocks.unlock(itemID);
+            this.gate.readLock().unlock();
+            afterMutation();
+        }
+    }
+
+    private InventoryItem getExistingItem(int itemID) {
+        InventoryItem item = getItem(itemID);
+        if (item == null) {
             throw new NoSuchElementException("Item with ID " + itemID + " not found.");
         }
-        this.inventoryItems.remove(itemID);
+
+        return item;
+    }
+
+    //Every stock change goes through here so the journal records the resulting quantity.
+    //The caller has to hold the stripe of the item.
+    private void updateQuantity(InventoryItem item, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity can't be less than 0.");
+        }
+        if (this.journal != null) {
+            this.journal.logSetQuantity(item.getId(), quantity);
+        }
+        item.setQuantity(quantity);
+    }
+
+    //Journals the quantity an item was left with after tryDecrement or increment.
+    //The caller has to hold the stripe of the item, so no other journaled change can come in between.
+    private void logQuantity(InventoryItem item) {
+        if (this.journal != null) {
+            this.journal.logSetQuantity(item.getId(), item.getQuantity());
+        }
     }
 
     /**
@@ -79,19 +380,35 @@ public class InventoryManager {
         return inventoryItems.get(itemID);
     }
 
+    /**
+     * Gets all items in the inventory.
+     *
+     * @return ArrayList with the items at the time of the call.
+     */
+    public ArrayList<InventoryItem> getItems() {
+        ArrayList<InventoryItem> items = new ArrayList<>(this.inventoryItems.size());
+        for (InventoryItem item : this.inventoryItems.values()) {
+            items.add(item);
+        }
+        return items;
+    }
+
     /**
      * Displays all items in the inventory.
      */
     public void displayItems() {
-        if (this.inventoryItems.isEmpty()) {
-            System.out.println("No items in inventory.");
-            System.out.println();
-            return;
-        }
-        for (InventoryItem item : this.inventoryItems.values()) {
-            System.out.println(item.getItemDetails());
-            item.displayDescription();
-            System.out.println();
+        try (InventoryView view = openView()) {
+            ArrayList<InventoryItem> items = view.getItems();
+            if (items.isEmpty()) {
+                System.out.println("No items in inventory.");
+                System.out.println();
+                return;
+            }
+            for (InventoryItem item : items) {
+                System.out.println(view.getItemDetails(item));
+                item.displayDescription();
+                System.out.println();
+            }
         }
     }
 
@@ -102,13 +419,378 @@ public class InventoryManager {
      * @return ArrayList of InventoryItem items which are from the given category.
      */
     public ArrayList<InventoryItem> getItemsByCategory(String category) {
-        ArrayList<InventoryItem> itemsByCategory = new ArrayList<>();
-        for (var item : this.inventoryItems.values()) {
-            if (item.getCategory().equalsIgnoreCase(category)) {
-                itemsByCategory.add(item);
+        try (InventoryView view = openView()) {
+            return view.getItemsByCategory(category);
+        }
+    }
+
+    /**
+     * Gets the number of items in a category.
+     *
+     * @param category the category we want to check for.
+     */
+    public int countItemsByCategory(String category) {
+        return this.categoryIndex.count(category);
+    }
+
+    /**
+     * Searches the names and descriptions of the items.
+     * Every word of the query has to be in the name or the description of an item, as a whole word or the start of one.
+     *
+     * @param query The words to search for, case doesn't matter.
+     * @param limit The maximum number of results.
+     * @return ArrayList with the best matching items first, matches in the name rank above matches in the description.
+     */
+    public ArrayList<InventoryItem> searchItems(String query, int limit) {
+        ArrayList<InventoryItem> items = new ArrayList<>();
+        for (int itemID : this.textIndex.search(query, limit)) {
+            InventoryItem item = this.inventoryItems.get(itemID);
+            if (item != null) {
+                items.add(item);
             }
         }
-        return itemsByCategory;
+        return items;
+    }
+
+    /**
+     * Gets the items with a price in a range.
+     *
+     * @param minPrice The lowest price, included.
+     * @param maxPrice The highest price, included.
+     * @return ArrayList with the items ordered by price.
+     */
+    public ArrayList<InventoryItem> getItemsInPriceRange(double minPrice, double maxPrice) {
+        return getItemsByID(this.priceIndex.getItemIDs(minPrice, maxPrice));
+    }
+
+    /**
+     * Gets the cheapest items.
+     *
+     * @param count The number of items.
+     * @return ArrayList with at most count items, cheapest first.
+     */
+    public ArrayList<InventoryItem> getCheapestItems(int count) {
+        return getItemsByID(this.priceIndex.getCheapest(count));
+    }
+
+    /**
+     * Gets the most expensive items.
+     *
+     * @param count The number of items.
+     * @return ArrayList with at most count items, most expensive first.
+     */
+    public ArrayList<InventoryItem> getMostExpensiveItems(int count) {
+        return getItemsByID(this.priceIndex.getMostExpensive(count));
+    }
+
+    /**
+     * Gets the grocery items which expire within a number of days, today included.
+     *
+     * @param days The number of days after today.
+     * @return ArrayList with the items ordered by expiration date.
+     */
+    public ArrayList<InventoryItem> getItemsExpiringWithin(int days) {
+        LocalDate today = LocalDate.now();
+        return getItemsByID(this.expirationIndex.getItemIDs(today, today.plusDays(days)));
+    }
+
+    /**
+     * Gets the electronics items whose warranty ends within a number of days, today included.
+     *
+     * @param days The number of days after today.
+     * @return ArrayList with the items ordered by the end of their warranty.
+     */
+    public ArrayList<InventoryItem> getItemsWithWarrantyEndingWithin(int days) {
+        LocalDate today = LocalDate.now();
+        return getItemsByID(this.warrantyIndex.getItemIDs(today, today.plusDays(days)));
+    }
+
+    private ArrayList<InventoryItem> getItemsByID(Collection<Integer> itemIDs) {
+        ArrayList<InventoryItem> items = new ArrayList<>(itemIDs.size());
+        for (int itemID : itemIDs) {
+            InventoryItem item = this.inventoryItems.get(itemID);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Writes off the stock of the grocery items which expired and of the electronics items whose warranty lapsed.
+     * Groceries expire on their expiration date, like in GroceryItem.handleExpiration, and warranties lapse
+     * the day after they end. Only the items in the index buckets of past days are visited, in parallel batches
+     * on threads of their own, so they don't hold the locks of the inventory on the common pool.
+     * Written off items stay in the inventory with a quantity of 0 and are not visited again until they get stock again.
+     * If a batch fails, the items it didn't write off are put back in the index and visited by the next sweep.
+     *
+     * @param today The day to sweep for.
+     * @return The number of units written off.
+     */
+    public long writeOffExpiredItems(LocalDate today) {
+        ArrayList<Integer> expired = this.expirationIndex.takeItemIDsUntil(today);
+        ArrayList<Integer> lapsed = this.warrantyIndex.takeItemIDsUntil(today.minusDays(1));
+
+        ArrayList<CompletableFuture<Long>> batches = new ArrayList<>();
+        for (int i = 0; i < expired.size(); i += SWEEP_BATCH_SIZE) {
+            List<Integer> batch = expired.subList(i, Math.min(i + SWEEP_BATCH_SIZE, expired.size()));
+            batches.add(CompletableFuture.supplyAsync(() -> writeOff(batch, this.expirationIndex, today), this.sweepWorkers));
+        }
+        for (int i = 0; i < lapsed.size(); i += SWEEP_BATCH_SIZE) {
+            List<Integer> batch = lapsed.subList(i, Math.min(i + SWEEP_BATCH_SIZE, lapsed.size()));
+            batches.add(CompletableFuture.supplyAsync(() -> writeOff(batch, this.warrantyIndex, today.minusDays(1)),
+                    this.sweepWorkers));
+        }
+
+        //Every batch is waited for even after one failed, so the sweep is over and synced when this returns
+        long writtenOff = 0;
+        RuntimeException failure = null;
+        try {
+            for (CompletableFuture<Long> batch : batches) {
+                try {
+                    writtenOff += batch.join();
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        } finally {
+            afterMutation();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return writtenOff;
+    }
+
+    //Sets the stock of the items of a batch to 0, skipping items which were removed or replaced by one with a later date.
+    //The IDs were already taken out of the index, so if the batch fails the items it didn't write off are put back.
+    private long writeOff(List<Integer> itemIDs, DateIndex index, LocalDate lastDay) {
+        long writtenOff = 0;
+        int done = 0;
+        this.gate.readLock().lock();
+        try {
+            for (; done < itemIDs.size(); done++) {
+                int itemID = itemIDs.get(done);
+                this.itemLocks.lock(itemID);
+                try {
+                    InventoryItem item = this.inventoryItems.get(itemID);
+                    LocalDate date = item == null ? null : index.dateOf(item);
+                    if (date != null && !date.isAfter(lastDay) && item.getQuantity() > 0) {
+                        writtenOff += item.getQuantity();
+                        updateQuantity(item, 0);
+                    }
+                } finally {
+                    this.itemLocks.unlock(itemID);
+                }
+            }
+        } catch (RuntimeException e) {
+            for (int itemID : itemIDs.subList(done, itemIDs.size())) {
+                InventoryItem item = this.inventoryItems.get(itemID);
+                if (item != null) {
+                    index.restock(item);
+                }
+            }
+            throw e;
+        } finally {
+            this.gate.readLock().unlock();
+        }
+        return writtenOff;
+    }
+
+    /**
+     * Starts writing off expired items in the background, right away and then every interval.
+     *
+     * @param interval The time between two sweeps.
+     * @throws IllegalStateException If the sweep is already running.
+     */
+    public synchronized void startExpirationSweep(Duration interval) {
+        if (this.expirationSweeper != null) {
+            throw new IllegalStateException("Expiration sweep is already running.");
+        }
+
+        this.expirationSweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "expiration-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.expirationSweeper.scheduleWithFixedDelay(() -> {
+            //An exception would cancel all later sweeps, so it is reported and the next sweep tries again
+            try {
+                writeOffExpiredItems(LocalDate.now());
+            } catch (RuntimeException e) {
+                System.err.println("Expiration sweep failed: " + e.getMessage());
+            }
+        }, 0, interval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the background expiration sweep, a sweep which is running is finished first.
+     */
+    public synchronized void stopExpirationSweep() {
+        if (this.expirationSweeper != null) {
+            this.expirationSweeper.shutdown();
+            this.expirationSweeper = null;
+        }
+    }
+
+    /**
+     * Starts keeping the quantity, price and other numeric fields of the items in columns,
+     * which makes getLowStockItems scan primitive arrays instead of the items.
+     * Costs a few bytes per item and a little work on every stock and price change. Does nothing if already enabled.
+     */
+    public void enableColumns() {
+        this.gate.writeLock().lock();
+        try {
+            if (this.columns == null) {
+                this.columns = new ItemColumns(getItems());
+            }
+        } finally {
+            this.gate.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the value of all items in stock, from the running totals.
+     */
+    public double getTotalValue() {
+        return this.aggregates.getTotalValue();
+    }
+
+    /**
+     * Gets the number of units of all items in stock, from the running totals.
+     */
+    public long getTotalUnits() {
+        return this.aggregates.getTotalUnits();
+    }
+
+    /**
+     * Gets the value of the items in stock in a category, from the running totals.
+     *
+     * @param category the category we want to check for.
+     */
+    public double getCategoryValue(String category) {
+        return this.aggregates.getCategoryValue(category);
+    }
+
+    /**
+     * Gets the number of units in stock in a category, from the running totals.
+     *
+     * @param category the category we want to check for.
+     */
+    public long getCategoryUnits(String category) {
+        return this.aggregates.getCategoryUnits(category);
+    }
+
+    /**
+     * Gets the value of the items in stock of every category, from the running totals.
+     *
+     * @return Map like category -> value.
+     */
+    public LinkedHashMap<String, Double> getValueByCategory() {
+        return this.aggregates.getValueByCategory();
+    }
+
+    /**
+     * Gets the number of open orders, from the running totals.
+     */
+    public long getOpenOrderCount() {
+        return this.aggregates.getOpenOrderCount();
+    }
+
+    /**
+     * Gets the total of all open orders with the current prices of their items, from the running totals.
+     */
+    public double getOpenOrderTotal() {
+        return this.aggregates.getOpenOrderTotal();
+    }
+
+    /**
+     * Gets the items whose quantity is below a threshold.
+     *
+     * @param threshold The quantity items need to have at least.
+     * @return ArrayList with the items, in no particular order.
+     */
+    public ArrayList<InventoryItem> getLowStockItems(int threshold) {
+        ArrayList<InventoryItem> lowStock = new ArrayList<>();
+        ItemColumns columns = this.columns;
+        if (columns != null) {
+            for (int itemID : columns.getLowStockItemIDs(threshold)) {
+                InventoryItem item = this.inventoryItems.get(itemID);
+                if (item != null) {
+                    lowStock.add(item);
+                }
+            }
+            return lowStock;
+        }
+
+        for (InventoryItem item : this.inventoryItems.values()) {
+            if (item.getQuantity() < threshold) {
+                lowStock.add(item);
+            }
+        }
+        return lowStock;
+    }
+
+    /**
+     * Sets the low-stock threshold of an item, it wins over the threshold of its category.
+     * The item is queued for replenishment whenever its quantity is below the threshold.
+     *
+     * @param itemID    The ID of the item.
+     * @param threshold The quantity the item should have at least, 0 to use the threshold of its category again.
+     * @throws NoSuchElementException   If the item with the given ID doesn't exist.
+     * @throws IllegalArgumentException If the threshold is less than 0.
+     */
+    public void setLowStockThreshold(int itemID, int threshold) {
+        this.gate.readLock().lock();
+        try {
+            this.reorderQueue.setItemThreshold(getExistingItem(itemID), threshold);
+        } finally {
+            this.gate.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the low-stock threshold of a category, for its items without a threshold of their own.
+     * It also applies to items of the category added later.
+     *
+     * @param category  The category, case doesn't matter.
+     * @param threshold The quantity the items should have at least, 0 to remove the threshold.
+     * @throws IllegalArgumentException If the threshold is less than 0.
+     */
+    public void setCategoryLowStockThreshold(String category, int threshold) {
+        this.gate.readLock().lock();
+        try {
+            this.reorderQueue.setCategoryThreshold(category, getItemsByID(this.categoryIndex.getItemIDs(category)), threshold);
+        } finally {
+            this.gate.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the low-stock threshold in effect for an item, 0 if it has none.
+     */
+    public int getLowStockThreshold(int itemID) {
+        return this.reorderQueue.getThreshold(itemID);
+    }
+
+    /**
+     * Takes the items below their low-stock threshold out of the reorder queue, for a replenishment job.
+     * An item is queued again when its stock changes and it still is below the threshold.
+     *
+     * @param maxItems The maximum number of items.
+     * @return ArrayList with the items and how many units they are short, the ones which are short the most first.
+     */
+    public ArrayList<ReorderQueue.Reorder> takeReorders(int maxItems) {
+        return this.reorderQueue.drain(maxItems);
+    }
+
+    /**
+     * Gets the number of items waiting in the reorder queue.
+     */
+    public int getReorderQueueSize() {
+        return this.reorderQueue.size();
     }
 
     /**
@@ -117,15 +799,17 @@ public class InventoryManager {
      * @param category the category we want to check for.
      */
     public void displayItemsByCategory(String category) {
-        ArrayList<InventoryItem> itemsByCategory = getItemsByCategory(category);
-        if (itemsByCategory.isEmpty()) {
-            System.out.println("No items found in category: " + category);
-            return;
-        }
-        for (InventoryItem item : itemsByCategory) {
-            System.out.println(item.getItemDetails());
-            item.displayDescription();
-            System.out.println();
+        try (InventoryView view = openView()) {
+            ArrayList<InventoryItem> itemsByCategory = view.getItemsByCategory(category);
+            if (itemsByCategory.isEmpty()) {
+                System.out.println("No items found in category: " + category);
+                return;
+            }
+            for (InventoryItem item : itemsByCategory) {
+                System.out.println(view.getItemDetails(item));
+                item.displayDescription();
+                System.out.println();
+            }
         }
     }
 
@@ -136,23 +820,40 @@ public class InventoryManager {
      * @return The order with the specified ID, or null if not found.
      */
     public Order getOrderById(int id) {
-        for (Order order : this.orders) {
-            if (order.getOrderID() == id) {
-                return order;
-            }
-        }
+        return this.orders.get(id);
+    }
 
-        return null;
+    /**
+     * Gets all orders which are not processed yet.
+     *
+     * @return ArrayList with the orders at the time of the call.
+     */
+    public ArrayList<Order> getOrders() {
+        return this.orders.values();
     }
 
     /**
-     * Displays all orders by category.
+     * Calculates the total of an order with the current prices of its items.
+     *
+     * @param order The order.
+     */
+    public double calculateOrderTotal(Order order) {
+        return order.calculateOrderTotal(this.inventoryItems);
+    }
+
+    /**
+     * Displays all open orders with their totals, as they were when the method was called.
      */
     public void displayOrders() {
-        for (Order order : this.orders) {
-            System.out.println(order);
-            System.out.println("Order total: " + order.calculateOrderTotal(this.inventoryItems));
-            System.out.println();
+        try (InventoryView view = openView()) {
+            for (Order order : view.getOrders()) {
+                System.out.println(order);
+                //Not read from the aggregates, they keep only the sum over all open orders. A total per order would
+                //have to be updated for every open order of an item on each price change, while printing the order
+                //goes through its lines anyway and the view values them with the same snapshot as the printed lines.
+                System.out.println("Order total: " + view.calculateOrderTotal(order));
+                System.out.println();
+            }
         }
     }
 
@@ -174,13 +875,14 @@ public class InventoryManager {
     }
 
     /**
-     * Adds an item to the shopping cart.
+     * Adds an item to the shopping cart of a session.
+     * @param sessionId The ID of the session.
      * @param itemID The id of the item
      * @param quantity The quantity of the item.
      * @throws NoSuchElementException If the ID is invalid.
      * @throws IllegalArgumentException If the quantity is more than the actual item's quantity.
      */
-    public void addItemToCart(int itemID, int quantity) {
+    public void addItemToCart(String sessionId, int itemID, int quantity) {
         InventoryItem item = this.getItem(itemID);
 
         if (item == null) {
@@ -191,16 +893,19 @@ public class InventoryManager {
             throw new IllegalArgumentException("Not enough stock for item with ID " + itemID);
         }
 
-        this.shoppingCart.addItem(itemID, quantity);
+        this.carts.getCart(sessionId).addItem(itemID, quantity);
     }
 
     /**
-     * Removes an item from the shopping cart.
+     * Removes an item from the shopping cart of a session.
+     * @param sessionId The ID of the session.
      * @param itemID The id of the item
      * @throws NoSuchElementException If the ID is invalid.
      */
-    public void removeItemFromCart(int itemID) {
-        if (this.shoppingCart.isEmpty()) {
+    public void removeItemFromCart(String sessionId, int itemID) {
+        ShoppingCart cart = this.carts.findCart(sessionId);
+
+        if (cart == null || cart.isEmpty()) {
             System.out.println("No items in the shopping cart!");
             System.out.println();
             return;
@@ -212,59 +917,195 @@ public class InventoryManager {
             throw new NoSuchElementException("Item with ID " + itemID + " is not found.");
         }
 
-        this.shoppingCart.removeItem(itemID);
+        cart.removeItem(itemID);
     }
 
     /**
-     * Displays all items from the shopping cart.
+     * Displays all items from the shopping cart of a session.
+     *
+     * @param sessionId The ID of the session.
      */
-    public void displayCart() {
-        this.shoppingCart.viewCart();
+    public void displayCart(String sessionId) {
+        this.carts.getCart(sessionId).viewCart();
     }
 
     /**
-     * Creates an order with the specified items and quantities.
+     * Creates an order with the items and quantities in the shopping cart of a session.
      * Updates the inventory quantities after the order is placed.
      * Adds the order to the list of orders.
      *
+     * @param sessionId The ID of the session.
      * @throws NoSuchElementException If the ID is invalid.
      * @throws IllegalArgumentException if any of the item's quantity is less than the quantity given in the order.
      */
-    public void createOrder() {
+    public void createOrder(String sessionId) {
+        ShoppingCart cart = this.carts.findCart(sessionId);
 
-        if (this.shoppingCart.isEmpty()) {
+        if (cart == null || cart.isEmpty()) {
             System.out.println("Shopping cart is empty! First add some items!");
             System.out.println();
             return;
         }
 
-        HashMap<Integer, Integer> itemsToOrder = this.shoppingCart.getItems();
+        Order order;
 
-        for (var entry : itemsToOrder.entrySet()) {
-            InventoryItem item = getItem(entry.getKey());
-            int orderQuantity = entry.getValue();
-
-            if (item == null) {
-                throw new NoSuchElementException("Item with ID " + entry.getKey() + " not found.");
+        //Holding the cart keeps other requests of the same session from changing it until it is cleared,
+        //other sessions have their own carts and are not blocked
+        synchronized (cart) {
+            //The items move from the cart into the order, they go back into the cart if the order fails
+            IntIntMap itemsToOrder = cart.takeItems();
+            if (itemsToOrder.isEmpty()) {
+                System.out.println("Shopping cart is empty! First add some items!");
+                System.out.println();
+                return;
             }
 
-            if (item.getQuantity() >= orderQuantity) {
-                item.setQuantity(item.getQuantity() - orderQuantity);
-            } else {
-                System.out.println("Error: Not enough stock for item ID " + entry.getKey());
+            this.gate.readLock().lock();
+            try {
+                order = placeOrder(itemsToOrder);
+            } catch (IllegalArgumentException e) {
+                cart.restoreItems(itemsToOrder);
+                System.out.println("Error: " + e.getMessage());
                 return;
+            } catch (RuntimeException e) {
+                cart.restoreItems(itemsToOrder);
+                throw e;
+            } finally {
+                this.gate.readLock().unlock();
+                afterMutation();
             }
         }
 
-
-        Order order = new Order(nextOrderID++, new Date(), itemsToOrder);
-        this.orders.add(order);
-        this.shoppingCart.clearCart();
-
         System.out.println("Order created successfully with total: " + order.calculateOrderTotal(inventoryItems));
         System.out.println();
     }
 
+    /**
+     * Creates an order from the shopping cart of a session through the order pipeline.
+     * The cart is emptied right away and gets its items back if the order can't be placed.
+     *
+     * @param sessionId The ID of the session.
+     * @return Future completed with the order once it is placed and journaled, or exceptionally with
+     * NoSuchElementException or IllegalArgumentException like createOrder, or UncheckedIOException if the order log
+     * can't be written. The cart gets its items back before such a future completes. If the order was placed but
+     * the journal could not be synced it completes with the UncheckedIOException, and like createOrder
+     * the cart stays empty, since the stock was taken.
+     * @throws IllegalArgumentException If the cart is empty.
+     */
+    public CompletableFuture<Order> createOrderAsync(String sessionId) {
+        ShoppingCart cart = this.carts.findCart(sessionId);
+        IntIntMap itemsToOrder = cart == null ? new IntIntMap() : cart.takeItems();
+
+        if (itemsToOrder.isEmpty()) {
+            throw new IllegalArgumentException("Shopping cart is empty! First add some items!");
+        }
+
+        return getOrderPipeline().submit(itemsToOrder, () -> cart.restoreItems(itemsToOrder));
+    }
+
+    //Started on first use, so managers which never place orders asynchronously don't keep a thread
+    private synchronized OrderPipeline getOrderPipeline() {
+        if (this.orderPipeline == null) {
+            this.orderPipeline = new OrderPipeline(this, PIPELINE_CAPACITY, PIPELINE_BATCH_SIZE);
+        }
+        return this.orderPipeline;
+    }
+
+    //Places the orders still queued in the pipeline and stops its thread, a later createOrderAsync starts a new one
+    private void closeOrderPipeline() {
+        OrderPipeline pipeline;
+        //Closed outside the lock, the consumer may need it while it drains
+        synchronized (this) {
+            pipeline = this.orderPipeline;
+            this.orderPipeline = null;
+        }
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    //Runs a batch of mutations under a single hold of the gate and syncs the journal once for all of them
+    void runBatch(Runnable batch) {
+        this.gate.readLock().lock();
+        try {
+            batch.run();
+        } finally {
+            this.gate.readLock().unlock();
+            afterMutation();
+        }
+    }
+
+    //Takes the stock for all items and adds the order, throws and changes nothing if any item doesn't have
+    //enough stock or the order log can't be written. The stripes of all items are held from the check until the
+    //order is added.
+    //The caller has to hold the read lock of the gate.
+    //The order keeps the given map.
+    Order placeOrder(IntIntMap itemsToOrder) {
+        int[] itemIDs = new int[itemsToOrder.size()];
+        int[] quantities = new int[itemsToOrder.size()];
+        int index = 0;
+        for (int slot = itemsToOrder.first(); slot >= 0; slot = itemsToOrder.next(slot)) {
+            itemIDs[index] = itemsToOrder.keyAt(slot);
+            quantities[index] = itemsToOrder.valueAt(slot);
+            index++;
+        }
+
+        int[] stripes = this.itemLocks.lockAll(itemIDs);
+        try {
+            InventoryItem[] items = new InventoryItem[itemIDs.length];
+
+            for (int i = 0; i < itemIDs.length; i++) {
+                InventoryItem item = getItem(itemIDs[i]);
+
+                if (item == null) {
+                    throw new NoSuchElementException("Item with ID " + itemIDs[i] + " not found.");
+                }
+
+                if (item.getQuantity() < quantities[i]) {
+                    throw new IllegalArgumentException("Not enough stock for item ID " + itemIDs[i]);
+                }
+                items[i] = item;
+            }
+
+            for (int i = 0; i < itemIDs.length; i++) {
+                //Stock can still be taken without the stripes through InventoryItem.tryDecrement,
+                //so the items taken so far are given back if one of them runs out after all
+                if (!items[i].tryDecrement(quantities[i])) {
+                    for (int j = 0; j < i; j++) {
+                        items[j].increment(quantities[j]);
+                    }
+                    throw new IllegalArgumentException("Not enough stock for item ID " + itemIDs[i]);
+                }
+            }
+            for (InventoryItem item : items) {
+                logQuantity(item);
+            }
+
+            Order order = new Order(nextOrderID(), new Date(), itemsToOrder);
+            //The order log is written before the order is journaled or added. If it fails the stock is given back
+            //and the return journaled, so the failed order leaves the stock as it was, also after a restart.
+            if (this.orderLog != null) {
+                try {
+                    logOrder(() -> this.orderLog.logCreated(order));
+                } catch (UncheckedIOException e) {
+                    for (int i = 0; i < items.length; i++) {
+                        items[i].increment(quantities[i]);
+                        logQuantity(items[i]);
+                    }
+                    throw e;
+                }
+            }
+            if (this.journal != null) {
+                this.journal.logCreateOrder(order);
+            }
+            addOpenOrder(order);
+
+            return order;
+        } finally {
+            this.itemLocks.unlockAll(stripes);
+        }
+    }
+
     /**
      * Removes an order with the specified ID.
      * Updates the inventory quantities after the order is removed.
@@ -274,19 +1115,51 @@ public class InventoryManager {
      * @throws NoSuchElementException it there isn't an order with the provided ID.
      */
     public void removeOrder(int orderId) {
+        this.gate.readLock().lock();
+        try {
+            restockOrder(orderId);
+        } finally {
+            this.gate.readLock().unlock();
+            afterMutation();
+        }
+    }
+
+    private void restockOrder(int orderId) {
         Order orderToRemove = getOrderById(orderId);
 
-        if (orderToRemove != null) {
-            this.orders.remove(orderToRemove);
+        //Only the thread that takes the order out of the list gives its stock back
+        if (orderToRemove != null && takeOpenOrder(orderToRemove)) {
+            if (this.journal != null) {
+                this.journal.logRemoveOrder(orderId);
+            }
+            if (this.orderLog != null) {
+                logOrder(() -> this.orderLog.logRemoved(orderId));
+            }
 
-            //Updated quantities for each item that was in the order
-            for (HashMap.Entry<Integer, Integer> entry : orderToRemove.getItemsOrdered().entrySet()) {
-                int itemID = entry.getKey();
-                int quantity = entry.getValue();
+            IntIntMap itemsOrdered = orderToRemove.getItemsOrdered();
+            int[] itemIDs = new int[itemsOrdered.size()];
+            int index = 0;
+            for (int slot = itemsOrdered.first(); slot >= 0; slot = itemsOrdered.next(slot)) {
+                itemIDs[index++] = itemsOrdered.keyAt(slot);
+            }
+
+            int[] stripes = this.itemLocks.lockAll(itemIDs);
+            try {
+                //Updated quantities for each item that was in the order
+                for (int slot = itemsOrdered.first(); slot >= 0; slot = itemsOrdered.next(slot)) {
+                    int itemID = itemsOrdered.keyAt(slot);
+                    int quantity = itemsOrdered.valueAt(slot);
 
-                InventoryItem item = getItem(itemID);
+                    InventoryItem item = getItem(itemID);
 
-                item.setQuantity(item.getQuantity() + quantity);
+                    //The item may have been removed from the inventory since the order was placed
+                    if (item != null) {
+                        item.increment(quantity);
+                        logQuantity(item);
+                    }
+                }
+            } finally {
+                this.itemLocks.unlockAll(stripes);
             }
             return;
         }
@@ -311,42 +1184,482 @@ public class InventoryManager {
             throw new IllegalArgumentException("Insufficient payment. The total of the order is " + total + " and payment amount is " + paymentAmount);
         }
 
+        this.gate.readLock().lock();
+        try {
+            //Only one thread can process the order, a second one finds it already gone
+            if (!takeOpenOrder(order)) {
+                throw new NoSuchElementException("Order with ID " + orderId + " doesn't exist!");
+            }
+            if (this.journal != null) {
+                this.journal.logProcessOrder(orderId);
+            }
+            if (this.orderLog != null) {
+                logOrder(() -> this.orderLog.logProcessed(order));
+            }
+        } finally {
+            this.gate.readLock().unlock();
+            afterMutation();
+        }
+
         System.out.println("Order with ID " + orderId + " and total " + total + " was successfully processed ");
         System.out.println();
-
-        orders.remove(order);
     }
 
     /**
-     * Saves the inventory data to a file using ObjectOutputStream for serialization.
+     * Saves the inventory data to a file in the binary snapshot format.
      * Also saves the inventory data in CSV format for readability.
      *
      * @param filename The name of the file to save the inventory data to.
      * @throws IOException If an I/O error occurs while saving the inventory data.
      */
     public void saveInventory(String filename) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filename))) {
-            oos.writeObject(inventoryItems);
+        try (InventoryView view = openView()) {
+            writeInventory(filename, view);
+        }
+    }
+
+    /**
+     * Saves the inventory like saveInventory, but on a background thread.
+     * The saved files show the inventory as it was when this method was called,
+     * orders and stock updates are not blocked while the files are written.
+     *
+     * @param filename The name of the file to save the inventory data to.
+     * @return Future which completes when both files are written, or completes exceptionally with an UncheckedIOException.
+     */
+    public CompletableFuture<Void> saveInventoryInBackground(String filename) {
+        InventoryView view = openView();
+
+        return CompletableFuture.runAsync(() -> {
+            try (view) {
+                writeInventory(filename, view);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, this.snapshotExecutor);
+    }
+
+    /**
+     * Waits until all saves started with saveInventoryInBackground are finished.
+     */
+    public void waitForBackgroundSaves() {
+        try {
+            this.snapshotExecutor.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // the empty task can't fail
+        }
+    }
+
+    /**
+     * Opens a consistent view of the inventory and the open orders at this point in time.
+     * Changes made after this are not visible through the view. The view has to be closed after use.
+     * Opening waits only for the mutations which are already running, the view doesn't hold up later ones.
+     *
+     * @return The opened view.
+     */
+    public InventoryView openView() {
+        this.gate.writeLock().lock();
+        try {
+            //Views opened while nothing changed share a version instead of each recording every change
+            InventoryView.Version newest = this.newestVersion;
+            if (newest != null && newest.isUnchanged() && newest.retain()) {
+                return new InventoryView(newest);
+            }
+
+            InventoryView.Version[] holder = new InventoryView.Version[1];
+            InventoryView.Version version = new InventoryView.Version(this.inventoryItems, this.categoryIndex,
+                    this.orders, () -> this.versions.remove(holder[0]));
+            holder[0] = version;
+            this.versions.add(version);
+            this.newestVersion = version;
+            return new InventoryView(version);
+        } finally {
+            this.gate.writeLock().unlock();
         }
+    }
+
+    private void writeInventory(String filename, InventoryView view) throws IOException {
+        InventorySnapshot.write(Path.of(filename), view, 0, getOrderIDLimit());
 
         try (PrintWriter writer = new PrintWriter(new FileWriter(filename.replace(".ser", ".csv")))) {
             writer.println("ItemID,Name,Quantity,Category,Price");
-            for (InventoryItem item : inventoryItems.values()) {
-                writer.println(item.getId() + "," + item.getName() + "," + item.getQuantity() + "," + item.getCategory() + "," + item.getPrice());
+            for (InventoryItem item : view.getItems()) {
+                writer.println(item.getId() + "," + item.getName() + "," + view.getQuantity(item) + "," + item.getCategory() + "," + view.getPrice(item));
             }
         }
     }
 
+    //Copies the current state of the item into every version in use before it changes
+    private void beforeItemChange(InventoryItem item) {
+        for (InventoryView.Version version : this.versions) {
+            version.beforeItemChange(item);
+        }
+    }
+
+    //Refreshes the row of the item in the columns and its totals, and checks the stock against the low-stock threshold,
+    //which costs a lookup as long as the item has enough. Items replaced by a load or removed are in none of them,
+    //so they are passed over, even if someone still holds them and changes them.
+    private void afterItemChange(InventoryItem item) {
+        if (this.inventoryItems.get(item.getId()) != item) {
+            return;
+        }
+
+        ItemColumns columns = this.columns;
+        if (columns != null) {
+            columns.update(item);
+        }
+        this.aggregates.update(item);
+        this.reorderQueue.check(item);
+        //Expired items which get stock again are swept again
+        this.expirationIndex.restock(item);
+        this.warrantyIndex.restock(item);
+    }
+
+    //Moves the item to its new price in the price index, items replaced by a load are no longer in it
+    private void afterPriceChange(InventoryItem item) {
+        if (this.inventoryItems.get(item.getId()) == item) {
+            this.priceIndex.update(item);
+        }
+    }
+
+    //Adds an order to the open orders, versions in use keep not seeing it
+    private void addOpenOrder(Order order) {
+        for (InventoryView.Version version : this.versions) {
+            version.beforeOrderAdded(order);
+        }
+        this.orders.add(order);
+        this.aggregates.orderOpened(order);
+    }
+
+    //Takes an order out of the open orders, returns false if another thread took it first
+    private boolean takeOpenOrder(Order order) {
+        for (InventoryView.Version version : this.versions) {
+            version.beforeOrderRemoved(order);
+        }
+        if (!this.orders.remove(order)) {
+            return false;
+        }
+        this.aggregates.orderClosed(order);
+        return true;
+    }
+
     /**
-     * Loads the inventory data from a file using ObjectInputStream for deserialization.
+     * Loads the inventory data from a file in the binary snapshot format.
      *
      * @param filename The name of the file to load the inventory data from.
-     * @throws IOException            If an I/O error occurs while loading the inventory data.
-     * @throws ClassNotFoundException If the class of a serialized object cannot be found.
+     * @throws IOException If an I/O error occurs while loading the inventory data or the file is not a snapshot.
+     */
+    public void loadInventory(String filename) throws IOException {
+        InventorySnapshot snapshot = InventorySnapshot.read(Path.of(filename));
+
+        this.gate.writeLock().lock();
+        try {
+            replaceItems(snapshot);
+
+            //The loaded items replace everything recorded so far, so the journal starts over from them
+            if (this.journal != null) {
+                checkpoint();
+            }
+        } finally {
+            this.gate.writeLock().unlock();
+        }
+    }
+
+    //Replaces all items with the ones of a snapshot. The caller has to hold the write lock of the gate.
+    //Open views keep the previous map, so they are not affected by the replacement.
+    private void replaceItems(InventorySnapshot snapshot) {
+        ConcurrentIntObjectMap<InventoryItem> previousItems = this.inventoryItems;
+        this.inventoryItems = toItemMap(snapshot.getItems());
+        releaseReplacedIds(previousItems);
+        restoreNextOrderID(snapshot.getNextOrderID());
+        rebuildIndexes(snapshot.getItems());
+        //Versions opened before the replacement keep showing the previous items
+        this.newestVersion = null;
+    }
+
+    //Builds every index, the running totals and the reorder queue from scratch for the given items.
+    //Everything derived from the items belongs here, so loads and recovery can't leave one of them behind.
+    private void rebuildIndexes(List<InventoryItem> items) {
+        this.categoryIndex = new CategoryIndex(items);
+        this.expirationIndex = DateIndex.ofExpirations(items);
+        this.warrantyIndex = DateIndex.ofWarranties(items);
+        this.priceIndex = new PriceIndex(items);
+        this.textIndex = new TextIndex(items);
+        this.reorderQueue.reset(items);
+        this.aggregates.reset(items);
+        if (this.columns != null) {
+            this.columns = new ItemColumns(items);
+        }
+    }
+
+    //Frees the IDs of the previous items which the new ones don't use, so they can be used for new items
+    private void releaseReplacedIds(ConcurrentIntObjectMap<InventoryItem> previousItems) {
+        for (InventoryItem item : previousItems.values()) {
+            if (this.inventoryItems.get(item.getId()) == null) {
+                InventoryItem.releaseId(item.getId());
+            }
+        }
+    }
+
+    private ConcurrentIntObjectMap<InventoryItem> toItemMap(List<InventoryItem> items) {
+        //Sized up front so the map doesn't have to rehash while a large snapshot is loaded
+        ConcurrentIntObjectMap<InventoryItem> itemMap = new ConcurrentIntObjectMap<>(items.size());
+        for (InventoryItem item : items) {
+            item.setChangeListener(this.itemListener);
+            itemMap.put(item.getId(), item);
+        }
+
+        return itemMap;
+    }
+
+    /**
+     * Restores the state from the snapshot and the journal and starts journaling every mutation.
+     * The snapshot is loaded first and the journal is then replayed on top of it.
+     *
+     * @param snapshotFile The snapshot the journal is compacted into.
+     * @param journalFile  The file of the write-ahead journal.
+     * @throws IOException If an I/O error occurs or the journal doesn't belong to the snapshot.
      */
-    public void loadInventory(String filename) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filename))) {
-            inventoryItems = (HashMap<Integer, InventoryItem>) ois.readObject();
+    public void openJournal(String snapshotFile, String journalFile) throws IOException {
+        if (this.journal != null) {
+            throw new IllegalStateException("Journal is already open.");
+        }
+
+        this.snapshotPath = Path.of(snapshotFile);
+        this.journalPath = Path.of(journalFile);
+
+        long generation = 0;
+        if (Files.exists(this.snapshotPath)) {
+            InventorySnapshot snapshot = InventorySnapshot.read(this.snapshotPath);
+            this.gate.writeLock().lock();
+            try {
+                replaceItems(snapshot);
+            } finally {
+                this.gate.writeLock().unlock();
+            }
+            generation = snapshot.getGeneration();
+        }
+
+        this.journal = InventoryJournal.recover(this.journalPath, generation, this);
+    }
+
+    /**
+     * Compacts the journal: saves the inventory to a new snapshot and starts a new journal
+     * which only holds the open orders and the next order ID.
+     * Both files are written next to the current ones first and then moved over them,
+     * so a crash during compaction leaves either the old or the new pair.
+     *
+     * @throws IOException If an I/O error occurs while writing the files.
+     */
+    public void checkpoint() throws IOException {
+        //The snapshot and the new journal have to match exactly, so no mutation may run during the compaction
+        this.gate.writeLock().lock();
+        try {
+            if (this.journal == null) {
+                throw new IllegalStateException("Journal is not open.");
+            }
+
+            long generation = this.journal.getGeneration() + 1;
+            Path snapshotTmp = this.snapshotPath.resolveSibling(this.snapshotPath.getFileName() + ".tmp");
+            Path journalTmp = InventoryJournal.compactionPath(this.journalPath);
+
+            try (InventoryView view = openView()) {
+                InventorySnapshot.write(snapshotTmp, view, generation, getOrderIDLimit());
+            }
+            try (InventoryJournal compacted = InventoryJournal.create(journalTmp, generation)) {
+                compacted.logOrderSequence(getOrderIDLimit());
+                for (Order order : this.orders) {
+                    compacted.logCreateOrder(order);
+                }
+            }
+
+            Files.move(snapshotTmp, this.snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.journal.close();
+            Files.move(journalTmp, this.journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.journal = InventoryJournal.open(this.journalPath, generation);
+        } finally {
+            this.gate.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Places the orders queued by createOrderAsync, then syncs and closes the journal.
+     * Mutations after this are no longer journaled.
+     *
+     * @throws IOException If an I/O error occurs while closing the journal.
+     */
+    public void closeJournal() throws IOException {
+        closeOrderPipeline();
+        if (this.journal != null) {
+            this.journal.close();
+            this.journal = null;
+        }
+    }
+
+    /**
+     * Sets after how many journal entries the journal is compacted into a new snapshot.
+     *
+     * @param compactionThreshold The number of entries.
+     * @throws IllegalArgumentException If the number is less than 1.
+     */
+    public void setCompactionThreshold(long compactionThreshold) {
+        if (compactionThreshold < 1) {
+            throw new IllegalArgumentException("Compaction threshold must be at least 1.");
+        }
+
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    //Waits until the entries of the mutation are durable and compacts the journal once it grew large enough
+    private void afterMutation() {
+        InventoryJournal current = this.journal;
+        if (current == null) {
+            return;
+        }
+
+        current.sync();
+
+        if (current.getEntryCount() >= this.compactionThreshold) {
+            this.gate.writeLock().lock();
+            try {
+                //Another thread may have compacted the journal while this one waited for the lock
+                if (this.journal == current) {
+                    checkpoint();
+                }
+            } catch (IOException e) {
+                System.out.println("Error compacting the journal: " + e.getMessage());
+                System.out.println();
+            } finally {
+                this.gate.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Opens the persistent order log and restores the open orders and the next order ID from it.
+     * Open orders which are already known, for example from the journal, are not added twice,
+     * and open orders which the log doesn't have yet are written to it.
+     *
+     * @param directory The directory of the order log.
+     * @throws IOException If an I/O error occurs while reading the log.
+     */
+    public void openOrderLog(String directory) throws IOException {
+        if (this.orderLog != null) {
+            throw new IllegalStateException("Order log is already open.");
+        }
+
+        OrderLog log = OrderLog.open(directory);
+        for (Order order : log.getOpenOrders()) {
+            restoreOrder(order);
+        }
+        for (Order order : this.orders) {
+            if (!log.isOpen(order.getOrderID()) && log.getProcessedOrder(order.getOrderID()) == null) {
+                log.logCreated(order);
+            }
+        }
+        restoreNextOrderID(log.getNextOrderID());
+
+        this.orderLog = log;
+    }
+
+    /**
+     * Closes the order log. Orders after this are no longer persisted.
+     *
+     * @throws IOException If an I/O error occurs while closing the log.
+     */
+    public void closeOrderLog() throws IOException {
+        if (this.orderLog != null) {
+            this.orderLog.close();
+            this.orderLog = null;
+        }
+    }
+
+    /**
+     * Searches for an order which was already processed.
+     *
+     * @param orderId The ID of the order.
+     * @return The processed order, or null if not found or if the order log is not open.
+     * @throws IOException If an I/O error occurs while reading the log.
+     */
+    public Order getProcessedOrder(int orderId) throws IOException {
+        return this.orderLog == null ? null : this.orderLog.getProcessedOrder(orderId);
+    }
+
+    /**
+     * Gets all processed orders which were placed in a date range.
+     *
+     * @param from The start of the range, inclusive.
+     * @param to   The end of the range, inclusive.
+     * @return List of the processed orders sorted by ID, empty if the order log is not open.
+     * @throws IOException If an I/O error occurs while reading the log.
+     */
+    public List<Order> getProcessedOrders(Date from, Date to) throws IOException {
+        return this.orderLog == null ? new ArrayList<>() : this.orderLog.getProcessedOrders(from, to);
+    }
+
+    private interface OrderLogWrite {
+        void write() throws IOException;
+    }
+
+    private static void logOrder(OrderLogWrite write) {
+        try {
+            write.write();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Order log write failed.", e);
+        }
+    }
+
+    // Used by the journal replay to add an order without touching the stock, the stock changes are replayed separately
+    void restoreOrder(Order order) {
+        if (getOrderById(order.getOrderID()) == null) {
+            addOpenOrder(order);
+        }
+        restoreNextOrderID(order.getOrderID() + 1);
+    }
+
+    // Used by the journal replay to drop a removed or processed order
+    void discardOrder(int orderId) {
+        Order order = getOrderById(orderId);
+        if (order != null) {
+            takeOpenOrder(order);
+        }
+    }
+
+    void restoreNextOrderID(int nextOrderID) {
+        if (nextOrderID <= 0) {
+            return;
+        }
+
+        synchronized (this.orderIDs) {
+            //Claiming the last used ID moves the next block past it
+            this.orderIDs.claim(nextOrderID - 1);
+            if (nextOrderID > this.nextOrderID) {
+                this.nextOrderID = nextOrderID < this.orderIDBlockEnd ? nextOrderID : this.orderIDBlockEnd;
+            }
+        }
+    }
+
+    //Hands out the next order ID, taking a new block of IDs when the current one is used up
+    private int nextOrderID() {
+        synchronized (this.orderIDs) {
+            if (this.nextOrderID == this.orderIDBlockEnd) {
+                int start = this.orderIDs.claimBlock(ORDER_ID_BLOCK_SIZE);
+                //Recorded before any ID of the block is used, so a restart continues after the block
+                if (this.journal != null) {
+                    this.journal.logOrderSequence(start + ORDER_ID_BLOCK_SIZE);
+                }
+                this.nextOrderID = start;
+                this.orderIDBlockEnd = start + ORDER_ID_BLOCK_SIZE;
+            }
+            return this.nextOrderID++;
+        }
+    }
+
+    //Lowest order ID which can't have been handed out yet
+    private int getOrderIDLimit() {
+        synchronized (this.orderIDs) {
+            return Math.max(this.orderIDBlockEnd, this.orderIDs.getHighest() + 1);
         }
     }
 }
@@ -0,0 +1,530 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Class representing the HTTP/JSON front end of the inventory management system.
+ * Offers the same operations as the console menu on the JDK's built-in HTTP server.
+ * Every request runs on its own virtual thread, so thousands of clients can wait on locks or disk at the same time.
+ * The API has no authentication, so the server only listens on the loopback interface, and the files of the
+ * inventory routes are names relative to a data directory which can't point outside of it.
+ *
+ * GET    /items                            All items
+ * POST   /items                            Add an item {type, name, id, quantity, description, price, warranty|expirationDate|weight}
+ * GET    /items/{id}                       One item
+ * DELETE /items/{id}                       Remove an item
+ * GET    /categories/{category}            Items of a category
+ * GET    /carts/{session}                  Cart of a session
+ * POST   /carts/{session}/items            Add an item to the cart {itemId, quantity}
+ * DELETE /carts/{session}/items/{itemId}   Remove an item from the cart
+ * POST   /carts/{session}/orders           Place an order from the cart
+ * GET    /orders                           Open orders
+ * GET    /orders/{id}                      An open or processed order
+ * DELETE /orders/{id}                      Remove an order and restock its items
+ * POST   /orders/{id}/payment              Pay and process an order {method, key, credential, amount}
+ * GET    /payment-methods                  Keys of all payment methods
+ * POST   /payment-methods                  Add a payment method {type, key, credential, holder, expirationDate}
+ * DELETE /payment-methods/{key}            Remove a payment method
+ * POST   /inventory/save                   Save the inventory {file}, relative to the data directory
+ * POST   /inventory/load                   Load the inventory {file}, relative to the data directory
+ * POST   /inventory/import                 Import items from a CSV file {file}, relative to the data directory
+ */
+
+public class InventoryServer implements AutoCloseable {
+    //Connections the operating system queues while all accepted ones are busy
+    private static final int BACKLOG = 4096;
+
+    private final InventoryManager manager;
+    private final PaymentProcessor paymentProcessor;
+    //Absolute and normalized, every file of the inventory routes is inside it
+    private final Path dataDirectory;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Creates the server. It doesn't accept requests until start is called.
+     *
+     * @param manager          The inventory to serve.
+     * @param paymentProcessor The payment methods used to pay orders.
+     * @param port             The port to listen on, on the loopback interface. 0 picks a free one.
+     * @param dataDirectory    The directory the inventory routes save, load and import files in.
+     * @throws IOException If the port can't be bound.
+     */
+    public InventoryServer(InventoryManager manager, PaymentProcessor paymentProcessor, int port, Path dataDirectory)
+            throws IOException {
+        this.manager = manager;
+        this.paymentProcessor = paymentProcessor;
+        this.dataDirectory = dataDirectory.toAbsolutePath().normalize();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server.setExecutor(this.executor);
+
+        this.server.createContext("/items", exchange -> handle(exchange, this::items));
+        this.server.createContext("/categories", exchange -> handle(exchange, this::categories));
+        this.server.createContext("/carts", exchange -> handle(exchange, this::carts));
+        this.server.createContext("/orders", exchange -> handle(exchange, this::orders));
+        this.server.createContext("/payment-methods", exchange -> handle(exchange, this::paymentMethods));
+        this.server.createContext("/inventory", exchange -> handle(exchange, this::inventory));
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests and waits up to a second for the running ones to finish.
+     */
+    @Override
+    public void close() {
+        this.server.stop(1);
+        this.executor.close();
+    }
+
+    private Response items(String method, List<String> path, String body) {
+        if (path.size() == 1) {
+            if (method.equals("GET")) {
+                return Response.ok(itemsToJson(this.manager.getItems()));
+            }
+            if (method.equals("POST")) {
+                InventoryItem item = parseItem(Json.parseObject(body));
+                this.manager.addItem(item);
+                return new Response(201, itemToJson(item));
+            }
+        } else if (path.size() == 2) {
+            int itemID = parseInt(path.get(1), "item ID");
+            if (method.equals("GET")) {
+                InventoryItem item = this.manager.getItem(itemID);
+                if (item == null) {
+                    throw new NoSuchElementException("Item with ID " + itemID + " not found.");
+                }
+                return Response.ok(itemToJson(item));
+            }
+            if (method.equals("DELETE")) {
+                this.manager.removeItem(itemID);
+                return Response.noContent();
+            }
+        }
+        return Response.notFound();
+    }
+
+    private Response categories(String method, List<String> path, String body) {
+        if (path.size() == 2 && method.equals("GET")) {
+            return Response.ok(itemsToJson(this.manager.getItemsByCategory(path.get(1))));
+        }
+        return Response.notFound();
+    }
+
+    private Response carts(String method, List<String> path, String body) {
+        if (path.size() < 2) {
+            return Response.notFound();
+        }
+        String sessionId = path.get(1);
+
+        if (path.size() == 2 && method.equals("GET")) {
+            return Response.ok(cartToJson(this.manager.getCart(sessionId)));
+        }
+        if (path.size() == 3 && path.get(2).equals("items") && method.equals("POST")) {
+            Map<String, String> fields = Json.parseObject(body);
+            int itemID = parseInt(required(fields, "itemId"), "item ID");
+            int quantity = parseInt(required(fields, "quantity"), "quantity");
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Item quantity must be at least 1!");
+            }
+            this.manager.addItemToCart(sessionId, itemID, quantity);
+            return Response.ok(cartToJson(this.manager.getCart(sessionId)));
+        }
+        if (path.size() == 4 && path.get(2).equals("items") && method.equals("DELETE")) {
+            if (this.manager.getCart(sessionId).isEmpty()) {
+                throw new NoSuchElementException("No items in the shopping cart!");
+            }
+            this.manager.removeItemFromCart(sessionId, parseInt(path.get(3), "item ID"));
+            return Response.ok(cartToJson(this.manager.getCart(sessionId)));
+        }
+        if (path.size() == 3 && path.get(2).equals("orders") && method.equals("POST")) {
+            //Blocking is cheap on a virtual thread, the carrier thread serves other requests meanwhile
+            Order order = this.manager.createOrderAsync(sessionId).join();
+            return new Response(201, orderToJson(order));
+        }
+        return Response.notFound();
+    }
+
+    private Response orders(String method, List<String> path, String body) throws IOException {
+        if (path.size() == 1 && method.equals("GET")) {
+            StringBuilder json = new StringBuilder("[");
+            for (Order order : this.manager.getOrders()) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append(orderToJson(order));
+            }
+            return Response.ok(json.append(']').toString());
+        }
+        if (path.size() < 2) {
+            return Response.notFound();
+        }
+
+        int orderId = parseInt(path.get(1), "order ID");
+        if (path.size() == 2 && method.equals("GET")) {
+            Order order = this.manager.getOrderById(orderId);
+            if (order == null) {
+                order = this.manager.getProcessedOrder(orderId);
+            }
+            if (order == null) {
+                throw new NoSuchElementException("Order with ID " + orderId + " doesn't exist!");
+            }
+            return Response.ok(orderToJson(order));
+        }
+        if (path.size() == 2 && method.equals("DELETE")) {
+            this.manager.removeOrder(orderId);
+            return Response.noContent();
+        }
+        if (path.size() == 3 && path.get(2).equals("payment") && method.equals("POST")) {
+            Map<String, String> fields = Json.parseObject(body);
+            Order order = this.manager.getOrderById(orderId);
+            if (order == null) {
+                throw new NoSuchElementException("Order with ID " + orderId + " doesn't exist!");
+            }
+            double amount = parseDouble(required(fields, "amount"), "amount");
+            if (amount <= 0) {
+                throw new IllegalArgumentException("Payment amount must be greater than 0!");
+            }
+            //Checked before the payment is charged, processOrder checks again but by then the money is taken
+            double total = this.manager.calculateOrderTotal(order);
+            if (amount < total) {
+                throw new IllegalArgumentException("Insufficient payment. The total of the order is " + total + " and payment amount is " + amount);
+            }
+
+            String key = required(fields, "key");
+            String credential = required(fields, "credential");
+            CompletableFuture<Void> payment;
+            switch (required(fields, "method").trim().toLowerCase()) {
+                case "credit card":
+                    payment = this.paymentProcessor.processCreditCardPaymentAsync(amount, key, credential);
+                    break;
+                case "paypal":
+                    payment = this.paymentProcessor.processPayPalPaymentAsync(amount, key, credential);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid payment method!");
+            }
+            payment.join();
+
+            this.manager.processOrder(orderId, amount);
+            return Response.noContent();
+        }
+        return Response.notFound();
+    }
+
+    private Response paymentMethods(String method, List<String> path, String body) {
+        if (path.size() == 1 && method.equals("GET")) {
+            StringBuilder json = new StringBuilder("[");
+            for (String key : this.paymentProcessor.getPaymentMethodKeys()) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append(Json.quote(key));
+            }
+            return Response.ok(json.append(']').toString());
+        }
+        if (path.size() == 1 && method.equals("POST")) {
+            Map<String, String> fields = Json.parseObject(body);
+            String key = required(fields, "key");
+            String credential = required(fields, "credential");
+
+            switch (required(fields, "type").trim().toLowerCase()) {
+                case "credit card":
+                    String holder = fields.getOrDefault("holder", "");
+                    String expirationDate = fields.getOrDefault("expirationDate", "");
+                    if (!this.paymentProcessor.validateCreditCardPayment(key, holder, expirationDate, credential)) {
+                        throw new IllegalArgumentException("Invalid card details. Card Number must be 16 symbols, CCV is 3 symbols. All fields are required.");
+                    }
+                    break;
+                case "paypal":
+                    if (!this.paymentProcessor.validatePayPalPayment(key, credential)) {
+                        throw new IllegalArgumentException("Invalid PayPal credentials. Email or password can't be empty!");
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid payment method!");
+            }
+
+            this.paymentProcessor.addPaymentMethod(key, credential);
+            return new Response(201, Json.quote(key));
+        }
+        if (path.size() == 2 && method.equals("DELETE")) {
+            this.paymentProcessor.removePaymentMethod(path.get(1));
+            return Response.noContent();
+        }
+        return Response.notFound();
+    }
+
+    private Response inventory(String method, List<String> path, String body) throws IOException {
+        if (path.size() != 2 || !method.equals("POST")) {
+            return Response.notFound();
+        }
+        String file = dataFile(required(Json.parseObject(body), "file")).toString();
+
+        switch (path.get(1)) {
+            case "save":
+                this.manager.saveInventoryInBackground(file).join();
+                return Response.noContent();
+            case "load":
+                this.manager.loadInventory(file);
+                return Response.noContent();
+            case "import":
+                ImportReport report = new CsvImporter(this.manager).importFile(file);
+                StringBuilder errors = new StringBuilder("[");
+                for (String error : report.getErrors()) {
+                    if (errors.length() > 1) {
+                        errors.append(',');
+                    }
+                    errors.append(Json.quote(error));
+                }
+                return Response.ok("{\"imported\":" + report.getImportedCount() + ",\"rejected\":" + report.getRejectedCount()
+                        + ",\"errors\":" + errors.append(']') + "}");
+            default:
+                return Response.notFound();
+        }
+    }
+
+    //Resolves a file name of a request in the data directory, absolute names and names with .. are rejected
+    private Path dataFile(String file) {
+        Path relative = Path.of(file);
+        if (relative.isAbsolute() || relative.getRoot() != null) {
+            throw new IllegalArgumentException("File must be a name relative to the data directory.");
+        }
+        for (Path part : relative) {
+            if (part.toString().equals("..")) {
+                throw new IllegalArgumentException("File must not contain '..'.");
+            }
+        }
+
+        Path resolved = this.dataDirectory.resolve(relative).normalize();
+        if (!resolved.startsWith(this.dataDirectory) || resolved.equals(this.dataDirectory)) {
+            throw new IllegalArgumentException("File must be a name relative to the data directory.");
+        }
+        return resolved;
+    }
+
+    private void handle(HttpExchange exchange, Route route) throws IOException {
+        Response response;
+        try {
+            response = route.handle(exchange.getRequestMethod(), splitPath(exchange), readBody(exchange));
+        } catch (Exception e) {
+            response = errorResponse(e);
+        }
+
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            if (response.body == null) {
+                exchange.sendResponseHeaders(response.status, -1);
+                return;
+            }
+
+            byte[] bytes = response.body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(response.status, bytes.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    //Maps the exceptions of the inventory to status codes the same way for every route
+    private static Response errorResponse(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException
+                || error instanceof UncheckedIOException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+
+        int status;
+        if (error instanceof NoSuchElementException) {
+            status = 404;
+        } else if (error instanceof IllegalArgumentException || error instanceof DateTimeParseException) {
+            status = 400;
+        } else if (error instanceof RejectedExecutionException || error instanceof TimeoutException) {
+            //The payment provider is overloaded, down or too slow, the client may retry later
+            status = 503;
+        } else if (error instanceof IllegalStateException) {
+            status = 409;
+        } else {
+            status = 500;
+        }
+
+        String message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        return new Response(status, "{\"error\":" + Json.quote(message) + "}");
+    }
+
+    private static List<String> splitPath(HttpExchange exchange) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : exchange.getRequestURI().getRawPath().split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(URLDecoder.decode(segment, StandardCharsets.UTF_8));
+            }
+        }
+        return segments;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream input = exchange.getRequestBody()) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static InventoryItem parseItem(Map<String, String> fields) {
+        String name = required(fields, "name");
+        int itemID = parseInt(required(fields, "id"), "item ID");
+        int quantity = parseInt(required(fields, "quantity"), "quantity");
+        String description = fields.getOrDefault("description", "");
+        double price = parseDouble(required(fields, "price"), "price");
+
+        switch (required(fields, "type").trim().toLowerCase()) {
+            case "electronics":
+                return new ElectronicsItem(name, itemID, quantity, required(fields, "warranty"), description, price);
+            case "grocery":
+                return new GroceryItem(name, itemID, quantity, required(fields, "expirationDate"), description, price);
+            case "fragile":
+                return new FragileItem(name, itemID, quantity, parseDouble(required(fields, "weight"), "weight"), description, price);
+            default:
+                throw new IllegalArgumentException("Invalid item type.");
+        }
+    }
+
+    private static String required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing field: " + name);
+        }
+        return value;
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static double parseDouble(String value, String name) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static String itemsToJson(Collection<InventoryItem> items) {
+        StringBuilder json = new StringBuilder("[");
+        for (InventoryItem item : items) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(itemToJson(item));
+        }
+        return json.append(']').toString();
+    }
+
+    private static String itemToJson(InventoryItem item) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"id\":").append(item.getId())
+                .append(",\"name\":").append(Json.quote(item.getName()))
+                .append(",\"category\":").append(Json.quote(item.getCategory()))
+                .append(",\"quantity\":").append(item.getQuantity())
+                .append(",\"price\":").append(item.getPrice())
+                .append(",\"description\":").append(Json.quote(item.getDescription()));
+
+        if (item instanceof ElectronicsItem electronics) {
+            json.append(",\"warranty\":").append(Json.quote(electronics.getWarranty()));
+        } else if (item instanceof GroceryItem grocery) {
+            json.append(",\"expirationDate\":").append(Json.quote(grocery.getExpirationDate()));
+        } else if (item instanceof FragileItem fragile) {
+            json.append(",\"weight\":").append(fragile.getWeight());
+        }
+        return json.append('}').toString();
+    }
+
+    private static String cartToJson(ShoppingCart cart) {
+        StringBuilder json = new StringBuilder("[");
+        cart.forEachItem((itemID, quantity) -> {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"itemId\":").append(itemID).append(",\"quantity\":").append(quantity).append('}');
+        });
+        return json.append(']').toString();
+    }
+
+    private String orderToJson(Order order) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"id\":").append(order.getOrderID())
+                .append(",\"date\":").append(Json.quote(order.getOrderDate().toInstant().toString()))
+                .append(",\"total\":").append(this.manager.calculateOrderTotal(order))
+                .append(",\"items\":[");
+
+        IntIntMap itemsOrdered = order.getItemsOrdered();
+        boolean first = true;
+        for (int slot = itemsOrdered.first(); slot >= 0; slot = itemsOrdered.next(slot)) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"itemId\":").append(itemsOrdered.keyAt(slot)).append(",\"quantity\":").append(itemsOrdered.valueAt(slot)).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private interface Route {
+        Response handle(String method, List<String> path, String body) throws IOException;
+    }
+
+    private static final class Response {
+        private final int status;
+        //Null for responses without a body
+        private final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        private static Response ok(String body) {
+            return new Response(200, body);
+        }
+
+        private static Response noContent() {
+            return new Response(204, null);
+        }
+
+        private static Response notFound() {
+            return new Response(404, "{\"error\":\"Not found\"}");
+        }
+    }
+}
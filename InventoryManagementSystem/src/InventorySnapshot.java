@@ -0,0 +1,478 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Class representing the binary snapshot format of the inventory.
+ * A snapshot consists of a header, a dictionary with all strings used by the items,
+ * fixed-width records for every item and one section for each item subtype.
+ * The dictionary holds the names of the items and the part of the shared SymbolTables they use, categories and
+ * descriptions are collected by their codes and loading adds them to the tables again, since the codes are only valid
+ * in one program.
+ * Snapshots are written through a FileChannel to a temporary file which then replaces the snapshot,
+ * and read back through a memory-mapped file.
+ */
+
+public final class InventorySnapshot {
+    //"INVS" in ASCII, used to recognize snapshot files
+    private static final int MAGIC = 0x494E5653;
+    private static final short VERSION = 3;
+
+    static final byte TYPE_GENERIC = 0;
+    static final byte TYPE_ELECTRONICS = 1;
+    static final byte TYPE_GROCERY = 2;
+    static final byte TYPE_FRAGILE = 3;
+
+    private static final byte FLAG_BREAKABLE = 1;
+    private static final byte FLAG_PERISHABLE = 2;
+
+    //magic, version, reserved, item count, dictionary size, electronics, grocery and fragile counts.
+    //Version 2 appends the journal generation the snapshot belongs to, version 3 the next order ID.
+    private static final int MIN_HEADER_SIZE = 4 + 2 + 2 + 4 + 4 + 4 + 4 + 4;
+    //id, quantity, price, type, flags, name, description and category references
+    private static final int RECORD_SIZE = 4 + 4 + 8 + 1 + 1 + 4 + 4 + 4;
+    //Every subtype section stores one 8 byte value per item: warranty day, expiration day or weight
+    private static final int SUBTYPE_RECORD_SIZE = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int NO_STRING = -1;
+
+    private final List<InventoryItem> items;
+    private final long generation;
+    private final int nextOrderID;
+
+    private InventorySnapshot(List<InventoryItem> items, long generation, int nextOrderID) {
+        this.items = items;
+        this.generation = generation;
+        this.nextOrderID = nextOrderID;
+    }
+
+    /**
+     * Gets all items from the snapshot in the order in which they were saved.
+     */
+    public List<InventoryItem> getItems() {
+        return this.items;
+    }
+
+    /**
+     * Gets the generation of the journal that continues from this snapshot.
+     * Snapshots which are not part of a journal checkpoint have generation 0.
+     */
+    public long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * Gets the lowest order ID which no order had when the snapshot was written, 0 for snapshots before version 3.
+     */
+    public int getNextOrderID() {
+        return this.nextOrderID;
+    }
+
+    /**
+     * Writes the inventory as seen by a view to a snapshot file, replacing the file if it exists.
+     *
+     * @param path The file to write the snapshot to.
+     * @param view The view of the inventory to save.
+     * @throws IOException If an I/O error occurs while writing the file.
+     */
+    public static void write(Path path, InventoryView view) throws IOException {
+        write(path, view, 0);
+    }
+
+    /**
+     * Writes the inventory as seen by a view to a snapshot file which belongs to the given journal generation.
+     *
+     * @param path       The file to write the snapshot to.
+     * @param view       The view of the inventory to save.
+     * @param generation The generation of the journal that continues from this snapshot.
+     * @throws IOException If an I/O error occurs while writing the file.
+     */
+    public static void write(Path path, InventoryView view, long generation) throws IOException {
+        write(path, view, generation, 0);
+    }
+
+    /**
+     * Writes the inventory as seen by a view to a snapshot file, together with the order IDs handed out so far.
+     * The file is only replaced once the new snapshot is complete, a failed write leaves the previous one in place.
+     *
+     * @param path        The file to write the snapshot to.
+     * @param view        The view of the inventory to save.
+     * @param generation  The generation of the journal that continues from this snapshot.
+     * @param nextOrderID The lowest order ID which wasn't handed out yet, so order IDs are not reused after a restart.
+     * @throws IOException If an I/O error occurs while writing the file.
+     */
+    public static void write(Path path, InventoryView view, long generation, int nextOrderID) throws IOException {
+        List<InventoryItem> items = view.getItems();
+
+        //First pass collects the distinct strings and the size of each subtype section.
+        //Names by their string, descriptions and categories by their codes in their SymbolTables.
+        HashMap<String, Integer> codes = new HashMap<>();
+        IntIntMap descriptionCodes = new IntIntMap();
+        IntIntMap symbolCodes = new IntIntMap();
+        ArrayList<byte[]> dictionary = new ArrayList<>();
+        int electronicsCount = 0;
+        int groceryCount = 0;
+        int fragileCount = 0;
+
+        for (InventoryItem item : items) {
+            encode(item.getName(), codes, dictionary);
+            encodeSymbol(item.getDescriptionCode(), SymbolTable.sharedWeak(), descriptionCodes, dictionary);
+            encodeSymbol(item.getCategoryCode(), SymbolTable.shared(), symbolCodes, dictionary);
+
+            switch (typeOf(item)) {
+                case TYPE_ELECTRONICS -> electronicsCount++;
+                case TYPE_GROCERY -> groceryCount++;
+                case TYPE_FRAGILE -> fragileCount++;
+                default -> { }
+            }
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+            buffer.putInt(MAGIC);
+            buffer.putShort(VERSION);
+            buffer.putShort((short) 0);
+            buffer.putInt(items.size());
+            buffer.putInt(dictionary.size());
+            buffer.putInt(electronicsCount);
+            buffer.putInt(groceryCount);
+            buffer.putInt(fragileCount);
+            buffer.putLong(generation);
+            buffer.putInt(nextOrderID);
+
+            for (byte[] bytes : dictionary) {
+                ensureCapacity(channel, buffer, 4);
+                buffer.putInt(bytes.length);
+                if (bytes.length > buffer.capacity()) {
+                    flush(channel, buffer);
+                    writeFully(channel, ByteBuffer.wrap(bytes));
+                } else {
+                    ensureCapacity(channel, buffer, bytes.length);
+                    buffer.put(bytes);
+                }
+            }
+
+            for (InventoryItem item : items) {
+                ensureCapacity(channel, buffer, RECORD_SIZE);
+                buffer.putInt(item.getId());
+                buffer.putInt(view.getQuantity(item));
+                buffer.putDouble(view.getPrice(item));
+                buffer.put(typeOf(item));
+                buffer.put(flagsOf(item));
+                buffer.putInt(codeOf(item.getName(), codes));
+                buffer.putInt(descriptionCodes.getOrDefault(item.getDescriptionCode(), NO_STRING));
+                buffer.putInt(symbolCodes.getOrDefault(item.getCategoryCode(), NO_STRING));
+            }
+
+            //Subtype sections keep the same order in which the items appear in the records section
+            for (byte type = TYPE_ELECTRONICS; type <= TYPE_FRAGILE; type++) {
+                for (InventoryItem item : items) {
+                    if (typeOf(item) == type) {
+                        ensureCapacity(channel, buffer, SUBTYPE_RECORD_SIZE);
+                        buffer.putLong(subtypeValueOf(item));
+                    }
+                }
+            }
+
+            flush(channel, buffer);
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads all items from a snapshot file.
+     * The IDs of the restored items are registered again, so they replace any items with the same IDs.
+     * Every record is checked before the first ID is touched, a snapshot which can't be read leaves the IDs as they were.
+     *
+     * @param path The file to read the snapshot from.
+     * @return The snapshot with all items in the order in which they were saved.
+     * @throws IOException If an I/O error occurs or the file is not a valid snapshot.
+     */
+    public static InventorySnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MIN_HEADER_SIZE) {
+                throw new IOException("File " + path + " is not an inventory snapshot.");
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + path + " is too large to be mapped.");
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            try {
+                return read(path, buffer);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                     | DateTimeException e) {
+                //Lengths and counts are checked while reading, this catches what the checks don't describe,
+                //like item fields the constructors don't accept
+                throw new IOException("Snapshot " + path + " is truncated or corrupted.", e);
+            }
+        }
+    }
+
+    private static InventorySnapshot read(Path path, MappedByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("File " + path + " is not an inventory snapshot.");
+        }
+        short version = buffer.getShort();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ".");
+        }
+        buffer.getShort();
+
+        int itemCount = buffer.getInt();
+        int dictionarySize = buffer.getInt();
+        int electronicsCount = buffer.getInt();
+        int groceryCount = buffer.getInt();
+        int fragileCount = buffer.getInt();
+        if (buffer.remaining() < (version >= 2 ? 8 : 0) + (version >= 3 ? 4 : 0)) {
+            throw new IOException("Snapshot " + path + " is truncated or corrupted.");
+        }
+        long generation = version >= 2 ? buffer.getLong() : 0;
+        int nextOrderID = version >= 3 ? buffer.getInt() : 0;
+
+        //Every string takes at least its 4 byte length, so a larger dictionary can't fit in the file
+        if (itemCount < 0 || electronicsCount < 0 || groceryCount < 0 || fragileCount < 0
+                || dictionarySize < 0 || dictionarySize > buffer.remaining() / 4) {
+            throw new IOException("Snapshot " + path + " is truncated or corrupted.");
+        }
+
+        String[] dictionary = new String[dictionarySize];
+        for (int i = 0; i < dictionarySize; i++) {
+            int length = buffer.remaining() < 4 ? -1 : buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Snapshot " + path + " is truncated or corrupted.");
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int size = buffer.limit();
+        int recordsStart = buffer.position();
+        long electronicsStart = recordsStart + (long) itemCount * RECORD_SIZE;
+        long groceryStart = electronicsStart + (long) electronicsCount * SUBTYPE_RECORD_SIZE;
+        long fragileStart = groceryStart + (long) groceryCount * SUBTYPE_RECORD_SIZE;
+        if (fragileStart + (long) fragileCount * SUBTYPE_RECORD_SIZE != size) {
+            throw new IOException("Snapshot " + path + " is truncated or corrupted.");
+        }
+
+        //First pass decodes and checks every record without creating items, so a corrupted record fails the read
+        //before any ID is released. It keeps the subtype values, which the second pass would have to walk again.
+        long[] subtypeValues = new long[itemCount];
+        IntIntMap seenIDs = new IntIntMap(itemCount);
+        int electronicsIndex = (int) electronicsStart;
+        int groceryIndex = (int) groceryStart;
+        int fragileIndex = (int) fragileStart;
+
+        for (int i = 0; i < itemCount; i++) {
+            int offset = recordsStart + i * RECORD_SIZE;
+            int id = buffer.getInt(offset);
+            if (id < 0 || seenIDs.containsKey(id)) {
+                throw new IOException("Invalid or duplicate item ID " + id + " in snapshot " + path + ".");
+            }
+            seenIDs.put(id, i);
+            byte type = buffer.get(offset + 16);
+            decode(dictionary, buffer.getInt(offset + 18));
+            decode(dictionary, buffer.getInt(offset + 22));
+            decode(dictionary, buffer.getInt(offset + 26));
+
+            //Each section must hold a value for every item of its type, and no more
+            switch (type) {
+                case TYPE_ELECTRONICS -> {
+                    checkSection(path, electronicsIndex, groceryStart);
+                    subtypeValues[i] = buffer.getLong(electronicsIndex);
+                    electronicsIndex += SUBTYPE_RECORD_SIZE;
+                    LocalDate.ofEpochDay(subtypeValues[i]);
+                }
+                case TYPE_GROCERY -> {
+                    checkSection(path, groceryIndex, fragileStart);
+                    subtypeValues[i] = buffer.getLong(groceryIndex);
+                    groceryIndex += SUBTYPE_RECORD_SIZE;
+                    LocalDate.ofEpochDay(subtypeValues[i]);
+                }
+                case TYPE_FRAGILE -> {
+                    checkSection(path, fragileIndex, size);
+                    subtypeValues[i] = buffer.getLong(fragileIndex);
+                    fragileIndex += SUBTYPE_RECORD_SIZE;
+                }
+                case TYPE_GENERIC -> { }
+                default -> throw new IOException("Unknown item type " + type + " for item with ID " + id);
+            }
+        }
+
+        return new InventorySnapshot(restoreItems(buffer, dictionary, recordsStart, subtypeValues), generation,
+                nextOrderID);
+    }
+
+    //Second pass creates the items of the checked records. If an item still can't be created, for example because
+    //a new item took its ID after it was released, every ID is put back to the state it had before the read.
+    private static ArrayList<InventoryItem> restoreItems(ByteBuffer buffer, String[] dictionary, int recordsStart,
+                                                         long[] subtypeValues) throws IOException {
+        ArrayList<InventoryItem> items = new ArrayList<>(subtypeValues.length);
+        boolean[] wasInUse = new boolean[subtypeValues.length];
+        int i = 0;
+        try {
+            for (; i < subtypeValues.length; i++) {
+                int offset = recordsStart + i * RECORD_SIZE;
+                int id = buffer.getInt(offset);
+                wasInUse[i] = InventoryItem.isIdInUse(id);
+                items.add(restoreItem(buffer.get(offset + 16), buffer.get(offset + 17), id, buffer.getInt(offset + 4),
+                        buffer.getDouble(offset + 8), decode(dictionary, buffer.getInt(offset + 18)),
+                        decode(dictionary, buffer.getInt(offset + 22)), decode(dictionary, buffer.getInt(offset + 26)),
+                        subtypeValues[i]));
+            }
+        } catch (RuntimeException e) {
+            for (int j = 0; j <= i && j < subtypeValues.length; j++) {
+                int id = buffer.getInt(recordsStart + j * RECORD_SIZE);
+                if (wasInUse[j]) {
+                    InventoryItem.claimId(id);
+                } else if (j < i) {
+                    //The failed item never claimed its ID, whoever holds it now keeps it
+                    InventoryItem.releaseId(id);
+                }
+            }
+            throw e;
+        }
+
+        return items;
+    }
+
+    /**
+     * Creates an item from its stored fields.
+     * The ID is released first, so the restored item replaces any earlier item with the same ID.
+     *
+     * @param subtypeValue The warranty or expiration day for electronics and grocery items, the raw bits of the weight for fragile items.
+     * @throws IOException If the type of the item is unknown.
+     */
+    static InventoryItem restoreItem(byte type, byte flags, int id, int quantity, double price, String name,
+                                     String description, String category, long subtypeValue) throws IOException {
+        InventoryItem.releaseId(id);
+
+        switch (type) {
+            case TYPE_ELECTRONICS:
+                return new ElectronicsItem(name, id, quantity, LocalDate.ofEpochDay(subtypeValue), description, price);
+            case TYPE_GROCERY:
+                return new GroceryItem(name, id, quantity, LocalDate.ofEpochDay(subtypeValue), description, price);
+            case TYPE_FRAGILE:
+                return new FragileItem(name, id, quantity, Double.longBitsToDouble(subtypeValue), description, price);
+            case TYPE_GENERIC:
+                InventoryItem item = new InventoryItem(name, id, quantity, description, (flags & FLAG_BREAKABLE) != 0,
+                        (flags & FLAG_PERISHABLE) != 0, price);
+                if (category != null) {
+                    item.setCategory(category);
+                }
+                return item;
+            default:
+                throw new IOException("Unknown item type " + type + " for item with ID " + id);
+        }
+    }
+
+    static long subtypeValueOf(InventoryItem item) {
+        if (item instanceof ElectronicsItem electronics) {
+            return electronics.getWarrantyDate().toEpochDay();
+        } else if (item instanceof GroceryItem grocery) {
+            return grocery.getExpirationLocalDate().toEpochDay();
+        } else if (item instanceof FragileItem fragile) {
+            return Double.doubleToRawLongBits(fragile.getWeight());
+        }
+
+        return 0;
+    }
+
+    static byte typeOf(InventoryItem item) {
+        if (item instanceof ElectronicsItem) {
+            return TYPE_ELECTRONICS;
+        } else if (item instanceof GroceryItem) {
+            return TYPE_GROCERY;
+        } else if (item instanceof FragileItem) {
+            return TYPE_FRAGILE;
+        }
+
+        return TYPE_GENERIC;
+    }
+
+    static byte flagsOf(InventoryItem item) {
+        byte flags = 0;
+        if (item.isBreakable()) {
+            flags |= FLAG_BREAKABLE;
+        }
+        if (item.isPerishable()) {
+            flags |= FLAG_PERISHABLE;
+        }
+
+        return flags;
+    }
+
+    private static void encode(String value, HashMap<String, Integer> codes, ArrayList<byte[]> dictionary) {
+        if (value != null && !codes.containsKey(value)) {
+            codes.put(value, dictionary.size());
+            dictionary.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void encodeSymbol(int symbol, SymbolTable table, IntIntMap symbolCodes, ArrayList<byte[]> dictionary) {
+        if (symbol != SymbolTable.NONE && !symbolCodes.containsKey(symbol)) {
+            symbolCodes.put(symbol, dictionary.size());
+            dictionary.add(table.decode(symbol).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static int codeOf(String value, HashMap<String, Integer> codes) {
+        return value == null ? NO_STRING : codes.get(value);
+    }
+
+    private static String decode(String[] dictionary, int code) throws IOException {
+        if (code == NO_STRING) {
+            return null;
+        }
+        if (code < 0 || code >= dictionary.length) {
+            throw new IOException("Invalid string reference " + code + " in snapshot.");
+        }
+
+        return dictionary[code];
+    }
+
+    private static void checkSection(Path path, int index, long sectionEnd) throws IOException {
+        if (index + SUBTYPE_RECORD_SIZE > sectionEnd) {
+            throw new IOException("Snapshot " + path + " is truncated or corrupted.");
+        }
+    }
+
+    private static void ensureCapacity(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class representing a consistent, copy-on-write view of the inventory and its open orders at one point in time.
+ * Opening a view copies nothing. The first time an item changes after the view was opened its previous
+ * quantity and price are copied into the view, and items and orders added or removed afterwards are tracked,
+ * so the view keeps showing the inventory as it was when it was opened while writers continue.
+ * Views opened while nothing changed share one version of the inventory, and a version is dropped
+ * as soon as the last view on it is closed. Views have to be closed, so the inventory stops copying changes into them.
+ */
+
+public class InventoryView implements AutoCloseable {
+    private final Version version;
+    private volatile boolean closed;
+
+    InventoryView(Version version) {
+        this.version = version;
+    }
+
+    /**
+     * Gets all items that were in the inventory when the view was opened.
+     */
+    public ArrayList<InventoryItem> getItems() {
+        return this.version.getItems();
+    }
+
+    /**
+     * Gets the items of a category that were in the inventory when the view was opened.
+     *
+     * @param category The category, case doesn't matter.
+     */
+    public ArrayList<InventoryItem> getItemsByCategory(String category) {
+        return this.version.getItemsByCategory(category);
+    }
+
+    /**
+     * Gets the item with an ID as it was in the inventory when the view was opened.
+     *
+     * @return The item, or null if there wasn't an item with the ID.
+     */
+    public InventoryItem getItem(int itemID) {
+        return this.version.getItem(itemID);
+    }
+
+    /**
+     * Gets the quantity an item had when the view was opened.
+     */
+    public int getQuantity(InventoryItem item) {
+        return this.version.getQuantity(item);
+    }
+
+    /**
+     * Gets the price an item had when the view was opened.
+     */
+    public double getPrice(InventoryItem item) {
+        return this.version.getPrice(item);
+    }
+
+    /**
+     * Gets the details of an item with the quantity and price it had when the view was opened.
+     */
+    public String getItemDetails(InventoryItem item) {
+        return item.getItemDetails(getQuantity(item), getPrice(item));
+    }
+
+    /**
+     * Gets the orders that were open when the view was opened, sorted by ID.
+     */
+    public ArrayList<Order> getOrders() {
+        return this.version.getOrders();
+    }
+
+    /**
+     * Calculates the total of an order with the prices the items had when the view was opened.
+     * Every line is valued like Order.calculateOrderTotal does, with the discounts and surcharges of calculateValue,
+     * and items which weren't in the inventory then are skipped.
+     */
+    public double calculateOrderTotal(Order order) {
+        IntIntMap itemsOrdered = order.getItemsOrdered();
+        double total = 0.0;
+        for (int slot = itemsOrdered.first(); slot >= 0; slot = itemsOrdered.next(slot)) {
+            InventoryItem item = getItem(itemsOrdered.keyAt(slot));
+            if (item != null) {
+                total += item.calculateValue(itemsOrdered.valueAt(slot), getPrice(item));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Stops using the view, after this it can't be used anymore.
+     */
+    @Override
+    public void close() {
+        if (!this.closed) {
+            this.closed = true;
+            this.version.release();
+        }
+    }
+
+    /**
+     * The state of the inventory at one point in time, shared by all views opened at that point.
+     * The InventoryManager calls the before methods of every version that is still in use.
+     */
+    static class Version {
+        private final IntKeyedMap<InventoryItem> liveItems;
+        private final CategoryIndex categoryIndex;
+        private final Iterable<Order> liveOrders;
+        private final Runnable onReclaim;
+        //Quantity and price of the items that changed since the version was opened, as they were before the change
+        private final ConcurrentHashMap<InventoryItem, ItemState> previousStates;
+        private final Set<InventoryItem> addedItems;
+        //Keyed by ID, so an item of the version can still be found by its ID after it was removed
+        private final ConcurrentHashMap<Integer, InventoryItem> removedItems;
+        private final Set<Order> addedOrders;
+        private final Set<Order> removedOrders;
+        //Open views on the version, 0 once it was reclaimed
+        private final AtomicInteger readers;
+        //A version which recorded a change can't be shared with new views anymore
+        private volatile boolean changed;
+
+        Version(IntKeyedMap<InventoryItem> liveItems, CategoryIndex categoryIndex, Iterable<Order> liveOrders,
+                Runnable onReclaim) {
+            this.liveItems = liveItems;
+            this.categoryIndex = categoryIndex;
+            this.liveOrders = liveOrders;
+            this.onReclaim = onReclaim;
+            this.previousStates = new ConcurrentHashMap<>();
+            this.addedItems = ConcurrentHashMap.newKeySet();
+            this.removedItems = new ConcurrentHashMap<>();
+            this.addedOrders = ConcurrentHashMap.newKeySet();
+            this.removedOrders = ConcurrentHashMap.newKeySet();
+            this.readers = new AtomicInteger(1);
+        }
+
+        boolean isUnchanged() {
+            return !this.changed;
+        }
+
+        // Adds a view to the version, fails if the last view was already closed and the version reclaimed
+        boolean retain() {
+            int current;
+            do {
+                current = this.readers.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!this.readers.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        void release() {
+            if (this.readers.decrementAndGet() == 0) {
+                this.onReclaim.run();
+            }
+        }
+
+        ArrayList<InventoryItem> getItems() {
+            ArrayList<InventoryItem> items = new ArrayList<>(this.liveItems.size());
+
+            for (InventoryItem item : this.liveItems.values()) {
+                if (isLiveItemInVersion(item)) {
+                    items.add(item);
+                }
+            }
+            addRemovedItems(items, null);
+
+            return items;
+        }
+
+        ArrayList<InventoryItem> getItemsByCategory(String category) {
+            ArrayList<InventoryItem> items = new ArrayList<>();
+
+            for (int itemID : this.categoryIndex.getItemIDs(category)) {
+                InventoryItem item = this.liveItems.get(itemID);
+                if (item != null && isLiveItemInVersion(item)) {
+                    items.add(item);
+                }
+            }
+            addRemovedItems(items, category);
+
+            return items;
+        }
+
+        private boolean isLiveItemInVersion(InventoryItem item) {
+            return !this.addedItems.contains(item) && this.removedItems.get(item.getId()) != item;
+        }
+
+        //Adds the items of the version which were removed from the inventory since, of one category or of all if null
+        private void addRemovedItems(ArrayList<InventoryItem> items, String category) {
+            //Items removed after this point were in the inventory for the whole loop of the caller, so it has seen them
+            ArrayList<InventoryItem> removed = new ArrayList<>(this.removedItems.values());
+            if (removed.isEmpty()) {
+                return;
+            }
+
+            //An item removed while the caller's loop ran may have been added by it already
+            HashSet<InventoryItem> listed = new HashSet<>(items);
+            int folded = SymbolTable.shared().lookupFolded(category);
+            for (InventoryItem item : removed) {
+                if (!this.addedItems.contains(item) && !listed.contains(item)
+                        && (category == null || folded == SymbolTable.shared().fold(item.getCategoryCode()))) {
+                    items.add(item);
+                }
+            }
+        }
+
+        InventoryItem getItem(int itemID) {
+            InventoryItem item = this.liveItems.get(itemID);
+            //Checked after the lookup, a removal is recorded before the item leaves the map
+            InventoryItem removed = this.removedItems.get(itemID);
+            if (removed != null) {
+                return this.addedItems.contains(removed) ? null : removed;
+            }
+            return item == null || this.addedItems.contains(item) ? null : item;
+        }
+
+        int getQuantity(InventoryItem item) {
+            //Read before the state, a change that is already visible has recorded its state first
+            int quantity = item.getQuantity();
+            ItemState state = this.previousStates.get(item);
+            return state == null ? quantity : state.quantity;
+        }
+
+        double getPrice(InventoryItem item) {
+            double price = item.getPrice();
+            ItemState state = this.previousStates.get(item);
+            return state == null ? price : state.price;
+        }
+
+        ArrayList<Order> getOrders() {
+            ArrayList<Order> orders = new ArrayList<>();
+
+            for (Order order : this.liveOrders) {
+                if (!this.addedOrders.contains(order) && !this.removedOrders.contains(order)) {
+                    orders.add(order);
+                }
+            }
+            for (Order order : this.removedOrders) {
+                if (!this.addedOrders.contains(order)) {
+                    orders.add(order);
+                }
+            }
+            orders.sort(Comparator.comparingInt(Order::getOrderID));
+
+            //An order removed while the first loop ran can be in the list twice, next to each other after sorting
+            ArrayList<Order> distinct = new ArrayList<>(orders.size());
+            for (Order order : orders) {
+                if (distinct.isEmpty() || distinct.get(distinct.size() - 1) != order) {
+                    distinct.add(order);
+                }
+            }
+            return distinct;
+        }
+
+        // Has to be called before the quantity or the price of the item changes
+        void beforeItemChange(InventoryItem item) {
+            markChanged();
+            if (!this.previousStates.containsKey(item)) {
+                this.previousStates.putIfAbsent(item, new ItemState(item.getQuantity(), item.getPrice()));
+            }
+        }
+
+        // Has to be called before the item is put into the inventory
+        void beforeItemAdded(InventoryItem item) {
+            markChanged();
+            InventoryItem replaced = this.liveItems.get(item.getId());
+            if (replaced == item || this.removedItems.get(item.getId()) == item) {
+                //The item is already in the version, putting it again doesn't change it
+                return;
+            }
+            if (replaced != null) {
+                beforeItemRemoved(replaced);
+            }
+            this.addedItems.add(item);
+        }
+
+        // Has to be called before the item is taken out of the inventory
+        void beforeItemRemoved(InventoryItem item) {
+            beforeItemChange(item);
+            this.removedItems.putIfAbsent(item.getId(), item);
+        }
+
+        // Has to be called before the order is added to the open orders
+        void beforeOrderAdded(Order order) {
+            markChanged();
+            this.addedOrders.add(order);
+        }
+
+        // Has to be called before the order is taken out of the open orders
+        void beforeOrderRemoved(Order order) {
+            markChanged();
+            this.removedOrders.add(order);
+        }
+
+        private void markChanged() {
+            //Checked first, so writers of different items don't keep writing the same field
+            if (!this.changed) {
+                this.changed = true;
+            }
+        }
+    }
+
+    private static class ItemState {
+        private final int quantity;
+        private final double price;
+
+        private ItemState(int quantity, double price) {
+            this.quantity = quantity;
+            this.price = price;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Interface for objects that have to know about changes to inventory items.
+ * Defines a method which is called right before the quantity or the price of an item changes,
+ * and ones which are called right after it changed.
+ */
+public interface ItemChangeListener {
+    void beforeItemChange(InventoryItem item);
+
+    //Called only after a change which took effect, a failed tryDecrement or compareAndSet changes nothing
+    default void afterItemChange(InventoryItem item) {
+
+    }
+
+    //Called after the price changed, right after afterItemChange, for listeners which don't care about the stock
+    default void afterPriceChange(InventoryItem item) {
+
+    }
+}
@@ -0,0 +1,305 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Class representing the numeric fields of the inventory items in columns, one primitive array per field.
+ * Row i of every array belongs to the same item, so valuations and low-stock scans are simple loops over
+ * primitive arrays instead of a virtual call on every item object.
+ * The InventoryManager adds and removes rows with its items and refreshes a row after the quantity or the price
+ * of its item changed, so the columns follow the items a moment behind them.
+ * The values of the item types are computed like their calculateValue methods do: groceries get a 10% discount
+ * and fragile items cost 5 more per unit of weight.
+ * Adding and removing rows hold the write lock, everything else holds the read lock, so rows don't move while
+ * they are used. Removed rows are filled with the last row, so the arrays have no holes.
+ */
+
+public final class ItemColumns {
+    private static final int INITIAL_CAPACITY = 64;
+    //Value factor of each item type, indexed by the type of InventorySnapshot
+    private static final double[] TYPE_FACTORS = {1.0, 1.0, 0.9, 1.0};
+    private static final double WEIGHT_SURCHARGE = 5;
+    //Category code of items without a category
+    private static final int NO_CATEGORY = -1;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle DOUBLES = MethodHandles.arrayElementVarHandle(double[].class);
+
+    private int[] ids;
+    private int[] quantities;
+    private double[] prices;
+    private int[] categoryCodes;
+    private byte[] types;
+    //0 for items which are not fragile
+    private double[] weights;
+    private int size;
+    //ItemID -> row
+    private final IntIntMap rows;
+    //Folded SymbolTable code of a category -> code, and the category of every code as it was first seen
+    private final IntIntMap categoryCodeBySymbol;
+    private final ArrayList<String> categoryNames;
+    private final ReentrantReadWriteLock lock;
+
+    public ItemColumns() {
+        this.ids = new int[INITIAL_CAPACITY];
+        this.quantities = new int[INITIAL_CAPACITY];
+        this.prices = new double[INITIAL_CAPACITY];
+        this.categoryCodes = new int[INITIAL_CAPACITY];
+        this.types = new byte[INITIAL_CAPACITY];
+        this.weights = new double[INITIAL_CAPACITY];
+        this.rows = new IntIntMap();
+        this.categoryCodeBySymbol = new IntIntMap();
+        this.categoryNames = new ArrayList<>();
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Creates the columns of a collection of items at once, for example after a load.
+     *
+     * @param items The items.
+     */
+    public ItemColumns(Collection<? extends InventoryItem> items) {
+        this();
+        for (InventoryItem item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Adds the row of an item, or overwrites it if there already is a row with the item's ID.
+     */
+    public void add(InventoryItem item) {
+        this.lock.writeLock().lock();
+        try {
+            int row = this.rows.getOrDefault(item.getId(), -1);
+            if (row < 0) {
+                if (this.size == this.ids.length) {
+                    grow();
+                }
+                row = this.size++;
+                this.rows.put(item.getId(), row);
+            }
+
+            this.ids[row] = item.getId();
+            this.quantities[row] = item.getQuantity();
+            this.prices[row] = item.getPrice();
+            this.categoryCodes[row] = categoryCode(item);
+            this.types[row] = InventorySnapshot.typeOf(item);
+            this.weights[row] = item instanceof FragileItem fragile ? fragile.getWeight() : 0;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the row of an item.
+     *
+     * @param itemID The ID of the item.
+     * @return True if there was a row for the item.
+     */
+    public boolean remove(int itemID) {
+        this.lock.writeLock().lock();
+        try {
+            int row = this.rows.getOrDefault(itemID, -1);
+            if (row < 0) {
+                return false;
+            }
+            this.rows.remove(itemID);
+
+            int last = --this.size;
+            if (row != last) {
+                this.ids[row] = this.ids[last];
+                this.quantities[row] = this.quantities[last];
+                this.prices[row] = this.prices[last];
+                this.categoryCodes[row] = this.categoryCodes[last];
+                this.types[row] = this.types[last];
+                this.weights[row] = this.weights[last];
+                this.rows.put(this.ids[row], row);
+            }
+            //Emptied rows count for nothing, so the loops don't need to check for them
+            this.quantities[last] = 0;
+            this.prices[last] = 0;
+            this.weights[last] = 0;
+            return true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the current quantity and price of an item into its row, if it has one.
+     * Safe to call from many threads for the same item: every call checks after writing that the item hasn't
+     * changed again meanwhile, so the row ends up with the latest values whatever order the calls run in.
+     */
+    public void update(InventoryItem item) {
+        this.lock.readLock().lock();
+        try {
+            int row = this.rows.getOrDefault(item.getId(), -1);
+            if (row < 0) {
+                return;
+            }
+
+            int quantity;
+            do {
+                quantity = item.getQuantity();
+                INTS.setVolatile(this.quantities, row, quantity);
+            } while (item.getQuantity() != quantity);
+
+            double price;
+            do {
+                price = item.getPrice();
+                DOUBLES.setVolatile(this.prices, row, price);
+            } while (item.getPrice() != price);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Calculates the value of all items in stock.
+     */
+    public double getTotalValue() {
+        this.lock.readLock().lock();
+        try {
+            //Four sums, so each addition doesn't have to wait for the one before it
+            double total0 = 0;
+            double total1 = 0;
+            double total2 = 0;
+            double total3 = 0;
+            int i = 0;
+            for (; i + 3 < this.size; i += 4) {
+                total0 += rowValue(i);
+                total1 += rowValue(i + 1);
+                total2 += rowValue(i + 2);
+                total3 += rowValue(i + 3);
+            }
+            for (; i < this.size; i++) {
+                total0 += rowValue(i);
+            }
+            return (total0 + total1) + (total2 + total3);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Calculates the value of the items in stock in a category.
+     *
+     * @param category The category, case doesn't matter.
+     */
+    public double getCategoryValue(String category) {
+        this.lock.readLock().lock();
+        try {
+            int code = this.categoryCodeBySymbol.getOrDefault(SymbolTable.shared().lookupFolded(category), NO_CATEGORY);
+            if (code == NO_CATEGORY) {
+                return 0;
+            }
+
+            double total = 0;
+            for (int i = 0; i < this.size; i++) {
+                if (this.categoryCodes[i] == code) {
+                    total += rowValue(i);
+                }
+            }
+            return total;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Calculates the value of the items in stock of every category, in one pass over the rows.
+     *
+     * @return Map like category -> value, with the categories in the order they were first seen.
+     */
+    public LinkedHashMap<String, Double> getValueByCategory() {
+        this.lock.readLock().lock();
+        try {
+            double[] values = new double[this.categoryNames.size()];
+            for (int i = 0; i < this.size; i++) {
+                int code = this.categoryCodes[i];
+                if (code != NO_CATEGORY) {
+                    values[code] += rowValue(i);
+                }
+            }
+
+            LinkedHashMap<String, Double> valueByCategory = new LinkedHashMap<>();
+            for (int code = 0; code < values.length; code++) {
+                valueByCategory.put(this.categoryNames.get(code), values[code]);
+            }
+            return valueByCategory;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the items whose quantity is below a threshold.
+     *
+     * @param threshold The quantity items need to have at least.
+     * @return The IDs of the items with less in stock, in no particular order.
+     */
+    public int[] getLowStockItemIDs(int threshold) {
+        this.lock.readLock().lock();
+        try {
+            int[] found = new int[16];
+            int count = 0;
+            for (int i = 0; i < this.size; i++) {
+                if (this.quantities[i] < threshold) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = this.ids[i];
+                }
+            }
+            return Arrays.copyOf(found, count);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    //Same as calculateValue of the item type, see the class comment
+    private double rowValue(int row) {
+        return this.prices[row] * this.quantities[row] * TYPE_FACTORS[this.types[row]]
+                + WEIGHT_SURCHARGE * this.weights[row];
+    }
+
+    //Called under the write lock
+    private int categoryCode(InventoryItem item) {
+        if (item.getCategoryCode() == SymbolTable.NONE) {
+            return NO_CATEGORY;
+        }
+
+        int symbol = SymbolTable.shared().fold(item.getCategoryCode());
+        int code = this.categoryCodeBySymbol.getOrDefault(symbol, NO_CATEGORY);
+        if (code == NO_CATEGORY) {
+            code = this.categoryNames.size();
+            this.categoryNames.add(item.getCategory());
+            this.categoryCodeBySymbol.put(symbol, code);
+        }
+        return code;
+    }
+
+    private void grow() {
+        int capacity = this.ids.length * 2;
+        this.ids = Arrays.copyOf(this.ids, capacity);
+        this.quantities = Arrays.copyOf(this.quantities, capacity);
+        this.prices = Arrays.copyOf(this.prices, capacity);
+        this.categoryCodes = Arrays.copyOf(this.categoryCodes, capacity);
+        this.types = Arrays.copyOf(this.types, capacity);
+        this.weights = Arrays.copyOf(this.weights, capacity);
+    }
+}
@@ -0,0 +1,199 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class with the small amount of JSON the HTTP API needs.
+ * Writes strings with escaping and reads flat objects whose values are strings, numbers, booleans or null.
+ */
+
+public final class Json {
+    private Json() {
+
+    }
+
+    /**
+     * Writes a string as a quoted JSON string.
+     */
+    public static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+
+        StringBuilder builder = new StringBuilder(value.length() + 2);
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                    break;
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * Reads a flat JSON object. Numbers and booleans are returned as their text, null values as null.
+     *
+     * @param json The JSON text.
+     * @return Map of the field names to their values.
+     * @throws IllegalArgumentException If the text is not a flat JSON object.
+     */
+    public static Map<String, String> parseObject(String json) {
+        Parser parser = new Parser(json);
+        Map<String, String> fields = new HashMap<>();
+
+        parser.skipWhitespace();
+        parser.expect('{');
+        parser.skipWhitespace();
+        if (parser.peek() == '}') {
+            parser.next();
+        } else {
+            while (true) {
+                parser.skipWhitespace();
+                String name = parser.readString();
+                parser.skipWhitespace();
+                parser.expect(':');
+                parser.skipWhitespace();
+                fields.put(name, parser.readValue());
+                parser.skipWhitespace();
+
+                char c = parser.next();
+                if (c == '}') {
+                    break;
+                }
+                if (c != ',') {
+                    throw new IllegalArgumentException("Invalid JSON: expected ',' or '}' at position " + (parser.position - 1));
+                }
+            }
+        }
+
+        parser.skipWhitespace();
+        if (parser.position != json.length()) {
+            throw new IllegalArgumentException("Invalid JSON: unexpected text at position " + parser.position);
+        }
+        return fields;
+    }
+
+    private static final class Parser {
+        private final String json;
+        private int position;
+
+        private Parser(String json) {
+            this.json = json;
+        }
+
+        private char peek() {
+            if (this.position >= this.json.length()) {
+                throw new IllegalArgumentException("Invalid JSON: unexpected end of input");
+            }
+            return this.json.charAt(this.position);
+        }
+
+        private char next() {
+            char c = peek();
+            this.position++;
+            return c;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw new IllegalArgumentException("Invalid JSON: expected '" + expected + "' at position " + (this.position - 1));
+            }
+        }
+
+        private void skipWhitespace() {
+            while (this.position < this.json.length() && Character.isWhitespace(this.json.charAt(this.position))) {
+                this.position++;
+            }
+        }
+
+        private String readValue() {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '{' || c == '[') {
+                throw new IllegalArgumentException("Invalid JSON: nested values are not supported at position " + this.position);
+            }
+
+            int start = this.position;
+            while (this.position < this.json.length() && ",}".indexOf(this.json.charAt(this.position)) < 0
+                    && !Character.isWhitespace(this.json.charAt(this.position))) {
+                this.position++;
+            }
+            String literal = this.json.substring(start, this.position);
+            if (literal.isEmpty()) {
+                throw new IllegalArgumentException("Invalid JSON: missing value at position " + start);
+            }
+            return literal.equals("null") ? null : literal;
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder builder = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return builder.toString();
+                }
+                if (c != '\\') {
+                    builder.append(c);
+                    continue;
+                }
+
+                char escaped = next();
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        builder.append(escaped);
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'u':
+                        if (this.position + 4 > this.json.length()) {
+                            throw new IllegalArgumentException("Invalid JSON: unexpected end of input");
+                        }
+                        builder.append((char) Integer.parseInt(this.json.substring(this.position, this.position + 4), 16));
+                        this.position += 4;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid JSON: bad escape at position " + (this.position - 1));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Command-line load generator for the HTTP API.
+ * Every client is a virtual thread with its own session which repeatedly adds random items to its cart
+ * and places an order, then the throughput and the latency percentiles of all requests are printed.
+ *
+ * Usage: java LoadGenerator [baseUrl] [clients] [ordersPerClient] [itemIdFrom] [itemIdTo]
+ * The items in the ID range have to exist and have enough stock for the orders.
+ */
+
+public class LoadGenerator {
+    private static final int ITEMS_PER_ORDER = 3;
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int ordersPerClient = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int itemIdFrom = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int itemIdTo = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        AtomicLong failures = new AtomicLong();
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                String session = "load-" + i;
+                results.add(executor.submit(() ->
+                        runClient(client, baseUrl, session, ordersPerClient, itemIdFrom, itemIdTo, failures)));
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] latencies = new long[0];
+        for (Future<long[]> result : results) {
+            long[] clientLatencies = result.get();
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + clientLatencies.length);
+            System.arraycopy(clientLatencies, 0, latencies, offset, clientLatencies.length);
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("Requests: %d, failed: %d, time: %.2f s, throughput: %.0f requests/s%n",
+                latencies.length, failures.get(), seconds, latencies.length / seconds);
+        if (latencies.length > 0) {
+            System.out.printf("Latency p50: %.2f ms, p90: %.2f ms, p99: %.2f ms, max: %.2f ms%n",
+                    percentile(latencies, 0.50), percentile(latencies, 0.90),
+                    percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+        }
+    }
+
+    //Returns the latency of every request the client sent in nanoseconds
+    private static long[] runClient(HttpClient client, String baseUrl, String session, int orders,
+                                    int itemIdFrom, int itemIdTo, AtomicLong failures) {
+        long[] latencies = new long[orders * (ITEMS_PER_ORDER + 1)];
+        int count = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (int order = 0; order < orders; order++) {
+            for (int item = 0; item < ITEMS_PER_ORDER; item++) {
+                int itemID = random.nextInt(itemIdFrom, itemIdTo + 1);
+                String body = "{\"itemId\":" + itemID + ",\"quantity\":1}";
+                latencies[count++] = send(client, baseUrl + "/carts/" + session + "/items", body, failures);
+            }
+            latencies[count++] = send(client, baseUrl + "/carts/" + session + "/orders", "{}", failures);
+        }
+        return latencies;
+    }
+
+    private static long send(HttpClient client, String url, String body, AtomicLong failures) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() >= 400) {
+                failures.incrementAndGet();
+            }
+        } catch (Exception e) {
+            failures.incrementAndGet();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+}
@@ -1,3 +1,5 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLOutput;
 import java.util.HashMap;
 import java.util.InputMismatchException;
@@ -7,9 +9,18 @@ import java.util.Scanner;
 /**
  * Command-line interface for interacting with the inventory management system.
  * Provides options to add items, remove items by ID, display a list of items, categorize items, place orders, remove orders, list orders, process orders and save/load inventory.
+ * Started with --http [port] it serves the same operations through the HTTP API of InventoryServer instead.
  */
 
 public class Main {
+    //Files used to restore the state after a restart or a crash
+    private static final String SNAPSHOT_FILE = "inventory.snapshot";
+    private static final String JOURNAL_FILE = "inventory.journal";
+    private static final String ORDER_LOG_DIRECTORY = "orders";
+    //The console serves a single shopper, so all its cart operations use one session
+    private static final String CONSOLE_SESSION = "console";
+    private static final int DEFAULT_HTTP_PORT = 8080;
+
     public static void main(String[] args) {
         Scanner sc = new Scanner(System.in);
         InventoryManager inventoryManager = new InventoryManager();
@@ -17,6 +28,27 @@ public class Main {
 
         System.out.println("Welcome to the E-commerce Console Application!");
 
+        try {
+            inventoryManager.openJournal(SNAPSHOT_FILE, JOURNAL_FILE);
+        } catch (IOException e) {
+            System.out.println("Error restoring inventory from the journal: " + e.getMessage());
+            System.out.println();
+        }
+
+        try {
+            inventoryManager.openOrderLog(ORDER_LOG_DIRECTORY);
+        } catch (IOException e) {
+            System.out.println("Error restoring orders from the order log: " + e.getMessage());
+            System.out.println();
+        }
+
+        //With --http the inventory is served over HTTP instead of the console menu
+        if (args.length > 0 && args[0].equals("--http")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_HTTP_PORT;
+            serveHttp(inventoryManager, paymentProcessor, port);
+            return;
+        }
+
         boolean isRunning = true;
 
         while (isRunning) {
@@ -73,12 +105,16 @@ public class Main {
                     loadInventory(sc, inventoryManager);
                     break;
                 case 17:
+                    importInventory(sc, inventoryManager);
+                    break;
+                case 18:
                     isRunning = false;
+                    closeJournal(inventoryManager);
                     System.out.println("Exiting the Inventory Management System.......");
                     System.out.println("Goodbye!");
                     break;
                 default:
-                    System.out.println("Invalid command. Please enter a number from 1 to 17.");
+                    System.out.println("Invalid command. Please enter a number from 1 to 18.");
                     System.out.println();
                     break;
             }
@@ -90,7 +126,7 @@ public class Main {
      */
     public static void displayMenu() {
 
-        System.out.println("Menu [Enter your choice (1 - 17)]:");
+        System.out.println("Menu [Enter your choice (1 - 18)]:");
         System.out.println("1. Add New Item");
         System.out.println("2. Remove Item by ID");
         System.out.println("3. Display List of Items");
@@ -107,7 +143,8 @@ public class Main {
         System.out.println("14. Process Payment and Complete Order");
         System.out.println("15. Save Inventory");
         System.out.println("16. Load Inventory");
-        System.out.println("17. Exit");
+        System.out.println("17. Import Inventory from CSV");
+        System.out.println("18. Exit");
         System.out.println();
     }
 
@@ -259,7 +296,7 @@ public class Main {
                 return;
             }
 
-            manager.addItemToCart(itemID, quantity);
+            manager.addItemToCart(CONSOLE_SESSION, itemID, quantity);
 
             System.out.println("Item ID " + itemID + " with quantity " + quantity + " successfully added to the cart!");
             System.out.println();
@@ -277,7 +314,7 @@ public class Main {
             System.out.print("Enter Item ID: ");
             int itemID = Integer.parseInt(sc.nextLine());
 
-            manager.removeItemFromCart(itemID);
+            manager.removeItemFromCart(CONSOLE_SESSION, itemID);
         } catch(NoSuchElementException e) {
             System.out.println(e.getMessage());
             System.out.println();
@@ -288,7 +325,7 @@ public class Main {
      * Displays all items in the shopping cart.
      */
     public static void showCart(InventoryManager manager) {
-        manager.displayCart();
+        manager.displayCart(CONSOLE_SESSION);
     }
 
     /**
@@ -303,7 +340,7 @@ public class Main {
 
         try {
             // Create order and add to system
-            manager.createOrder();
+            manager.createOrder(CONSOLE_SESSION);
         } catch (IllegalArgumentException | InputMismatchException e) {
             System.out.println("Invalid input. Please enter valid details.");
             System.out.println(e.getMessage());
@@ -500,21 +537,91 @@ public class Main {
         } catch (NoSuchElementException | IllegalArgumentException e) {
             System.out.println(e.getMessage());
             System.out.println();
+        } catch (RuntimeException e) {
+            //The payment provider is overloaded, unavailable or didn't answer in time
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            System.out.println("Payment failed: " + cause.getMessage());
+            System.out.println();
         }
     }
 
     /**
      * Prompts the user to save the inventory to a file.
+     * The files are written in the background, so the user can continue working while they are saved.
      */
     public static void saveInventory(Scanner sc, InventoryManager manager) {
+        System.out.print("Enter file name to save inventory (e.g., inventory.ser): ");
+        String filename = sc.nextLine();
+
+        manager.saveInventoryInBackground(filename).whenComplete((result, error) -> {
+            if (error == null) {
+                System.out.println("Inventory saved successfully to file: " + filename);
+            } else {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                System.out.println("Error saving inventory: " + cause.getMessage());
+            }
+            System.out.println();
+        });
+
+        System.out.println("Saving inventory in the background to file: " + filename);
+        System.out.println();
+    }
+
+    /**
+     * Prompts the user to import items from a CSV file.
+     */
+    public static void importInventory(Scanner sc, InventoryManager manager) {
         try {
-            System.out.print("Enter file name to save inventory (e.g., inventory.ser): ");
+            System.out.print("Enter CSV file name to import (e.g., inventory.csv): ");
             String filename = sc.nextLine();
-            manager.saveInventory(filename);
-            System.out.println("Inventory saved successfully to file: " + filename);
+            ImportReport report = new CsvImporter(manager).importFile(filename);
+            System.out.println(report);
+
+            for (String error : report.getErrors()) {
+                System.out.println("  " + error);
+            }
             System.out.println();
         } catch (Exception e) {
-            System.out.println("Error saving inventory: " + e.getMessage());
+            System.out.println("Error importing inventory: " + e.getMessage());
+            System.out.println();
+        }
+    }
+
+    /**
+     * Starts the HTTP API and keeps serving until the process is stopped.
+     * It listens on localhost only and reads and writes files in the working directory, like the console.
+     */
+    public static void serveHttp(InventoryManager manager, PaymentProcessor processor, int port) {
+        try {
+            InventoryServer server = new InventoryServer(manager, processor, port, Path.of(""));
+            server.start();
+
+            //Stops taking requests before the journal is closed, so no acknowledged change is lost
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                closeJournal(manager);
+            }));
+
+            System.out.println("Serving the inventory on http://localhost:" + server.getPort());
+            System.out.println();
+        } catch (IOException e) {
+            System.out.println("Error starting the HTTP server: " + e.getMessage());
+            System.out.println();
+            closeJournal(manager);
+        }
+    }
+
+    /**
+     * Waits for background saves and queued orders, then syncs and closes the journal and the order log before the application exits.
+     */
+    public static void closeJournal(InventoryManager manager) {
+        manager.waitForBackgroundSaves();
+
+        try {
+            manager.closeJournal();
+            manager.closeOrderLog();
+        } catch (IOException e) {
+            System.out.println("Error closing the journal: " + e.getMessage());
             System.out.println();
         }
     }
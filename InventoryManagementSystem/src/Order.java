@@ -1,5 +1,5 @@
+import java.nio.ByteBuffer;
 import java.util.Date;
-import java.util.HashMap;
 
 /**
  * Class representing an order.
@@ -10,9 +10,10 @@ public class Order {
     private int orderID;
     private Date orderDate;
     //We will store the itemId -> quantity for each ordered item
-    private HashMap<Integer, Integer> itemsOrdered;
+    private IntIntMap itemsOrdered;
 
-    public Order(int orderID, Date orderDate, HashMap<Integer, Integer> itemsToOrder) {
+    //The order keeps the given map, callers hand it over instead of copying it
+    public Order(int orderID, Date orderDate, IntIntMap itemsToOrder) {
         this.orderID = orderID;
         this.orderDate = orderDate;
         this.itemsOrdered = itemsToOrder;
@@ -30,46 +31,92 @@ public class Order {
         this.itemsOrdered.put(itemID, quantity);
     }
 
-    public HashMap<Integer, Integer> getItemsOrdered() {
+    public IntIntMap getItemsOrdered() {
         return this.itemsOrdered;
     }
 
-    public double calculateOrderTotal(HashMap<Integer, InventoryItem> inventory) {
+    public double calculateOrderTotal(IntKeyedMap<InventoryItem> inventory) {
         double total = 0.0;
-        for (var entry : this.itemsOrdered.entrySet()) {
-            int itemID = entry.getKey();
-            int quantity = entry.getValue();
+        for (int slot = this.itemsOrdered.first(); slot >= 0; slot = this.itemsOrdered.next(slot)) {
+            int itemID = this.itemsOrdered.keyAt(slot);
+            int quantity = this.itemsOrdered.valueAt(slot);
 
             InventoryItem item = inventory.get(itemID);
-            total += item.calculateValue(quantity);
+            //Items removed from the inventory since the order was placed have no price anymore
+            if (item != null) {
+                total += item.calculateValue(quantity);
+            }
         }
         return total;
     }
 
-    public void processOrder(HashMap<Integer, InventoryItem> inventory) {
+    public void processOrder(IntKeyedMap<InventoryItem> inventory) {
 
         // Update inventory quantities
-        for (var entry : this.itemsOrdered.entrySet()) {
-            int itemID = entry.getKey();
-            int quantityOrdered = entry.getValue();
-            if (inventory.containsKey(itemID)) {
-                InventoryItem item = inventory.get(itemID);
-                int currentQuantity = item.getQuantity();
-                item.setQuantity(currentQuantity - quantityOrdered);
-                inventory.put(itemID, item);
+        for (int slot = this.itemsOrdered.first(); slot >= 0; slot = this.itemsOrdered.next(slot)) {
+            int itemID = this.itemsOrdered.keyAt(slot);
+            int quantityOrdered = this.itemsOrdered.valueAt(slot);
+            InventoryItem item = inventory.get(itemID);
+            if (item != null) {
+                if (!item.tryDecrement(quantityOrdered)) {
+                    throw new IllegalArgumentException("Not enough stock for item ID " + itemID);
+                }
             }
         }
         System.out.println("Order processed successfully.");
     }
 
+    /**
+     * Gets the number of bytes writeTo needs for this order.
+     */
+    public int getEncodedSize() {
+        return 4 + 8 + 4 + this.itemsOrdered.size() * 8;
+    }
+
+    /**
+     * Writes the order in binary form: ID, date, number of items and an item ID and quantity pair for each item.
+     * Used by the journal and the order log.
+     *
+     * @param buffer The buffer to write to.
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(this.orderID);
+        buffer.putLong(this.orderDate.getTime());
+        buffer.putInt(this.itemsOrdered.size());
+        for (int slot = this.itemsOrdered.first(); slot >= 0; slot = this.itemsOrdered.next(slot)) {
+            buffer.putInt(this.itemsOrdered.keyAt(slot));
+            buffer.putInt(this.itemsOrdered.valueAt(slot));
+        }
+    }
+
+    /**
+     * Reads an order written by writeTo.
+     *
+     * @param buffer The buffer to read from.
+     * @return The order.
+     */
+    public static Order readFrom(ByteBuffer buffer) {
+        int orderID = buffer.getInt();
+        Date orderDate = new Date(buffer.getLong());
+        int count = buffer.getInt();
+
+        IntIntMap itemsOrdered = new IntIntMap(count);
+        for (int i = 0; i < count; i++) {
+            int itemID = buffer.getInt();
+            itemsOrdered.put(itemID, buffer.getInt());
+        }
+
+        return new Order(orderID, orderDate, itemsOrdered);
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Order ID: ").append(this.orderID).append("\n");
         sb.append("Order Date: ").append(this.orderDate).append("\n");
         sb.append("Items ordered:\n");
-        for (var entry : this.itemsOrdered.entrySet()) {
-            sb.append("  Item ID: ").append(entry.getKey()).append(", Quantity: ").append(entry.getValue());
+        for (int slot = this.itemsOrdered.first(); slot >= 0; slot = this.itemsOrdered.next(slot)) {
+            sb.append("  Item ID: ").append(this.itemsOrdered.keyAt(slot)).append(", Quantity: ").append(this.itemsOrdered.valueAt(slot));
         }
 
         return sb.toString();
@@ -0,0 +1,644 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Class representing the persistent order log.
+ * Open orders are kept in an append-only log of created and closed orders which is compacted once it holds
+ * mostly closed orders. Processed orders are appended to an active segment and, once it is full, roll into
+ * a read-only segment sorted by order ID with a sparse index by order ID and date.
+ * A single processed order or a date range can be read from the segments without loading all of them.
+ * All public methods are synchronized so orders can be logged from many threads.
+ */
+
+public class OrderLog implements Closeable {
+    //"INVO" in ASCII, used to recognize sealed segments
+    private static final int SEGMENT_MAGIC = 0x494E564F;
+    private static final short SEGMENT_VERSION = 1;
+    //magic, version, reserved and record count
+    private static final int SEGMENT_HEADER_SIZE = 4 + 2 + 2 + 4;
+    //index offset, index entries, min and max order ID, min and max order date and magic
+    private static final int SEGMENT_FOOTER_SIZE = 8 + 4 + 4 + 4 + 8 + 8 + 4;
+    //One index entry is written for every INDEX_INTERVAL records: first order ID, offset, min and max date of the block
+    private static final int INDEX_INTERVAL = 64;
+    private static final int INDEX_ENTRY_SIZE = 4 + 4 + 8 + 8;
+    private static final long DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    private static final String OPEN_ORDERS_FILE = "open-orders.log";
+    private static final String ACTIVE_SEGMENT_FILE = "processed-active.log";
+    private static final String SEGMENT_PREFIX = "processed-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final byte ORDER_CREATED = 1;
+    private static final byte ORDER_CLOSED = 2;
+    private static final byte ORDER_SEQUENCE = 3;
+
+    private final Path directory;
+    private final long segmentSize;
+    private FileChannel openOrdersChannel;
+    private final LinkedHashMap<Integer, Order> openOrders;
+    private long closedRecords;
+    private FileChannel activeChannel;
+    //Order ID -> offset of the record in the active segment
+    private final TreeMap<Integer, Long> activeIndex;
+    //Sealed segments sorted by their first order ID
+    private final ArrayList<Segment> segments;
+    private int nextSegmentNumber;
+    private int nextOrderID;
+
+    private OrderLog(Path directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.openOrders = new LinkedHashMap<>();
+        this.activeIndex = new TreeMap<>();
+        this.segments = new ArrayList<>();
+        this.nextOrderID = 1;
+    }
+
+    /**
+     * Opens the order log in a directory, creating it if it doesn't exist.
+     *
+     * @param directory The directory with the log files.
+     * @return The opened order log.
+     * @throws IOException If an I/O error occurs while reading the log.
+     */
+    public static OrderLog open(String directory) throws IOException {
+        return open(Path.of(directory), DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the order log in a directory, creating it if it doesn't exist.
+     *
+     * @param directory   The directory with the log files.
+     * @param segmentSize The size in bytes after which the active segment of processed orders is sealed.
+     * @return The opened order log.
+     * @throws IOException If an I/O error occurs while reading the log.
+     */
+    public static OrderLog open(Path directory, long segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        OrderLog log = new OrderLog(directory, segmentSize);
+
+        try {
+            log.loadSegments();
+            log.loadActiveSegment();
+            log.loadOpenOrders();
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+
+        return log;
+    }
+
+    /**
+     * Gets all orders which were neither removed nor processed, in the order in which they were created.
+     */
+    public synchronized Collection<Order> getOpenOrders() {
+        return this.openOrders.values();
+    }
+
+    /**
+     * Checks if an order is open in the log.
+     *
+     * @param orderID The ID of the order.
+     * @return True if the order was created and neither removed nor processed.
+     */
+    public synchronized boolean isOpen(int orderID) {
+        return this.openOrders.containsKey(orderID);
+    }
+
+    /**
+     * Gets the ID the next order should get. No ID which was ever used is returned again.
+     */
+    public synchronized int getNextOrderID() {
+        return this.nextOrderID;
+    }
+
+    /**
+     * Records a new open order.
+     *
+     * @param order The created order.
+     * @throws IOException If an I/O error occurs while writing the log.
+     */
+    public synchronized void logCreated(Order order) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(1 + order.getEncodedSize());
+        payload.put(ORDER_CREATED);
+        order.writeTo(payload);
+
+        appendRecord(this.openOrdersChannel, payload);
+        this.openOrders.put(order.getOrderID(), order);
+        this.nextOrderID = Math.max(this.nextOrderID, order.getOrderID() + 1);
+    }
+
+    /**
+     * Records that an open order was removed without being processed.
+     *
+     * @param orderID The ID of the removed order.
+     * @throws IOException If an I/O error occurs while writing the log.
+     */
+    public synchronized void logRemoved(int orderID) throws IOException {
+        closeOpenOrder(orderID);
+    }
+
+    /**
+     * Moves an order from the open orders to the processed orders.
+     *
+     * @param order The processed order.
+     * @throws IOException If an I/O error occurs while writing the log.
+     */
+    public synchronized void logProcessed(Order order) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(order.getEncodedSize());
+        order.writeTo(payload);
+
+        long offset = this.activeChannel.size();
+        appendRecord(this.activeChannel, payload);
+        this.activeIndex.put(order.getOrderID(), offset);
+        this.nextOrderID = Math.max(this.nextOrderID, order.getOrderID() + 1);
+
+        //The processed record is written first, so after a crash in between the order is only kept as processed
+        closeOpenOrder(order.getOrderID());
+
+        if (this.activeChannel.size() >= this.segmentSize) {
+            sealActiveSegment();
+        }
+    }
+
+    /**
+     * Searches for a processed order by ID.
+     *
+     * @param orderID The ID of the order.
+     * @return The processed order, or null if there is no processed order with this ID.
+     * @throws IOException If an I/O error occurs while reading the log.
+     */
+    public synchronized Order getProcessedOrder(int orderID) throws IOException {
+        Long offset = this.activeIndex.get(orderID);
+        if (offset != null) {
+            return readActiveRecord(offset);
+        }
+
+        return findInSegments(orderID);
+    }
+
+    /**
+     * Gets all processed orders with a date in the given range, sorted by order ID.
+     * Segments and index blocks outside the range are skipped without being read.
+     *
+     * @param from The start of the range, inclusive.
+     * @param to   The end of the range, inclusive.
+     * @return List of the processed orders in the range.
+     * @throws IOException If an I/O error occurs while reading the log.
+     */
+    public synchronized List<Order> getProcessedOrders(Date from, Date to) throws IOException {
+        long fromTime = from.getTime();
+        long toTime = to.getTime();
+        ArrayList<Order> result = new ArrayList<>();
+
+        for (Segment segment : this.segments) {
+            if (segment.maxDate >= fromTime && segment.minDate <= toTime) {
+                segment.collect(fromTime, toTime, result);
+            }
+        }
+
+        for (long offset : this.activeIndex.values()) {
+            Order order = readActiveRecord(offset);
+            long time = order.getOrderDate().getTime();
+            if (time >= fromTime && time <= toTime) {
+                result.add(order);
+            }
+        }
+
+        result.sort(Comparator.comparingInt(Order::getOrderID));
+        return result;
+    }
+
+    /**
+     * Forces all records to disk and closes the log files.
+     *
+     * @throws IOException If an I/O error occurs while closing the files.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.openOrdersChannel != null) {
+            this.openOrdersChannel.force(false);
+            this.openOrdersChannel.close();
+        }
+        if (this.activeChannel != null) {
+            this.activeChannel.force(false);
+            this.activeChannel.close();
+        }
+        this.segments.clear();
+    }
+
+    private void closeOpenOrder(int orderID) throws IOException {
+        if (this.openOrders.remove(orderID) == null) {
+            return;
+        }
+
+        appendRecord(this.openOrdersChannel, ByteBuffer.allocate(1 + 4).put(ORDER_CLOSED).putInt(orderID));
+        this.closedRecords++;
+
+        //Rewrite the log once it mostly consists of orders which are already closed
+        if (this.closedRecords > 1024 && this.closedRecords > this.openOrders.size()) {
+            compactOpenOrders();
+        }
+    }
+
+    private void compactOpenOrders() throws IOException {
+        Path path = this.directory.resolve(OPEN_ORDERS_FILE);
+        Path tmp = this.directory.resolve(OPEN_ORDERS_FILE + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            appendRecord(channel, ByteBuffer.allocate(1 + 4).put(ORDER_SEQUENCE).putInt(this.nextOrderID));
+            for (Order order : this.openOrders.values()) {
+                ByteBuffer payload = ByteBuffer.allocate(1 + order.getEncodedSize());
+                payload.put(ORDER_CREATED);
+                order.writeTo(payload);
+                appendRecord(channel, payload);
+            }
+            channel.force(true);
+        }
+
+        this.openOrdersChannel.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.openOrdersChannel = FileChannel.open(path, StandardOpenOption.WRITE);
+        this.openOrdersChannel.position(this.openOrdersChannel.size());
+        this.closedRecords = 0;
+    }
+
+    //Sorts the records of the active segment by order ID and writes them as a new read-only segment
+    private void sealActiveSegment() throws IOException {
+        this.activeChannel.force(false);
+
+        ArrayList<Order> orders = new ArrayList<>(this.activeIndex.size());
+        for (long offset : this.activeIndex.values()) {
+            orders.add(readActiveRecord(offset));
+        }
+
+        Path segmentPath = this.directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, this.nextSegmentNumber, SEGMENT_SUFFIX));
+        Path tmp = this.directory.resolve(segmentPath.getFileName() + ".tmp");
+        writeSegment(tmp, orders);
+        Files.move(tmp, segmentPath, StandardCopyOption.ATOMIC_MOVE);
+
+        this.segments.add(Segment.open(segmentPath));
+        this.segments.sort(Comparator.comparingInt(segment -> segment.minOrderID));
+        this.nextSegmentNumber++;
+
+        this.activeChannel.truncate(0);
+        this.activeChannel.position(0);
+        this.activeChannel.force(true);
+        this.activeIndex.clear();
+    }
+
+    private static void writeSegment(Path path, List<Order> orders) throws IOException {
+        int indexEntries = (orders.size() + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+        long size = SEGMENT_HEADER_SIZE + (long) indexEntries * INDEX_ENTRY_SIZE + SEGMENT_FOOTER_SIZE;
+        for (Order order : orders) {
+            size += 4 + order.getEncodedSize();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Segment would be too large: " + size + " bytes.");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(SEGMENT_MAGIC);
+        buffer.putShort(SEGMENT_VERSION);
+        buffer.putShort((short) 0);
+        buffer.putInt(orders.size());
+
+        ByteBuffer index = ByteBuffer.allocate(indexEntries * INDEX_ENTRY_SIZE);
+        long minDate = Long.MAX_VALUE;
+        long maxDate = Long.MIN_VALUE;
+        long blockMinDate = Long.MAX_VALUE;
+        long blockMaxDate = Long.MIN_VALUE;
+
+        for (int i = 0; i < orders.size(); i++) {
+            Order order = orders.get(i);
+            long time = order.getOrderDate().getTime();
+
+            if (i % INDEX_INTERVAL == 0) {
+                if (i > 0) {
+                    index.putLong(blockMinDate).putLong(blockMaxDate);
+                }
+                index.putInt(order.getOrderID()).putInt(buffer.position());
+                blockMinDate = Long.MAX_VALUE;
+                blockMaxDate = Long.MIN_VALUE;
+            }
+
+            buffer.putInt(order.getEncodedSize());
+            order.writeTo(buffer);
+
+            blockMinDate = Math.min(blockMinDate, time);
+            blockMaxDate = Math.max(blockMaxDate, time);
+            minDate = Math.min(minDate, time);
+            maxDate = Math.max(maxDate, time);
+        }
+        if (!orders.isEmpty()) {
+            index.putLong(blockMinDate).putLong(blockMaxDate);
+        }
+
+        long indexOffset = buffer.position();
+        buffer.put(index.flip());
+        buffer.putLong(indexOffset);
+        buffer.putInt(indexEntries);
+        buffer.putInt(orders.isEmpty() ? 0 : orders.get(0).getOrderID());
+        buffer.putInt(orders.isEmpty() ? 0 : orders.get(orders.size() - 1).getOrderID());
+        buffer.putLong(minDate);
+        buffer.putLong(maxDate);
+        buffer.putInt(SEGMENT_MAGIC);
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private void loadSegments() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+
+                Segment segment = Segment.open(path);
+                this.segments.add(segment);
+                this.nextSegmentNumber = Math.max(this.nextSegmentNumber, number + 1);
+                this.nextOrderID = Math.max(this.nextOrderID, segment.maxOrderID + 1);
+            }
+        }
+
+        this.segments.sort(Comparator.comparingInt(segment -> segment.minOrderID));
+    }
+
+    private void loadActiveSegment() throws IOException {
+        Path path = this.directory.resolve(ACTIVE_SEGMENT_FILE);
+        this.activeChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long validLength = readRecords(this.activeChannel, (offset, record) -> {
+            Order order = Order.readFrom(record);
+            //A crash right after sealing leaves the records in the active segment as well
+            if (findInSegments(order.getOrderID()) == null) {
+                this.activeIndex.put(order.getOrderID(), offset);
+            }
+            this.nextOrderID = Math.max(this.nextOrderID, order.getOrderID() + 1);
+        });
+
+        this.activeChannel.truncate(validLength);
+        this.activeChannel.position(validLength);
+    }
+
+    private void loadOpenOrders() throws IOException {
+        Path path = this.directory.resolve(OPEN_ORDERS_FILE);
+        this.openOrdersChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long validLength = readRecords(this.openOrdersChannel, (offset, record) -> {
+            byte type = record.get();
+            switch (type) {
+                case ORDER_CREATED -> {
+                    Order order = Order.readFrom(record);
+                    this.openOrders.put(order.getOrderID(), order);
+                    this.nextOrderID = Math.max(this.nextOrderID, order.getOrderID() + 1);
+                }
+                case ORDER_CLOSED -> {
+                    this.openOrders.remove(record.getInt());
+                    this.closedRecords++;
+                }
+                case ORDER_SEQUENCE -> this.nextOrderID = Math.max(this.nextOrderID, record.getInt());
+                default -> throw new IOException("Unknown order log record type " + type + ".");
+            }
+        });
+
+        this.openOrdersChannel.truncate(validLength);
+        this.openOrdersChannel.position(validLength);
+
+        //An order that was processed right before a crash can still be open in this log
+        ArrayList<Integer> processed = new ArrayList<>();
+        for (int orderID : this.openOrders.keySet()) {
+            if (getProcessedOrder(orderID) != null) {
+                processed.add(orderID);
+            }
+        }
+        for (int orderID : processed) {
+            closeOpenOrder(orderID);
+        }
+    }
+
+    private Order findInSegments(int orderID) {
+        for (Segment segment : this.segments) {
+            if (orderID >= segment.minOrderID && orderID <= segment.maxOrderID) {
+                Order order = segment.find(orderID);
+                if (order != null) {
+                    return order;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private Order readActiveRecord(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(this.activeChannel, length, offset);
+
+        ByteBuffer record = ByteBuffer.allocate(length.flip().getInt());
+        readFully(this.activeChannel, record, offset + 4);
+
+        return Order.readFrom(record.flip());
+    }
+
+    //Every record is framed as length, payload and CRC32C checksum of the payload
+    private static void appendRecord(FileChannel channel, ByteBuffer payload) throws IOException {
+        payload.flip();
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+
+        ByteBuffer record = ByteBuffer.allocate(4 + payload.remaining() + 4);
+        record.putInt(payload.remaining());
+        record.put(payload);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    //Reads the framed records and returns the length of the file up to the last complete one
+    private static long readRecords(FileChannel channel, RecordHandler handler) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Order log file is too large to be read.");
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        CRC32C crc = new CRC32C();
+        int position = 0;
+
+        while (position + 8 <= size) {
+            int length = buffer.getInt(position);
+            if (length < 0 || position + 8L + length > size) {
+                break;
+            }
+
+            ByteBuffer record = buffer.slice(position + 4, length);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(position + 4 + length)) {
+                break;
+            }
+
+            handler.handle(position, record);
+            position += 8 + length;
+        }
+
+        return position;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of the order log.");
+            }
+        }
+    }
+
+    private interface RecordHandler {
+        void handle(long offset, ByteBuffer record) throws IOException;
+    }
+
+    //A sealed, read-only segment of processed orders, memory-mapped with its sparse index kept in memory
+    private static class Segment {
+        private final MappedByteBuffer buffer;
+        private final int minOrderID;
+        private final int maxOrderID;
+        private final long minDate;
+        private final long maxDate;
+        private final int recordCount;
+        private final int[] blockOrderIDs;
+        private final int[] blockOffsets;
+        private final long[] blockMinDates;
+        private final long[] blockMaxDates;
+
+        private Segment(MappedByteBuffer buffer, int recordCount, int minOrderID, int maxOrderID, long minDate,
+                        long maxDate, int indexEntries) {
+            this.buffer = buffer;
+            this.recordCount = recordCount;
+            this.minOrderID = minOrderID;
+            this.maxOrderID = maxOrderID;
+            this.minDate = minDate;
+            this.maxDate = maxDate;
+            this.blockOrderIDs = new int[indexEntries];
+            this.blockOffsets = new int[indexEntries];
+            this.blockMinDates = new long[indexEntries];
+            this.blockMaxDates = new long[indexEntries];
+        }
+
+        private static Segment open(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < SEGMENT_HEADER_SIZE + SEGMENT_FOOTER_SIZE || size > Integer.MAX_VALUE) {
+                    throw new IOException("File " + path + " is not an order log segment.");
+                }
+
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                int footer = (int) size - SEGMENT_FOOTER_SIZE;
+                if (buffer.getInt(0) != SEGMENT_MAGIC || buffer.getInt((int) size - 4) != SEGMENT_MAGIC) {
+                    throw new IOException("File " + path + " is not an order log segment.");
+                }
+                if (buffer.getShort(4) != SEGMENT_VERSION) {
+                    throw new IOException("Unsupported order log segment version " + buffer.getShort(4) + ".");
+                }
+
+                int indexOffset = (int) buffer.getLong(footer);
+                Segment segment = new Segment(buffer, buffer.getInt(8), buffer.getInt(footer + 12),
+                        buffer.getInt(footer + 16), buffer.getLong(footer + 20), buffer.getLong(footer + 28),
+                        buffer.getInt(footer + 8));
+
+                for (int i = 0; i < segment.blockOrderIDs.length; i++) {
+                    int entry = indexOffset + i * INDEX_ENTRY_SIZE;
+                    segment.blockOrderIDs[i] = buffer.getInt(entry);
+                    segment.blockOffsets[i] = buffer.getInt(entry + 4);
+                    segment.blockMinDates[i] = buffer.getLong(entry + 8);
+                    segment.blockMaxDates[i] = buffer.getLong(entry + 16);
+                }
+
+                return segment;
+            }
+        }
+
+        //Binary search in the sparse index for the block, then a scan of at most INDEX_INTERVAL records
+        private Order find(int orderID) {
+            int low = 0;
+            int high = this.blockOrderIDs.length - 1;
+            int block = -1;
+
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (this.blockOrderIDs[middle] <= orderID) {
+                    block = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            if (block < 0) {
+                return null;
+            }
+
+            int position = this.blockOffsets[block];
+            int records = Math.min(INDEX_INTERVAL, this.recordCount - block * INDEX_INTERVAL);
+            for (int i = 0; i < records; i++) {
+                int length = this.buffer.getInt(position);
+                int recordOrderID = this.buffer.getInt(position + 4);
+                if (recordOrderID == orderID) {
+                    return Order.readFrom(this.buffer.slice(position + 4, length));
+                }
+                if (recordOrderID > orderID) {
+                    return null;
+                }
+                position += 4 + length;
+            }
+
+            return null;
+        }
+
+        //Only the blocks whose date range overlaps the requested range are read
+        private void collect(long fromTime, long toTime, List<Order> result) {
+            for (int block = 0; block < this.blockOrderIDs.length; block++) {
+                if (this.blockMaxDates[block] < fromTime || this.blockMinDates[block] > toTime) {
+                    continue;
+                }
+
+                int position = this.blockOffsets[block];
+                int records = Math.min(INDEX_INTERVAL, this.recordCount - block * INDEX_INTERVAL);
+                for (int i = 0; i < records; i++) {
+                    int length = this.buffer.getInt(position);
+                    long time = this.buffer.getLong(position + 8);
+                    if (time >= fromTime && time <= toTime) {
+                        result.add(Order.readFrom(this.buffer.slice(position + 4, length)));
+                    }
+                    position += 4 + length;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class representing a single-writer pipeline for placing orders.
+ * Producers hand the items of an order to a slot of a pre-allocated ring buffer and get a future for the order.
+ * One consumer thread takes all published slots at once, places their orders in a single batch and completes
+ * the futures once the batch has been synced to the journal. The slots are reused and the items are moved
+ * into the Order instead of copied, so an order only allocates its future and the Order itself.
+ */
+
+public class OrderPipeline implements AutoCloseable {
+    //Spins before a waiting thread starts to park, short waits are far more common than long ones
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_NANOS = 50_000;
+    //Set in claimSequence once the pipeline is closed, no sequence can be claimed after it
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final InventoryManager manager;
+    private final Slot[] ring;
+    private final int mask;
+    private final int maxBatchSize;
+    //Next sequence handed to a producer and the CLOSED bit. Claiming and closing change the same word,
+    //so once the consumer sees it closed no producer can claim a slot it won't drain.
+    private final AtomicLong claimSequence;
+    //All sequences below this one have been processed and their slots can be reused
+    private volatile long releasedSequence;
+    private volatile boolean consumerSleeping;
+    private final Thread consumer;
+
+    /**
+     * Creates the pipeline and starts its consumer thread.
+     *
+     * @param manager      The inventory the orders are placed in.
+     * @param capacity     The number of slots, rounded up to a power of two.
+     * @param maxBatchSize The most orders placed in one batch.
+     * @throws IllegalArgumentException If the capacity or the batch size is less than 1.
+     */
+    public OrderPipeline(InventoryManager manager, int capacity, int maxBatchSize) {
+        if (capacity < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("Capacity and batch size must be at least 1.");
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        this.manager = manager;
+        this.ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            this.ring[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.maxBatchSize = maxBatchSize;
+        this.claimSequence = new AtomicLong();
+
+        this.consumer = new Thread(this::consume, "order-pipeline");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Publishes an order. Waits while the ring buffer is full.
+     *
+     * @param itemsToOrder The items of the order like ItemID -> quantity. The order keeps the map,
+     *                     so the caller must not change it afterwards.
+     * @param notPlaced    Run on the consumer thread before the future completes exceptionally if the order
+     *                     wasn't placed, so nothing was taken and the caller may use the items again.
+     * @return Future completed with the placed order, or exceptionally if it can't be placed. If the order was
+     * placed but the journal could not be synced, it completes exceptionally with the UncheckedIOException
+     * without running notPlaced.
+     * @throws IllegalStateException If the pipeline is closed.
+     */
+    public CompletableFuture<Order> submit(IntIntMap itemsToOrder, Runnable notPlaced) {
+        long sequence;
+        do {
+            sequence = this.claimSequence.get();
+            if ((sequence & CLOSED) != 0) {
+                throw new IllegalStateException("Order pipeline is closed.");
+            }
+        } while (!this.claimSequence.compareAndSet(sequence, sequence + 1));
+        Slot slot = this.ring[(int) sequence & this.mask];
+
+        //The slot is free once the consumer has released the sequence that used it one lap earlier
+        int tries = 0;
+        while (sequence - this.releasedSequence >= this.ring.length) {
+            tries = backOff(tries);
+        }
+
+        slot.items = itemsToOrder;
+        slot.notPlaced = notPlaced;
+        CompletableFuture<Order> future = new CompletableFuture<>();
+        slot.future = future;
+        slot.sequence = sequence;
+
+        if (this.consumerSleeping) {
+            LockSupport.unpark(this.consumer);
+        }
+        return future;
+    }
+
+    /**
+     * Stops the consumer once all submitted orders are placed. Orders submitted after this throw.
+     */
+    @Override
+    public void close() {
+        long claimed;
+        do {
+            claimed = this.claimSequence.get();
+        } while ((claimed & CLOSED) == 0 && !this.claimSequence.compareAndSet(claimed, claimed | CLOSED));
+        LockSupport.unpark(this.consumer);
+        try {
+            this.consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void consume() {
+        long next = 0;
+        int tries = 0;
+
+        while (true) {
+            int count = 0;
+            while (count < this.maxBatchSize && this.ring[(int) (next + count) & this.mask].sequence == next + count) {
+                count++;
+            }
+
+            if (count == 0) {
+                //Claimed orders are still drained after close, the loop ends once the last of them is placed
+                if (this.claimSequence.get() == (next | CLOSED)) {
+                    return;
+                }
+                tries = waitForProducers(next, tries);
+                continue;
+            }
+            tries = 0;
+
+            placeBatch(next, count);
+            next += count;
+            this.releasedSequence = next;
+        }
+    }
+
+    private void placeBatch(long first, int count) {
+        //A failed journal sync fails the orders of this batch only, the consumer goes on with the next one
+        RuntimeException batchError = null;
+        try {
+            this.manager.runBatch(() -> {
+                for (int i = 0; i < count; i++) {
+                    Slot slot = this.ring[(int) (first + i) & this.mask];
+                    try {
+                        slot.order = this.manager.placeOrder(slot.items);
+                    } catch (RuntimeException e) {
+                        slot.error = e;
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            batchError = e;
+        }
+
+        //Completed only after runBatch has synced the journal, so a completed order survives a crash
+        for (int i = 0; i < count; i++) {
+            Slot slot = this.ring[(int) (first + i) & this.mask];
+            CompletableFuture<Order> future = slot.future;
+            Order order = slot.order;
+            RuntimeException error = slot.error;
+            Runnable notPlaced = slot.notPlaced;
+            slot.future = null;
+            slot.items = null;
+            slot.notPlaced = null;
+            slot.order = null;
+            slot.error = null;
+
+            //placeOrder changes nothing when it fails, so only placed orders keep their stock after a failed sync
+            if (order == null) {
+                notPlaced.run();
+                future.completeExceptionally(error != null ? error : batchError);
+            } else if (batchError != null) {
+                future.completeExceptionally(batchError);
+            } else {
+                future.complete(order);
+            }
+        }
+    }
+
+    private int waitForProducers(long next, int tries) {
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+            return tries + 1;
+        }
+
+        this.consumerSleeping = true;
+        //Checked again after announcing the sleep, a producer publishing before that doesn't unpark
+        if (this.ring[(int) next & this.mask].sequence != next && (this.claimSequence.get() & CLOSED) == 0) {
+            LockSupport.parkNanos(PARK_NANOS * 20);
+        }
+        this.consumerSleeping = false;
+        return tries;
+    }
+
+    private static int backOff(int tries) {
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return tries + 1;
+    }
+
+    //A reusable entry of the ring buffer, sequence is written last and publishes the other fields
+    private static final class Slot {
+        private volatile long sequence = -1;
+        private IntIntMap items;
+        private Runnable notPlaced;
+        private CompletableFuture<Order> future;
+        private Order order;
+        private RuntimeException error;
+    }
+}
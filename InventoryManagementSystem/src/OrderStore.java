@@ -0,0 +1,207 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Class representing the open orders, keyed by order ID.
+ * Orders are kept in arrays in the order they were added, and an open-addressing table of int keys points
+ * into them, so finding, adding and removing an order takes constant time however many orders are open,
+ * and going through the orders still returns them in the order they were placed.
+ * Removed orders leave a hole which is closed up once a quarter of the arrays are holes.
+ * All methods are synchronized, iterating works on a copy so it doesn't hold up writers.
+ */
+
+public class OrderStore implements Iterable<Order> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    //Position + 1 of the order in the arrays below, 0 for an empty slot. The length is a power of two.
+    private int[] table;
+    //Order IDs and orders in the order they were added, null where an order was removed
+    private int[] ids;
+    private Order[] orders;
+    //Used length of the arrays, including holes
+    private int end;
+    private int size;
+
+    public OrderStore() {
+        this.table = new int[INITIAL_CAPACITY * 2];
+        this.ids = new int[INITIAL_CAPACITY];
+        this.orders = new Order[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds an order after all others.
+     *
+     * @param order The order.
+     * @return True if the order was added, false if there already is an order with the ID.
+     */
+    public synchronized boolean add(Order order) {
+        int orderID = order.getOrderID();
+        if (findSlot(orderID) >= 0) {
+            return false;
+        }
+
+        if (this.end == this.orders.length) {
+            grow();
+        }
+        this.ids[this.end] = orderID;
+        this.orders[this.end] = order;
+        this.end++;
+        this.size++;
+        insert(orderID, this.end);
+        return true;
+    }
+
+    /**
+     * Gets the order with an ID.
+     *
+     * @return The order, or null if there isn't one with the ID.
+     */
+    public synchronized Order get(int orderID) {
+        int slot = findSlot(orderID);
+        return slot < 0 ? null : this.orders[this.table[slot] - 1];
+    }
+
+    /**
+     * Removes the order with an ID.
+     *
+     * @return The removed order, or null if there isn't one with the ID.
+     */
+    public synchronized Order remove(int orderID) {
+        int slot = findSlot(orderID);
+        if (slot < 0) {
+            return null;
+        }
+
+        int position = this.table[slot] - 1;
+        Order order = this.orders[position];
+        this.orders[position] = null;
+        this.size--;
+        deleteSlot(slot);
+
+        //Closing up the holes is linear, doing it only when they are a quarter of the arrays keeps it constant on average
+        if (this.end - this.size > this.orders.length / 4) {
+            compact();
+        }
+        return order;
+    }
+
+    /**
+     * Removes an order only if it is the one stored under its ID.
+     *
+     * @return True if the order was removed, false if another thread removed it first.
+     */
+    public synchronized boolean remove(Order order) {
+        if (get(order.getOrderID()) != order) {
+            return false;
+        }
+        remove(order.getOrderID());
+        return true;
+    }
+
+    public synchronized int size() {
+        return this.size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Gets all orders in the order they were added.
+     *
+     * @return ArrayList with the orders at the time of the call.
+     */
+    public synchronized ArrayList<Order> values() {
+        ArrayList<Order> values = new ArrayList<>(this.size);
+        for (int i = 0; i < this.end; i++) {
+            if (this.orders[i] != null) {
+                values.add(this.orders[i]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Iterates over a copy of the orders at the time of the call, in the order they were added.
+     */
+    @Override
+    public Iterator<Order> iterator() {
+        return values().iterator();
+    }
+
+    //Returns the table slot of the ID, or -1 if it isn't in the table
+    private int findSlot(int orderID) {
+        int mask = this.table.length - 1;
+        for (int slot = hash(orderID) & mask; this.table[slot] != 0; slot = (slot + 1) & mask) {
+            if (this.ids[this.table[slot] - 1] == orderID) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int orderID, int positionPlusOne) {
+        int mask = this.table.length - 1;
+        int slot = hash(orderID) & mask;
+        while (this.table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        this.table[slot] = positionPlusOne;
+    }
+
+    //Empties a slot and moves later entries of the same probe run back, so lookups never need tombstones
+    private void deleteSlot(int slot) {
+        int mask = this.table.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (this.table[next] != 0) {
+            int home = hash(this.ids[this.table[next] - 1]) & mask;
+            //The entry may move into the hole only if the hole lies between its home slot and its current slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                this.table[hole] = this.table[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.table[hole] = 0;
+    }
+
+    private void grow() {
+        //Holes are few at this point, see remove, so the arrays are full of orders and double
+        int capacity = this.orders.length * 2;
+        int[] ids = new int[capacity];
+        Order[] orders = new Order[capacity];
+        System.arraycopy(this.ids, 0, ids, 0, this.end);
+        System.arraycopy(this.orders, 0, orders, 0, this.end);
+        this.ids = ids;
+        this.orders = orders;
+        compact();
+    }
+
+    //Moves the orders over the holes and rebuilds the table, which is kept at most half full
+    private void compact() {
+        int position = 0;
+        for (int i = 0; i < this.end; i++) {
+            if (this.orders[i] != null) {
+                this.ids[position] = this.ids[i];
+                this.orders[position] = this.orders[i];
+                position++;
+            }
+        }
+        for (int i = position; i < this.end; i++) {
+            this.orders[i] = null;
+        }
+        this.end = position;
+
+        this.table = new int[this.orders.length * 2];
+        for (int i = 0; i < this.end; i++) {
+            insert(this.ids[i], i + 1);
+        }
+    }
+
+    private static int hash(int orderID) {
+        //Order IDs are consecutive, mixing spreads them over the whole table
+        int hash = orderID * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
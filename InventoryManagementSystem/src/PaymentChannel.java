@@ -0,0 +1,201 @@
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Class representing the asynchronous path of one payment type to its provider.
+ * Payments wait in a bounded queue and a dispatcher thread sends them to the gateway in batches.
+ * The queue and a limit on the batches in flight form a bulkhead, so a slow provider of one type can't take
+ * the resources of the other. Every batch has a timeout and feeds a circuit breaker, and while the circuit
+ * is open payments fail at once instead of queueing.
+ */
+
+public class PaymentChannel implements AutoCloseable {
+    private final PaymentType type;
+    private final PaymentGateway gateway;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final long timeoutNanos;
+    private final ArrayBlockingQueue<PendingPayment> queue;
+    private final Semaphore batchesInFlight;
+    private final CircuitBreaker circuitBreaker;
+    private final Thread dispatcher;
+    private volatile boolean running;
+
+    /**
+     * Creates the channel and starts its dispatcher.
+     *
+     * @param type                 The payment type of the channel.
+     * @param gateway              The provider the payments are sent to.
+     * @param maxBatchSize         The most payments in one batch.
+     * @param linger               How long the dispatcher waits for more payments to fill a batch.
+     * @param maxQueued            The most payments waiting for a batch, more are rejected.
+     * @param maxBatchesInFlight   The most batches sent to the provider and not answered yet.
+     * @param timeout              How long a batch may take before its payments fail.
+     * @param circuitBreaker       The circuit breaker of the provider.
+     * @throws IllegalArgumentException If a size is less than 1.
+     */
+    public PaymentChannel(PaymentType type, PaymentGateway gateway, int maxBatchSize, Duration linger, int maxQueued,
+                          int maxBatchesInFlight, Duration timeout, CircuitBreaker circuitBreaker) {
+        if (maxBatchSize < 1 || maxQueued < 1 || maxBatchesInFlight < 1) {
+            throw new IllegalArgumentException("Batch size, queue size and batches in flight must be at least 1.");
+        }
+
+        this.type = type;
+        this.gateway = gateway;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = linger.toNanos();
+        this.timeoutNanos = timeout.toNanos();
+        this.queue = new ArrayBlockingQueue<>(maxQueued);
+        this.batchesInFlight = new Semaphore(maxBatchesInFlight);
+        this.circuitBreaker = circuitBreaker;
+        this.running = true;
+
+        this.dispatcher = new Thread(this::dispatch, "payment-" + type.name().toLowerCase());
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queues a payment for the next batch.
+     *
+     * @param payment The payment.
+     * @return Future completed when the provider accepted the payment. It fails with RejectedExecutionException
+     * if the queue is full or the circuit is open, with TimeoutException if the provider didn't answer in time,
+     * or with the provider's error.
+     */
+    public CompletableFuture<Void> submit(PaymentRequest payment) {
+        if (!this.running) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Payment channel is closed."));
+        }
+        if (this.circuitBreaker.isRejecting()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Payment provider for " + this.type + " is unavailable, try again later."));
+        }
+
+        PendingPayment pending = new PendingPayment(payment);
+        if (!this.queue.offer(pending)) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Too many " + this.type + " payments in progress, try again later."));
+        }
+        return pending.result;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    /**
+     * Stops the dispatcher. Payments which are still queued are rejected.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        this.dispatcher.interrupt();
+        try {
+            this.dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        PendingPayment pending;
+        while ((pending = this.queue.poll()) != null) {
+            pending.result.completeExceptionally(new RejectedExecutionException("Payment channel is closed."));
+        }
+    }
+
+    private void dispatch() {
+        try {
+            while (this.running) {
+                List<PendingPayment> batch = nextBatch();
+
+                //Waiting for a free slot here lets the queue fill up, which rejects new payments
+                this.batchesInFlight.acquire();
+                send(batch);
+            }
+        } catch (InterruptedException e) {
+            //Closed
+        }
+    }
+
+    private List<PendingPayment> nextBatch() throws InterruptedException {
+        List<PendingPayment> batch = new ArrayList<>(this.maxBatchSize);
+        batch.add(this.queue.take());
+        this.queue.drainTo(batch, this.maxBatchSize - batch.size());
+
+        //A short wait fills the batch when payments arrive slower than the dispatcher takes them
+        long deadline = System.nanoTime() + this.lingerNanos;
+        while (batch.size() < this.maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            PendingPayment next = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            this.queue.drainTo(batch, this.maxBatchSize - batch.size());
+        }
+        return batch;
+    }
+
+    private void send(List<PendingPayment> batch) {
+        if (!this.circuitBreaker.allowRequest()) {
+            this.batchesInFlight.release();
+            RejectedExecutionException error = new RejectedExecutionException(
+                    "Payment provider for " + this.type + " is unavailable, try again later.");
+            for (PendingPayment pending : batch) {
+                pending.result.completeExceptionally(error);
+            }
+            return;
+        }
+
+        List<PaymentRequest> payments = new ArrayList<>(batch.size());
+        for (PendingPayment pending : batch) {
+            payments.add(pending.payment);
+        }
+
+        CompletableFuture<Void> call;
+        try {
+            call = this.gateway.charge(this.type, payments);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+
+        call.orTimeout(this.timeoutNanos, TimeUnit.NANOSECONDS).whenComplete((ignored, error) -> {
+            this.batchesInFlight.release();
+
+            if (error == null) {
+                this.circuitBreaker.recordSuccess();
+                for (PendingPayment pending : batch) {
+                    pending.result.complete(null);
+                }
+            } else {
+                this.circuitBreaker.recordFailure();
+                Throwable cause = error instanceof TimeoutException
+                        ? new TimeoutException("Payment provider for " + this.type + " didn't answer in time.")
+                        : error;
+                for (PendingPayment pending : batch) {
+                    pending.result.completeExceptionally(cause);
+                }
+            }
+        });
+    }
+
+    private static final class PendingPayment {
+        private final PaymentRequest payment;
+        private final CompletableFuture<Void> result;
+
+        private PendingPayment(PaymentRequest payment) {
+            this.payment = payment;
+            this.result = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interface for the payment providers behind the PaymentProcessor.
+ * Payments are sent in batches of one type, so a provider round trip is shared by many payments.
+ */
+
+public interface PaymentGateway {
+    /**
+     * Charges a batch of payments without blocking the caller.
+     *
+     * @param type     The type of all payments in the batch.
+     * @param payments The payments to charge.
+     * @return Future completed once the provider accepted the whole batch, or exceptionally if the batch failed.
+     */
+    CompletableFuture<Void> charge(PaymentType type, List<PaymentRequest> payments);
+}
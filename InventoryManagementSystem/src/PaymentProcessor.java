@@ -1,18 +1,56 @@
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class representing the payment processor which handles all payments made.
- * Manages a HashSet<String, String> which collects all payment methods added to the system.
+ * Manages a ConcurrentHashMap<String, String> which collects all payment methods added to the system,
+ * so payments can be processed from many threads.
  * Provides methods to add, remove, display, and process payments using different payment methods.
+ * Payments are charged through a PaymentGateway, every payment type on its own PaymentChannel which batches
+ * the payments and protects the caller from a slow or failing provider. The async methods return at once,
+ * the synchronous ones wait for the provider's answer.
  */
 
 public class PaymentProcessor implements CreditCardPayment, PayPalPayment {
     //Collection to keep all payment methods like <CardNumber/PayPal Email, Credential>>
-    HashMap<String, String> paymentMethods;
+    ConcurrentHashMap<String, String> paymentMethods;
+    private final PaymentChannel creditCardChannel;
+    private final PaymentChannel payPalChannel;
+
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final Duration BATCH_LINGER = Duration.ofMillis(2);
+    private static final int MAX_QUEUED_PAYMENTS = 10_000;
+    private static final int MAX_BATCHES_IN_FLIGHT = 8;
+    private static final Duration PAYMENT_TIMEOUT = Duration.ofSeconds(5);
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    private static final Duration CIRCUIT_OPEN_DURATION = Duration.ofSeconds(10);
 
+    /**
+     * Creates a payment processor whose provider is a simulator which accepts every payment at once.
+     */
     public PaymentProcessor() {
-        this.paymentMethods = new HashMap<>();
+        this(new SimulatedPaymentGateway());
+    }
+
+    /**
+     * Creates a payment processor which charges payments through a gateway.
+     *
+     * @param gateway The payment provider.
+     */
+    public PaymentProcessor(PaymentGateway gateway) {
+        this.paymentMethods = new ConcurrentHashMap<>();
+        this.creditCardChannel = createChannel(PaymentType.CREDIT_CARD, gateway);
+        this.payPalChannel = createChannel(PaymentType.PAYPAL, gateway);
+    }
+
+    //Every type gets its own bulkhead and circuit breaker, so one failing provider doesn't stop the other
+    private static PaymentChannel createChannel(PaymentType type, PaymentGateway gateway) {
+        return new PaymentChannel(type, gateway, MAX_BATCH_SIZE, BATCH_LINGER, MAX_QUEUED_PAYMENTS,
+                MAX_BATCHES_IN_FLIGHT, PAYMENT_TIMEOUT, new CircuitBreaker(CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_DURATION));
     }
 
     /**
@@ -38,11 +76,9 @@ public class PaymentProcessor implements CreditCardPayment, PayPalPayment {
      * @throws IllegalArgumentException If the payment method is already in the system.
      */
     public void addPaymentMethod (String key, String value) {
-        if (this.checkIfPaymentMethodExists(key)) {
+        if (this.paymentMethods.putIfAbsent(key, value) != null) {
             throw new IllegalArgumentException("Payment method is already in the system!");
         }
-
-        this.paymentMethods.put(key, value);
     }
 
     /**
@@ -51,11 +87,16 @@ public class PaymentProcessor implements CreditCardPayment, PayPalPayment {
      * @throws IllegalArgumentException If the payment method is not in the system.
      */
     public void removePaymentMethod(String key) {
-        if (!this.checkIfPaymentMethodExists(key)) {
+        if (this.paymentMethods.remove(key) == null) {
             throw new NoSuchElementException("Payment not found in the system!");
         }
+    }
 
-        this.paymentMethods.remove(key);
+    /**
+     * Gets the keys of all payment methods that are in the system.
+     */
+    public ArrayList<String> getPaymentMethodKeys() {
+        return new ArrayList<>(this.paymentMethods.keySet());
     }
 
     /**
@@ -70,25 +111,40 @@ public class PaymentProcessor implements CreditCardPayment, PayPalPayment {
     }
 
     /**
-     * Processes the payment with a credit card.
+     * Processes the payment with a credit card and waits for the provider.
      * @param total The amount which has to be paid.
      * @param cardNumber The number of the card (Key) in our collection.
      * @param ccv The credential (value) in our collection.
      * @throws IllegalArgumentException If the payment method is not in the system or if the CCV is not the correct one.
+     * @throws java.util.concurrent.RejectedExecutionException If the provider is overloaded or unavailable.
      */
     @Override
     public void processCreditCardPayment(double total, String cardNumber, String ccv) {
+        await(processCreditCardPaymentAsync(total, cardNumber, ccv));
+
+        System.out.println("Payment with card " + cardNumber + " for " + total + " is completed!");
+        System.out.println();
+    }
 
-        if (!this.checkIfPaymentMethodExists(cardNumber)) {
-            throw new IllegalArgumentException("Card with number " + cardNumber + " doesn't exist.");
+    /**
+     * Processes the payment with a credit card without waiting for the provider.
+     * @param total The amount which has to be paid.
+     * @param cardNumber The number of the card (Key) in our collection.
+     * @param ccv The credential (value) in our collection.
+     * @return Future completed when the payment is charged. It fails with IllegalArgumentException for an unknown
+     * card or a wrong CCV, and like PaymentChannel.submit if the provider can't charge it.
+     */
+    public CompletableFuture<Void> processCreditCardPaymentAsync(double total, String cardNumber, String ccv) {
+        String storedCcv = this.paymentMethods.get(cardNumber);
+        if (storedCcv == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Card with number " + cardNumber + " doesn't exist."));
         }
 
-        if (!this.paymentMethods.get(cardNumber).equals(ccv)) {
-            throw new IllegalArgumentException("Invalid CCV!");
+        if (!storedCcv.equals(ccv)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid CCV!"));
         }
 
-        System.out.println("Payment with card " + cardNumber + " for " + total + " is completed!");
-        System.out.println();
+        return this.creditCardChannel.submit(new PaymentRequest(PaymentType.CREDIT_CARD, cardNumber, total));
     }
 
     /**
@@ -105,24 +161,40 @@ public class PaymentProcessor implements CreditCardPayment, PayPalPayment {
     }
 
     /**
-     * Processes the payment with a PayPal account.
+     * Processes the payment with a PayPal account and waits for the provider.
      * @param total The amount which has to be paid.
      * @param email The email of the PayPal account (Key) in our collection.
      * @param password The credential (value) in our collection.
      * @throws IllegalArgumentException If the payment method is not in the system or if the password is not the correct one.
+     * @throws java.util.concurrent.RejectedExecutionException If the provider is overloaded or unavailable.
      */
     @Override
     public void processPayPalPayment(double total, String email, String password) {
-        if (!this.checkIfPaymentMethodExists(email)) {
-            throw new IllegalArgumentException("PayPal account " + email + " doesn't exist.");
+        await(processPayPalPaymentAsync(total, email, password));
+
+        System.out.println("Payment with PayPal account " + email + " for " + total + " is completed!");
+        System.out.println();
+    }
+
+    /**
+     * Processes the payment with a PayPal account without waiting for the provider.
+     * @param total The amount which has to be paid.
+     * @param email The email of the PayPal account (Key) in our collection.
+     * @param password The credential (value) in our collection.
+     * @return Future completed when the payment is charged. It fails with IllegalArgumentException for an unknown
+     * account or a wrong password, and like PaymentChannel.submit if the provider can't charge it.
+     */
+    public CompletableFuture<Void> processPayPalPaymentAsync(double total, String email, String password) {
+        String storedPassword = this.paymentMethods.get(email);
+        if (storedPassword == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("PayPal account " + email + " doesn't exist."));
         }
 
-        if (!this.paymentMethods.get(email).equals(password)) {
-            throw new IllegalArgumentException("Invalid Password!");
+        if (!storedPassword.equals(password)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid Password!"));
         }
 
-        System.out.println("Payment with PayPal account " + email + " for " + total + " is completed!");
-        System.out.println();
+        return this.payPalChannel.submit(new PaymentRequest(PaymentType.PAYPAL, email, total));
     }
 
     /**
@@ -135,4 +207,24 @@ public class PaymentProcessor implements CreditCardPayment, PayPalPayment {
     public boolean validatePayPalPayment(String email, String password) {
         return !email.isEmpty() && !password.isEmpty();
     }
+
+    /**
+     * Stops both payment channels, payments which are still queued fail.
+     */
+    public void close() {
+        this.creditCardChannel.close();
+        this.payPalChannel.close();
+    }
+
+    //Rethrows the failure of an async payment the way the synchronous methods always threw it
+    private static void await(CompletableFuture<Void> payment) {
+        try {
+            payment.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
 }
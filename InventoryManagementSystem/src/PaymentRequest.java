@@ -0,0 +1,30 @@
+/**
+ * Class representing a single payment sent to a payment provider.
+ */
+
+public class PaymentRequest {
+    private final PaymentType type;
+    private final String key;
+    private final double amount;
+
+    public PaymentRequest(PaymentType type, String key, double amount) {
+        this.type = type;
+        this.key = key;
+        this.amount = amount;
+    }
+
+    public PaymentType getType() {
+        return this.type;
+    }
+
+    /**
+     * Gets the card number or the PayPal email the payment is charged to.
+     */
+    public String getKey() {
+        return this.key;
+    }
+
+    public double getAmount() {
+        return this.amount;
+    }
+}
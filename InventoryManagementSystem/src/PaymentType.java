@@ -0,0 +1,8 @@
+/**
+ * The kinds of payment methods the PaymentProcessor supports.
+ */
+
+public enum PaymentType {
+    CREDIT_CARD,
+    PAYPAL
+}
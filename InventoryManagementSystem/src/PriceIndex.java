@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Class representing a secondary index of the inventory by price.
+ * Items are kept sorted by price and then by ID in a tree, so the items in a price range and the cheapest
+ * or most expensive items are found by visiting only those items instead of the whole inventory.
+ * The InventoryManager keeps it up to date when items are added, removed or loaded and when a price changes.
+ * All methods are synchronized.
+ */
+
+public class PriceIndex {
+    private static final class PriceKey implements Comparable<PriceKey> {
+        private final double price;
+        private final int id;
+
+        private PriceKey(double price, int id) {
+            this.price = price;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(PriceKey other) {
+            int byPrice = Double.compare(this.price, other.price);
+            return byPrice != 0 ? byPrice : Integer.compare(this.id, other.id);
+        }
+    }
+
+    private final TreeSet<PriceKey> keys;
+    //ItemID -> key the item is indexed under, so the old key is found when the price changes
+    private final IntObjectMap<PriceKey> keyByID;
+
+    public PriceIndex() {
+        this.keys = new TreeSet<>();
+        this.keyByID = new IntObjectMap<>();
+    }
+
+    /**
+     * Creates the index of a collection of items at once, for example after a load.
+     * The keys are sorted first and then added in order, so every insertion walks the right edge of the tree,
+     * whose nodes were just visited, instead of a random path.
+     *
+     * @param items The items to index.
+     */
+    public PriceIndex(Collection<? extends InventoryItem> items) {
+        this.keyByID = new IntObjectMap<>(items.size());
+        for (InventoryItem item : items) {
+            this.keyByID.put(item.getId(), new PriceKey(item.getPrice(), item.getId()));
+        }
+
+        PriceKey[] sorted = new PriceKey[this.keyByID.size()];
+        int count = 0;
+        for (PriceKey key : this.keyByID.values()) {
+            sorted[count++] = key;
+        }
+        Arrays.parallelSort(sorted);
+        this.keys = new TreeSet<>();
+        for (PriceKey key : sorted) {
+            this.keys.add(key);
+        }
+    }
+
+    public synchronized void add(InventoryItem item) {
+        PriceKey key = new PriceKey(item.getPrice(), item.getId());
+        PriceKey previous = this.keyByID.put(item.getId(), key);
+        if (previous != null) {
+            this.keys.remove(previous);
+        }
+        this.keys.add(key);
+    }
+
+    public synchronized void remove(InventoryItem item) {
+        PriceKey key = this.keyByID.remove(item.getId());
+        if (key != null) {
+            this.keys.remove(key);
+        }
+    }
+
+    /**
+     * Moves an item to its current price, if it is in the index.
+     * The price is read under the lock, so after concurrent price changes the item ends up at the latest price.
+     */
+    public synchronized void update(InventoryItem item) {
+        PriceKey key = this.keyByID.get(item.getId());
+        if (key != null && key.price != item.getPrice()) {
+            add(item);
+        }
+    }
+
+    /**
+     * Gets the IDs of the items with a price in a range.
+     *
+     * @param minPrice The lowest price, included.
+     * @param maxPrice The highest price, included.
+     * @return ArrayList with the IDs ordered by price.
+     */
+    public synchronized ArrayList<Integer> getItemIDs(double minPrice, double maxPrice) {
+        ArrayList<Integer> ids = new ArrayList<>();
+        if (minPrice > maxPrice) {
+            return ids;
+        }
+
+        PriceKey from = new PriceKey(minPrice, Integer.MIN_VALUE);
+        PriceKey to = new PriceKey(maxPrice, Integer.MAX_VALUE);
+        for (PriceKey key : this.keys.subSet(from, true, to, true)) {
+            ids.add(key.id);
+        }
+        return ids;
+    }
+
+    /**
+     * Gets the IDs of the cheapest items.
+     *
+     * @param count The number of items.
+     * @return ArrayList with at most count IDs, cheapest first.
+     */
+    public synchronized ArrayList<Integer> getCheapest(int count) {
+        return firstIDs(this.keys, count);
+    }
+
+    /**
+     * Gets the IDs of the most expensive items.
+     *
+     * @param count The number of items.
+     * @return ArrayList with at most count IDs, most expensive first.
+     */
+    public synchronized ArrayList<Integer> getMostExpensive(int count) {
+        return firstIDs(this.keys.descendingSet(), count);
+    }
+
+    public synchronized int size() {
+        return this.keys.size();
+    }
+
+    private static ArrayList<Integer> firstIDs(NavigableSet<PriceKey> keys, int count) {
+        ArrayList<Integer> ids = new ArrayList<>(Math.max(0, Math.min(count, keys.size())));
+        Iterator<PriceKey> iterator = keys.iterator();
+        while (ids.size() < count && iterator.hasNext()) {
+            ids.add(iterator.next().id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,343 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Class representing the low-stock thresholds of the inventory and the queue of items which fell below them.
+ * A threshold is set for a single item or for a whole category, the one of the item wins.
+ * Every stock change is checked against the threshold kept on the item with a comparison, without locking,
+ * as long as the item has enough stock and isn't queued already. Items below their threshold are kept in a heap
+ * ordered by how many units they are short, so replenishment takes the items which are short the most first.
+ * An item is in the queue once, its shortfall follows the stock until it is taken out or has enough stock again.
+ * The InventoryManager keeps it up to date when items are added, removed or loaded and after every stock change.
+ */
+
+public class ReorderQueue {
+    /**
+     * An item taken out of the queue and the number of units it was short at that time.
+     */
+    public static final class Reorder {
+        private final int itemID;
+        private final int threshold;
+        private final int shortfall;
+
+        private Reorder(int itemID, int threshold, int shortfall) {
+            this.itemID = itemID;
+            this.threshold = threshold;
+            this.shortfall = shortfall;
+        }
+
+        public int getItemID() {
+            return this.itemID;
+        }
+
+        public int getThreshold() {
+            return this.threshold;
+        }
+
+        public int getShortfall() {
+            return this.shortfall;
+        }
+
+        @Override
+        public String toString() {
+            return "Item " + this.itemID + " is " + this.shortfall + " below its threshold of " + this.threshold;
+        }
+    }
+
+    //ItemID -> item with a threshold, guarded by the lock. The threshold and the queued mark are kept on the item.
+    private final IntObjectMap<InventoryItem> watched;
+    //Thresholds as they were set, guarded by the lock. Folded SymbolTable code of the category -> threshold.
+    private final IntIntMap itemThresholds;
+    private final IntIntMap categoryThresholds;
+    //Binary heap with the item which is short the most at the head, guarded by the lock
+    private int[] heapIDs;
+    private int[] heapShortfalls;
+    private int heapSize;
+    //ItemID -> index in the heap
+    private final IntIntMap heapPositions;
+
+    public ReorderQueue() {
+        this.watched = new IntObjectMap<>();
+        this.itemThresholds = new IntIntMap();
+        this.categoryThresholds = new IntIntMap();
+        this.heapIDs = new int[16];
+        this.heapShortfalls = new int[16];
+        this.heapPositions = new IntIntMap();
+    }
+
+    /**
+     * Checks an item against its threshold after its stock changed, queues it if it fell below the threshold,
+     * updates its shortfall if it is queued and takes it out of the queue if it has enough stock again.
+     * Items with enough stock which aren't queued are checked without locking, reading only fields of the item.
+     */
+    public void check(InventoryItem item) {
+        //The stock is read before the mark, refresh marks the item before it reads the stock,
+        //so a change racing with a refresh is always seen by one of them
+        int threshold = item.getLowStockThreshold();
+        if ((threshold == 0 || item.getQuantity() >= threshold) && !item.isReorderQueued()) {
+            return;
+        }
+
+        synchronized (this) {
+            //Items replaced by a load are no longer watched
+            if (this.watched.get(item.getId()) == item) {
+                refresh(item);
+            }
+        }
+    }
+
+    /**
+     * Starts watching an item with the threshold set for it or for its category.
+     * An item with the same ID is replaced.
+     */
+    public synchronized void add(InventoryItem item) {
+        InventoryItem previous = this.watched.get(item.getId());
+        if (previous != null && previous != item) {
+            unwatch(previous);
+        }
+
+        int threshold = this.itemThresholds.getOrDefault(item.getId(), 0);
+        if (threshold == 0 && item.getCategoryCode() != SymbolTable.NONE) {
+            threshold = this.categoryThresholds.getOrDefault(SymbolTable.shared().fold(item.getCategoryCode()), 0);
+        }
+
+        if (threshold > 0) {
+            item.setLowStockThreshold(threshold);
+            this.watched.put(item.getId(), item);
+            refresh(item);
+        } else {
+            unwatch(item);
+        }
+    }
+
+    /**
+     * Stops watching an item, takes it out of the queue and drops the threshold set for it.
+     */
+    public synchronized void remove(InventoryItem item) {
+        unwatch(item);
+        this.itemThresholds.remove(item.getId());
+    }
+
+    /**
+     * Starts over with a new collection of items, for example after a load.
+     * The thresholds of categories are kept, the ones of items only if an item with the same ID was loaded.
+     */
+    public synchronized void reset(Collection<? extends InventoryItem> items) {
+        for (InventoryItem item : this.watched.values()) {
+            item.setLowStockThreshold(0);
+            item.setReorderQueued(false);
+        }
+        this.watched.clear();
+        this.heapPositions.clear();
+        this.heapSize = 0;
+
+        IntIntMap kept = new IntIntMap();
+        for (InventoryItem item : items) {
+            int threshold = this.itemThresholds.getOrDefault(item.getId(), 0);
+            if (threshold > 0) {
+                kept.put(item.getId(), threshold);
+            }
+        }
+        this.itemThresholds.clear();
+        this.itemThresholds.addAll(kept);
+
+        for (InventoryItem item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Sets the threshold of an item, it wins over the one of its category.
+     *
+     * @param item      The item.
+     * @param threshold The quantity the item should have at least, 0 to use the one of its category again.
+     * @throws IllegalArgumentException If the threshold is less than 0.
+     */
+    public synchronized void setItemThreshold(InventoryItem item, int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold can't be less than 0.");
+        }
+
+        if (threshold == 0) {
+            this.itemThresholds.remove(item.getId());
+        } else {
+            this.itemThresholds.put(item.getId(), threshold);
+        }
+        add(item);
+    }
+
+    /**
+     * Sets the threshold of a category, it applies to the items of the category without a threshold of their own
+     * and to the ones added later.
+     *
+     * @param category  The category, case doesn't matter.
+     * @param items     The items currently in the category.
+     * @param threshold The quantity the items should have at least, 0 to remove the threshold.
+     * @throws IllegalArgumentException If the threshold is less than 0.
+     */
+    public synchronized void setCategoryThreshold(String category, Collection<? extends InventoryItem> items, int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold can't be less than 0.");
+        }
+
+        //Added to the table if no item has the category yet, so items added later find the threshold
+        int folded = SymbolTable.shared().fold(SymbolTable.shared().encode(category));
+        if (threshold == 0) {
+            this.categoryThresholds.remove(folded);
+        } else {
+            this.categoryThresholds.put(folded, threshold);
+        }
+        for (InventoryItem item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Gets the threshold in effect for an item, 0 if it has none.
+     */
+    public synchronized int getThreshold(int itemID) {
+        InventoryItem item = this.watched.get(itemID);
+        return item == null ? 0 : item.getLowStockThreshold();
+    }
+
+    /**
+     * Takes the item which is short the most out of the queue.
+     *
+     * @return The item and its shortfall, or null if the queue is empty.
+     */
+    public synchronized Reorder poll() {
+        if (this.heapSize == 0) {
+            return null;
+        }
+
+        InventoryItem item = this.watched.get(this.heapIDs[0]);
+        Reorder reorder = new Reorder(item.getId(), item.getLowStockThreshold(), this.heapShortfalls[0]);
+        dequeue(item);
+        return reorder;
+    }
+
+    /**
+     * Takes up to a number of items out of the queue, the ones which are short the most first.
+     *
+     * @param maxItems The maximum number of items.
+     * @return ArrayList with the items and their shortfalls.
+     */
+    public synchronized ArrayList<Reorder> drain(int maxItems) {
+        ArrayList<Reorder> reorders = new ArrayList<>(Math.max(0, Math.min(maxItems, this.heapSize)));
+        while (reorders.size() < maxItems && this.heapSize > 0) {
+            reorders.add(poll());
+        }
+        return reorders;
+    }
+
+    /**
+     * Gets the number of queued items.
+     */
+    public synchronized int size() {
+        return this.heapSize;
+    }
+
+    //Brings the queue in line with the current stock and threshold of a watched item, the caller holds the lock
+    private void refresh(InventoryItem item) {
+        //Marked before the stock is read, see check
+        item.setReorderQueued(true);
+        int quantity = item.getQuantity();
+        if (quantity >= item.getLowStockThreshold()) {
+            dequeue(item);
+            return;
+        }
+
+        int itemID = item.getId();
+        int shortfall = item.getLowStockThreshold() - quantity;
+        int position = this.heapPositions.getOrDefault(itemID, -1);
+        if (position < 0) {
+            if (this.heapSize == this.heapIDs.length) {
+                this.heapIDs = Arrays.copyOf(this.heapIDs, this.heapSize * 2);
+                this.heapShortfalls = Arrays.copyOf(this.heapShortfalls, this.heapSize * 2);
+            }
+            position = this.heapSize++;
+            this.heapIDs[position] = itemID;
+            this.heapPositions.put(itemID, position);
+        }
+        this.heapShortfalls[position] = shortfall;
+        siftDown(siftUp(position));
+    }
+
+    //Stops watching an item if it is the watched one with its ID
+    private void unwatch(InventoryItem item) {
+        if (this.watched.get(item.getId()) == item) {
+            dequeue(item);
+            this.watched.remove(item.getId());
+        }
+        item.setLowStockThreshold(0);
+    }
+
+    private void dequeue(InventoryItem item) {
+        item.setReorderQueued(false);
+        int itemID = item.getId();
+        int position = this.heapPositions.getOrDefault(itemID, -1);
+        if (position < 0) {
+            return;
+        }
+
+        this.heapPositions.remove(itemID);
+        int last = --this.heapSize;
+        if (position != last) {
+            move(last, position);
+            siftDown(siftUp(position));
+        }
+    }
+
+    private int siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!before(position, parent)) {
+                break;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+        return position;
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= this.heapSize) {
+                return;
+            }
+            if (child + 1 < this.heapSize && before(child + 1, child)) {
+                child++;
+            }
+            if (!before(child, position)) {
+                return;
+            }
+            swap(position, child);
+            position = child;
+        }
+    }
+
+    //Larger shortfalls first, the lower ID first for equal ones
+    private boolean before(int a, int b) {
+        if (this.heapShortfalls[a] != this.heapShortfalls[b]) {
+            return this.heapShortfalls[a] > this.heapShortfalls[b];
+        }
+        return this.heapIDs[a] < this.heapIDs[b];
+    }
+
+    private void swap(int a, int b) {
+        int id = this.heapIDs[a];
+        int shortfall = this.heapShortfalls[a];
+        move(b, a);
+        this.heapIDs[b] = id;
+        this.heapShortfalls[b] = shortfall;
+        this.heapPositions.put(id, b);
+    }
+
+    private void move(int from, int to) {
+        this.heapIDs[to] = this.heapIDs[from];
+        this.heapShortfalls[to] = this.heapShortfalls[from];
+        this.heapPositions.put(this.heapIDs[to], to);
+    }
+}
@@ -1,18 +1,25 @@
-import java.util.HashMap;
 import java.util.NoSuchElementException;
 
+/**
+ * Class representing the shopping cart of one session.
+ * The methods are synchronized because one session can send several requests at the same time.
+ * The items are kept in a primitive IntIntMap, which is handed over to the order when the cart is checked out.
+ */
+
 public class ShoppingCart {
-    private HashMap<Integer, Integer> items;
+    private IntIntMap items;
+    //System.nanoTime of the last use, read by the CartRegistry to evict idle carts
+    private volatile long lastAccess;
 
     public ShoppingCart() {
-        this.items = new HashMap<>();
+        this.items = new IntIntMap();
     }
 
     /**
      * Checks if there are any items in the cart.
      * @return True if the cart is empty and false it there is at least one item.
      */
-    public boolean isEmpty() {
+    public synchronized boolean isEmpty() {
         return this.items.isEmpty();
     }
 
@@ -21,14 +28,8 @@ public class ShoppingCart {
      * @param itemId The ID of the item we want to add.
      * @param quantity The quantity of the item we want to add.
      */
-    public void addItem(int itemId, int quantity) {
-        if (this.items.containsKey(itemId)) {
-            items.put(itemId, items.get(itemId) + quantity);
-        } else {
-            items.put(itemId, quantity);
-        }
-        System.out.println("Item added to cart: ID=" + itemId + ", Quantity=" + quantity);
-        System.out.println();
+    public synchronized void addItem(int itemId, int quantity) {
+        this.items.add(itemId, quantity);
     }
 
     /**
@@ -36,11 +37,10 @@ public class ShoppingCart {
      * @param itemId The ID of the item we want to remove.
      * @throws NoSuchElementException If the ID given is invalid.
      */
-    public void removeItem(int itemId) {
-        if (!items.containsKey(itemId)) {
+    public synchronized void removeItem(int itemId) {
+        if (!items.remove(itemId)) {
             throw new NoSuchElementException("Item not found in cart: ID = " + itemId);
         }
-        items.remove(itemId);
         System.out.println("Item removed from cart: ID=" + itemId);
         System.out.println();
     }
@@ -48,28 +48,58 @@ public class ShoppingCart {
     /**
      * Prints all items from the shopping cart.
      */
-    public void viewCart() {
+    public synchronized void viewCart() {
         if (items.isEmpty()) {
             System.out.println("Your cart is empty.");
         } else {
             System.out.println("Cart items:");
-            for (var entry : items.entrySet()) {
-                System.out.println("Item ID: " + entry.getKey() + ", Quantity: " + entry.getValue());
+            for (int slot = items.first(); slot >= 0; slot = items.next(slot)) {
+                System.out.println("Item ID: " + items.keyAt(slot) + ", Quantity: " + items.valueAt(slot));
             }
         }
     }
 
     /**
-     * Gets a collection of all items in the cart represented like ItemID -> quantity.
+     * Gets a copy of all items in the cart represented like ItemID -> quantity.
+     */
+    public synchronized IntIntMap getItems() {
+        return new IntIntMap(items);
+    }
+
+    /**
+     * Goes through the items in the cart without copying them.
+     *
+     * @param consumer Called with the ID and the quantity of every item, while the cart is locked.
      */
-    public HashMap<Integer, Integer> getItems() {
-        return new HashMap<>(items);
+    public synchronized void forEachItem(IntIntMap.EntryConsumer consumer) {
+        items.forEach(consumer);
     }
 
     /**
      * Clears the shopping cart.
      */
-    public void clearCart() {
+    public synchronized void clearCart() {
         items.clear();
     }
+
+    //Empties the cart and returns what was in it, as one step so no item added in between is lost.
+    //The items are moved, not copied, so the order can keep the returned map.
+    synchronized IntIntMap takeItems() {
+        IntIntMap taken = this.items;
+        this.items = new IntIntMap();
+        return taken;
+    }
+
+    //Puts back items taken for an order which couldn't be placed
+    synchronized void restoreItems(IntIntMap restored) {
+        this.items.addAll(restored);
+    }
+
+    long getLastAccess() {
+        return this.lastAccess;
+    }
+
+    void touch(long now) {
+        this.lastAccess = now;
+    }
 }
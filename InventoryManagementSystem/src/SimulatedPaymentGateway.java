@@ -0,0 +1,97 @@
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class representing an in-process stand-in for a payment provider.
+ * Every batch takes a fixed round trip plus a small cost per payment and some random jitter,
+ * and fails as a whole with the configured probability. No thread is blocked while a batch is in flight,
+ * the result is completed from a timer.
+ */
+
+public class SimulatedPaymentGateway implements PaymentGateway {
+    //Shared by all simulators, it only completes futures so one thread is enough
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "payment-gateway-simulator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long roundTripNanos;
+    private final long perPaymentNanos;
+    private final long jitterNanos;
+    private final double failureRate;
+    private final AtomicLong chargedPayments;
+    private final AtomicLong batches;
+
+    /**
+     * Creates the simulator.
+     *
+     * @param roundTrip   The latency of every batch.
+     * @param perPayment  The additional latency for each payment in a batch.
+     * @param jitter      The most random latency added to a batch.
+     * @param failureRate The probability from 0 to 1 that a batch fails.
+     * @throws IllegalArgumentException If a latency is negative or the failure rate is not between 0 and 1.
+     */
+    public SimulatedPaymentGateway(Duration roundTrip, Duration perPayment, Duration jitter, double failureRate) {
+        if (roundTrip.isNegative() || perPayment.isNegative() || jitter.isNegative()) {
+            throw new IllegalArgumentException("Latency can't be negative.");
+        }
+        if (failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("Failure rate must be between 0 and 1.");
+        }
+
+        this.roundTripNanos = roundTrip.toNanos();
+        this.perPaymentNanos = perPayment.toNanos();
+        this.jitterNanos = jitter.toNanos();
+        this.failureRate = failureRate;
+        this.chargedPayments = new AtomicLong();
+        this.batches = new AtomicLong();
+    }
+
+    /**
+     * Creates a simulator which answers at once and never fails.
+     */
+    public SimulatedPaymentGateway() {
+        this(Duration.ZERO, Duration.ZERO, Duration.ZERO, 0);
+    }
+
+    @Override
+    public CompletableFuture<Void> charge(PaymentType type, List<PaymentRequest> payments) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = this.roundTripNanos + this.perPaymentNanos * payments.size()
+                + (this.jitterNanos > 0 ? random.nextLong(this.jitterNanos + 1) : 0);
+        boolean fails = random.nextDouble() < this.failureRate;
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        TIMER.schedule(() -> {
+            if (fails) {
+                result.completeExceptionally(new IllegalStateException("Simulated payment provider failure."));
+            } else {
+                this.batches.incrementAndGet();
+                this.chargedPayments.addAndGet(payments.size());
+                result.complete(null);
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    /**
+     * Gets the number of payments in all successful batches.
+     */
+    public long getChargedPayments() {
+        return this.chargedPayments.get();
+    }
+
+    /**
+     * Gets the number of successful batches.
+     */
+    public long getBatches() {
+        return this.batches.get();
+    }
+}
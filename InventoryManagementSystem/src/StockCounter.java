@@ -0,0 +1,34 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Class representing the stock of a heavily contended item.
+ * The value sits in the middle of an array with a cache line of unused slots on each side, so threads
+ * hammering it don't also invalidate the lines holding the item's other fields or neighbouring objects.
+ * Only items whose stock updates keep colliding get one, see InventoryItem.
+ */
+
+public class StockCounter {
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(int[].class);
+    //16 ints are 64 bytes, one cache line on each side of the value
+    private static final int PADDING = 16;
+
+    private final int[] slots;
+
+    public StockCounter(int quantity) {
+        this.slots = new int[PADDING * 2 + 1];
+        SLOT.setVolatile(this.slots, PADDING, quantity);
+    }
+
+    public int get() {
+        return (int) SLOT.getVolatile(this.slots, PADDING);
+    }
+
+    public void set(int quantity) {
+        SLOT.setVolatile(this.slots, PADDING, quantity);
+    }
+
+    public boolean compareAndSet(int expected, int quantity) {
+        return SLOT.compareAndSet(this.slots, PADDING, expected, quantity);
+    }
+}
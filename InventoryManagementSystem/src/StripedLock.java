@@ -0,0 +1,92 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class representing a fixed set of locks shared by all item IDs.
+ * Every ID maps to one stripe, so operations on different items rarely wait for each other
+ * without needing a lock object per item.
+ * Several stripes are always locked in ascending order, so two threads locking overlapping sets can't deadlock.
+ */
+
+public class StripedLock {
+    private final ReentrantLock[] locks;
+    private final int shift;
+
+    /**
+     * Creates the striped lock.
+     *
+     * @param stripes The number of stripes, rounded up to a power of two.
+     * @throws IllegalArgumentException If the number of stripes is less than 1.
+     */
+    public StripedLock(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Number of stripes must be at least 1.");
+        }
+
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.locks[i] = new ReentrantLock();
+        }
+        this.shift = 32 - Integer.numberOfTrailingZeros(size);
+    }
+
+    /**
+     * Gets the stripe of an ID. Consecutive IDs are spread over different stripes.
+     */
+    public int stripeFor(int key) {
+        return this.shift == 32 ? 0 : (key * 0x9E3779B9) >>> this.shift;
+    }
+
+    public void lock(int key) {
+        this.locks[stripeFor(key)].lock();
+    }
+
+    public void unlock(int key) {
+        this.locks[stripeFor(key)].unlock();
+    }
+
+    /**
+     * Locks the stripes of all given IDs in ascending stripe order, each stripe once.
+     *
+     * @param keys The IDs to lock.
+     * @return The locked stripes, which have to be passed to unlockAll.
+     */
+    public int[] lockAll(int[] keys) {
+        int[] stripes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            stripes[i] = stripeFor(keys[i]);
+        }
+        Arrays.sort(stripes);
+
+        //Remove duplicates, a stripe shared by several IDs is only locked once
+        int count = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            if (i == 0 || stripes[i] != stripes[i - 1]) {
+                stripes[count++] = stripes[i];
+            }
+        }
+        stripes = Arrays.copyOf(stripes, count);
+
+        for (int i = 0; i < stripes.length; i++) {
+            this.locks[stripes[i]].lock();
+        }
+
+        return stripes;
+    }
+
+    /**
+     * Unlocks the stripes returned by lockAll.
+     *
+     * @param stripes The locked stripes.
+     */
+    public void unlockAll(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            this.locks[stripes[i]].unlock();
+        }
+    }
+}
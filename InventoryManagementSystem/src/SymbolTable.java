@@ -0,0 +1,255 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class representing a table of strings which many items share, like categories and descriptions.
+ * Every distinct string is kept once and gets a small int code, so items store the code instead of their own copy
+ * of the string, and two strings are compared by comparing their codes.
+ * Every string also knows the code of its lower-case form, so strings are compared ignoring case with the same
+ * int compare, without creating the lower-case strings.
+ * Codes are handed out in the order strings are first seen and are valid only inside the running program,
+ * saved files store the strings.
+ * A table either keeps every string it has ever seen, for fields with few distinct values whose codes are also kept
+ * apart from the items, like the category thresholds of the ReorderQueue, or has weak entries, for free text like
+ * descriptions. Items hold the Symbol of a weak entry, and once no Symbol of a string is reachable any more
+ * the string is dropped on the next add and its code is handed out again.
+ * Looking up codes and strings doesn't lock, adding a new string locks the table.
+ */
+
+public final class SymbolTable {
+    //Code of null
+    public static final int NONE = -1;
+
+    private static final SymbolTable SHARED = new SymbolTable(false);
+    private static final SymbolTable SHARED_WEAK = new SymbolTable(true);
+
+    /**
+     * A string of a table with its code. A weak entry stays in its table while its Symbol is reachable,
+     * and the Symbol keeps the entry of its lower-case form.
+     */
+    public static final class Symbol {
+        private final String value;
+        private final int code;
+        private final Symbol folded;
+
+        private Symbol(String value, int code, Symbol folded) {
+            this.value = value;
+            this.code = code;
+            this.folded = folded == null ? this : folded;
+        }
+
+        public String getValue() {
+            return this.value;
+        }
+
+        public int getCode() {
+            return this.code;
+        }
+    }
+
+    //Entry of a code, the Symbol is also held strongly unless the table has weak entries
+    private static final class Entry extends WeakReference<Symbol> {
+        private final String value;
+        private final int code;
+        private final int foldedCode;
+        private final Symbol pinned;
+
+        private Entry(Symbol symbol, ReferenceQueue<Symbol> queue, boolean weak) {
+            super(symbol, queue);
+            this.value = symbol.value;
+            this.code = symbol.code;
+            this.foldedCode = symbol.folded.code;
+            this.pinned = weak ? null : symbol;
+        }
+    }
+
+    private final boolean weak;
+    //String -> entry, an entry is put here only after it is stored by its code
+    private final ConcurrentHashMap<String, Entry> entries;
+    //Code -> entry, replaced when it grows, null for a code which was freed
+    private volatile Entry[] byCode;
+    //Weak entries whose Symbol was collected, their codes are freed on the next add
+    private final ReferenceQueue<Symbol> collected;
+    //Freed codes are handed out before new ones, all guarded by the lock
+    private int[] freeCodes;
+    private int freeCount;
+    private int nextCode;
+    private int size;
+
+    /**
+     * Creates a table which keeps every string it has ever seen.
+     */
+    public SymbolTable() {
+        this(false);
+    }
+
+    /**
+     * Creates a table.
+     *
+     * @param weak If the strings are dropped once no Symbol of them is reachable.
+     */
+    public SymbolTable(boolean weak) {
+        this.weak = weak;
+        this.entries = new ConcurrentHashMap<>();
+        this.byCode = new Entry[64];
+        this.collected = new ReferenceQueue<>();
+        this.freeCodes = new int[16];
+    }
+
+    /**
+     * Gets the table the items store their categories in.
+     */
+    public static SymbolTable shared() {
+        return SHARED;
+    }
+
+    /**
+     * Gets the table with weak entries the items store their descriptions in.
+     */
+    public static SymbolTable sharedWeak() {
+        return SHARED_WEAK;
+    }
+
+    /**
+     * Gets the Symbol of a string, adding the string to the table if it isn't in it yet.
+     *
+     * @param value The string.
+     * @return The Symbol of the string, null for null.
+     */
+    public Symbol intern(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        Entry entry = this.entries.get(value);
+        Symbol symbol = entry == null ? null : entry.get();
+        return symbol != null ? symbol : add(value);
+    }
+
+    /**
+     * Gets the code of a string, adding the string to the table if it isn't in it yet.
+     * In a table with weak entries the code is only valid while a Symbol of the string is held, see intern.
+     *
+     * @param value The string.
+     * @return The code of the string, NONE for null.
+     */
+    public int encode(String value) {
+        return value == null ? NONE : intern(value).code;
+    }
+
+    /**
+     * Gets the string of a code.
+     *
+     * @param code The code, as returned by encode.
+     * @return The string, null for NONE.
+     */
+    public String decode(int code) {
+        return code == NONE ? null : this.byCode[code].value;
+    }
+
+    /**
+     * Gets the code of a string without adding it.
+     *
+     * @return The code of the string, NONE if it is null or not in the table.
+     */
+    public int lookup(String value) {
+        if (value == null) {
+            return NONE;
+        }
+
+        Entry entry = this.entries.get(value);
+        return entry == null || entry.get() == null ? NONE : entry.code;
+    }
+
+    /**
+     * Gets the code of the lower-case form of a string, two strings which only differ in case have the same one.
+     *
+     * @param code The code of the string.
+     * @return The code of its lower-case form, NONE for NONE.
+     */
+    public int fold(int code) {
+        return code == NONE ? NONE : this.byCode[code].foldedCode;
+    }
+
+    /**
+     * Gets the code of the lower-case form of a string without adding it, to compare it with the folded codes
+     * of the strings in the table.
+     *
+     * @return The code of the lower-case form, NONE if it is null or no string in the table has that form.
+     */
+    public int lookupFolded(String value) {
+        int code = lookup(value);
+        return code != NONE ? fold(code) : lookup(lower(value));
+    }
+
+    /**
+     * Gets the number of strings in the table, after dropping the weak entries which were collected.
+     */
+    public synchronized int size() {
+        freeCollected();
+        return this.size;
+    }
+
+    private synchronized Symbol add(String value) {
+        freeCollected();
+        Entry existing = this.entries.get(value);
+        Symbol symbol = existing == null ? null : existing.get();
+        if (symbol != null) {
+            return symbol;
+        }
+        //Collected but not queued yet
+        if (existing != null) {
+            free(existing);
+        }
+
+        String lowerCase = lower(value);
+        //The lower-case form gets its own entry first, it is its own lower-case form
+        Symbol folded = lowerCase.equals(value) ? null : intern(lowerCase);
+
+        int code = this.freeCount > 0 ? this.freeCodes[--this.freeCount] : this.nextCode++;
+        symbol = new Symbol(value, code, folded);
+        Entry entry = new Entry(symbol, this.collected, this.weak);
+        if (code == this.byCode.length) {
+            Entry[] byCode = Arrays.copyOf(this.byCode, code * 2);
+            byCode[code] = entry;
+            this.byCode = byCode;
+        } else {
+            this.byCode[code] = entry;
+        }
+        this.size++;
+        //Published last, a thread which gets the entry from the map also sees it by its code
+        this.entries.put(value, entry);
+        return symbol;
+    }
+
+    //Has to be called while holding the lock
+    private void freeCollected() {
+        Reference<? extends Symbol> reference;
+        while ((reference = this.collected.poll()) != null) {
+            free((Entry) reference);
+        }
+    }
+
+    //Has to be called while holding the lock, an entry freed before it was queued is passed over when it is polled
+    private void free(Entry entry) {
+        if (this.byCode[entry.code] != entry) {
+            return;
+        }
+
+        this.byCode[entry.code] = null;
+        this.entries.remove(entry.value, entry);
+        if (this.freeCount == this.freeCodes.length) {
+            this.freeCodes = Arrays.copyOf(this.freeCodes, this.freeCount * 2);
+        }
+        this.freeCodes[this.freeCount++] = entry.code;
+        this.size--;
+    }
+
+    private static String lower(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,378 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Class representing an inverted full-text index over the names and descriptions of the items.
+ * Names and descriptions are split into lower-case tokens of letters and digits. Every token maps to the sorted IDs
+ * of the items whose name contains it and of the items whose description contains it.
+ * Tokens are looked up in a hash map and are also kept sorted, so all tokens starting with a prefix are next to each other.
+ * A search matches every word of the query as a whole token or as the prefix of a token, an item has to match
+ * all words. Matches in the name rank above matches in the description, and whole tokens above prefixes.
+ * Searches hold the read lock, adding and removing items hold the write lock.
+ */
+
+public class TextIndex {
+    //Score of one query word by where and how it matched
+    private static final int NAME_TOKEN_SCORE = 4;
+    private static final int NAME_PREFIX_SCORE = 3;
+    private static final int DESCRIPTION_TOKEN_SCORE = 2;
+    private static final int DESCRIPTION_PREFIX_SCORE = 1;
+
+    //Item IDs in ascending order, a plain int array so a posting costs 4 bytes
+    private static final class Postings {
+        private int[] ids = new int[2];
+        private int size;
+
+        private void append(int id) {
+            if (this.size == this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids, this.size + (this.size >> 1) + 1);
+            }
+            this.ids[this.size++] = id;
+        }
+
+        private void add(int id) {
+            if (this.size == 0 || this.ids[this.size - 1] < id) {
+                append(id);
+                return;
+            }
+
+            int position = Arrays.binarySearch(this.ids, 0, this.size, id);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            append(0);
+            System.arraycopy(this.ids, position, this.ids, position + 1, this.size - 1 - position);
+            this.ids[position] = id;
+        }
+
+        private void remove(int id) {
+            int position = Arrays.binarySearch(this.ids, 0, this.size, id);
+            if (position >= 0) {
+                System.arraycopy(this.ids, position + 1, this.ids, position, this.size - 1 - position);
+                this.size--;
+            }
+        }
+
+        //Sorts IDs appended in any order and drops duplicates, used after a bulk build
+        private void sortAndTrim() {
+            Arrays.sort(this.ids, 0, this.size);
+            int unique = 0;
+            for (int i = 0; i < this.size; i++) {
+                if (unique == 0 || this.ids[unique - 1] != this.ids[i]) {
+                    this.ids[unique++] = this.ids[i];
+                }
+            }
+            this.size = unique;
+            this.ids = Arrays.copyOf(this.ids, unique);
+        }
+    }
+
+    //The postings of one token
+    private static final class Entry {
+        private final Postings names = new Postings();
+        private final Postings descriptions = new Postings();
+
+        private boolean isEmpty() {
+            return this.names.size == 0 && this.descriptions.size == 0;
+        }
+    }
+
+    //Both maps hold the same entries, the hash map for single tokens and the sorted one for prefixes
+    private final HashMap<String, Entry> tokens;
+    private final TreeMap<String, Entry> sortedTokens;
+    private final ReentrantReadWriteLock lock;
+
+    public TextIndex() {
+        this.tokens = new HashMap<>();
+        this.sortedTokens = new TreeMap<>();
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Creates the index of a collection of items at once, for example after a load.
+     * IDs are appended to the postings in any order and every postings list is sorted once at the end.
+     *
+     * @param items The items to index.
+     */
+    public TextIndex(Collection<? extends InventoryItem> items) {
+        this();
+        for (InventoryItem item : items) {
+            for (String token : tokenize(item.getName())) {
+                entry(token).names.append(item.getId());
+            }
+            for (String token : tokenize(item.getDescription())) {
+                entry(token).descriptions.append(item.getId());
+            }
+        }
+        for (Entry entry : this.tokens.values()) {
+            entry.names.sortAndTrim();
+            entry.descriptions.sortAndTrim();
+        }
+    }
+
+    public void add(InventoryItem item) {
+        add(item.getId(), item.getName(), item.getDescription());
+    }
+
+    public void remove(InventoryItem item) {
+        remove(item.getId(), item.getName(), item.getDescription());
+    }
+
+    /**
+     * Indexes the name and description of an item.
+     */
+    public void add(int itemID, String name, String description) {
+        this.lock.writeLock().lock();
+        try {
+            for (String token : tokenize(name)) {
+                entry(token).names.add(itemID);
+            }
+            for (String token : tokenize(description)) {
+                entry(token).descriptions.add(itemID);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an item from the index, the name and description have to be the ones it was added with.
+     */
+    public void remove(int itemID, String name, String description) {
+        this.lock.writeLock().lock();
+        try {
+            for (String token : tokenize(name)) {
+                Entry entry = this.tokens.get(token);
+                if (entry != null) {
+                    entry.names.remove(itemID);
+                    removeIfEmpty(token, entry);
+                }
+            }
+            for (String token : tokenize(description)) {
+                Entry entry = this.tokens.get(token);
+                if (entry != null) {
+                    entry.descriptions.remove(itemID);
+                    removeIfEmpty(token, entry);
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the items whose name or description contain every word of a query, as a whole token or a prefix.
+     *
+     * @param query The words to search for, case doesn't matter.
+     * @param limit The maximum number of results.
+     * @return The IDs of the best matching items, best first. Items with the same score are ordered by ID.
+     */
+    public int[] search(String query, int limit) {
+        HashSet<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+
+        this.lock.readLock().lock();
+        try {
+            if (words.size() == 1) {
+                return searchWord(words.iterator().next(), limit);
+            }
+
+            //Words with the fewest postings first, so the candidates shrink as early as possible
+            ArrayList<String> ordered = new ArrayList<>(words);
+            long[] counts = new long[ordered.size()];
+            for (int i = 0; i < ordered.size(); i++) {
+                counts[i] = countPostings(ordered.get(i));
+                if (counts[i] == 0) {
+                    return new int[0];
+                }
+            }
+            Integer[] order = new Integer[ordered.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(counts[a], counts[b]));
+
+            //ItemID -> score of the words matched so far
+            IntIntMap scores = null;
+            for (int index : order) {
+                scores = match(ordered.get(index), scores);
+                if (scores.isEmpty()) {
+                    return new int[0];
+                }
+            }
+            return top(scores, limit);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of distinct tokens in the index.
+     */
+    public int getTokenCount() {
+        this.lock.readLock().lock();
+        try {
+            return this.tokens.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    //With a single word an item scores by the best way it matches, so the postings are visited from the best way down,
+    //each in ascending ID order, and the search stops as soon as there are enough results
+    private int[] searchWord(String word, int limit) {
+        Entry whole = this.tokens.get(word);
+        ArrayList<Postings> namePrefixes = new ArrayList<>();
+        ArrayList<Postings> descriptionPrefixes = new ArrayList<>();
+        for (Map.Entry<String, Entry> token : prefixRange(word).entrySet()) {
+            if (token.getValue() != whole) {
+                namePrefixes.add(token.getValue().names);
+                descriptionPrefixes.add(token.getValue().descriptions);
+            }
+        }
+
+        ArrayList<ArrayList<Postings>> ranks = new ArrayList<>();
+        ranks.add(whole == null ? new ArrayList<>() : new ArrayList<>(List.of(whole.names)));
+        ranks.add(namePrefixes);
+        ranks.add(whole == null ? new ArrayList<>() : new ArrayList<>(List.of(whole.descriptions)));
+        ranks.add(descriptionPrefixes);
+
+        IntIntMap found = new IntIntMap();
+        int[] ids = new int[limit];
+        int count = 0;
+        for (ArrayList<Postings> rank : ranks) {
+            //Merges the postings of the rank, the head of the queue is the postings list with the lowest next ID
+            PriorityQueue<int[]> cursors = new PriorityQueue<>((a, b) -> Integer.compare(
+                    rank.get(a[0]).ids[a[1]], rank.get(b[0]).ids[b[1]]));
+            for (int i = 0; i < rank.size(); i++) {
+                if (rank.get(i).size > 0) {
+                    cursors.add(new int[]{i, 0});
+                }
+            }
+
+            while (count < limit && !cursors.isEmpty()) {
+                int[] cursor = cursors.poll();
+                Postings postings = rank.get(cursor[0]);
+                int id = postings.ids[cursor[1]];
+                if (!found.containsKey(id)) {
+                    found.put(id, 0);
+                    ids[count++] = id;
+                }
+                if (++cursor[1] < postings.size) {
+                    cursors.add(cursor);
+                }
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    //Scores the items which contain the word and matched all earlier words, every item scores the best way it matches
+    private IntIntMap match(String word, IntIntMap previous) {
+        IntIntMap scores = new IntIntMap();
+        for (Map.Entry<String, Entry> token : prefixRange(word).entrySet()) {
+            boolean whole = token.getKey().equals(word);
+            score(token.getValue().names, whole ? NAME_TOKEN_SCORE : NAME_PREFIX_SCORE, previous, scores);
+            score(token.getValue().descriptions, whole ? DESCRIPTION_TOKEN_SCORE : DESCRIPTION_PREFIX_SCORE,
+                    previous, scores);
+        }
+        return scores;
+    }
+
+    private static void score(Postings postings, int score, IntIntMap previous, IntIntMap scores) {
+        for (int i = 0; i < postings.size; i++) {
+            int id = postings.ids[i];
+            int base = 0;
+            if (previous != null) {
+                base = previous.getOrDefault(id, -1);
+                if (base < 0) {
+                    continue;
+                }
+            }
+            if (scores.getOrDefault(id, 0) < base + score) {
+                scores.put(id, base + score);
+            }
+        }
+    }
+
+    private long countPostings(String word) {
+        long count = 0;
+        for (Entry entry : prefixRange(word).values()) {
+            count += entry.names.size + entry.descriptions.size;
+        }
+        return count;
+    }
+
+    //All tokens which start with the word
+    private Map<String, Entry> prefixRange(String word) {
+        return this.sortedTokens.subMap(word, true, word + Character.MAX_VALUE, false);
+    }
+
+    private Entry entry(String token) {
+        Entry entry = this.tokens.get(token);
+        if (entry == null) {
+            entry = new Entry();
+            this.tokens.put(token, entry);
+            this.sortedTokens.put(token, entry);
+        }
+        return entry;
+    }
+
+    //Keeps the best results in a heap whose head is the worst of them
+    private static int[] top(IntIntMap scores, int limit) {
+        PriorityQueue<long[]> best = new PriorityQueue<>((a, b) -> a[1] != b[1] ? Long.compare(a[1], b[1]) : Long.compare(b[0], a[0]));
+        for (int slot = scores.first(); slot >= 0; slot = scores.next(slot)) {
+            long[] result = {scores.keyAt(slot), scores.valueAt(slot)};
+            if (best.size() < limit) {
+                best.add(result);
+            } else if (best.comparator().compare(result, best.peek()) > 0) {
+                best.poll();
+                best.add(result);
+            }
+        }
+
+        int[] ids = new int[best.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = (int) best.poll()[0];
+        }
+        return ids;
+    }
+
+    private void removeIfEmpty(String token, Entry entry) {
+        if (entry.isEmpty()) {
+            this.tokens.remove(token);
+            this.sortedTokens.remove(token);
+        }
+    }
+
+    //Splits a text into distinct lower-case tokens of letters and digits
+    static HashSet<String> tokenize(String text) {
+        HashSet<String> tokens = new HashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean partOfToken = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (partOfToken && start < 0) {
+                start = i;
+            } else if (!partOfToken && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
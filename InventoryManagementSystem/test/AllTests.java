@@ -0,0 +1,16 @@
+/**
+ * Runs all tests, a failed check ends the run with an AssertionError.
+ * Compile the sources and the tests together and run this class, for example
+ * javac -d out src/*.java test/*.java and java -cp out AllTests.
+ */
+
+public class AllTests {
+    public static void main(String[] args) throws Exception {
+        IntIntMapTest.main(args);
+        IdAllocatorTest.main(args);
+        InventorySnapshotTest.main(args);
+        InventoryJournalTest.main(args);
+        OrderPipelineTest.main(args);
+        System.out.println("All tests passed");
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests of IdAllocator: claiming and releasing single IDs, blocks and the next free ID,
+ * also across the conversion of a chunk between its sorted array and its bitmap.
+ */
+
+public class IdAllocatorTest {
+    public static void main(String[] args) throws Exception {
+        claimAndRelease();
+        claimBlock();
+        fillAndDrainChunk();
+        matchesBitSet();
+        concurrentClaims();
+        System.out.println("IdAllocatorTest passed");
+    }
+
+    private static void claimAndRelease() {
+        IdAllocator ids = new IdAllocator();
+        TestSupport.check(ids.claim(5), "free ID is claimed");
+        TestSupport.check(!ids.claim(5), "claimed ID is not claimed again");
+        TestSupport.check(ids.isInUse(5) && !ids.isInUse(4), "only the claimed ID is in use");
+        TestSupport.checkEquals(5, ids.getHighest(), "highest ID");
+        TestSupport.check(ids.release(5), "claimed ID is released");
+        TestSupport.check(!ids.release(5), "released ID is not released again");
+        TestSupport.check(!ids.isInUse(5), "released ID is free");
+        TestSupport.checkEquals(0, ids.size(), "size after release");
+        TestSupport.check(!ids.release(-1) && !ids.isInUse(-1), "negative IDs are never in use");
+        TestSupport.checkThrows(IllegalArgumentException.class, () -> ids.claim(-1), "negative ID");
+
+        ids.claim(0);
+        ids.claim(1);
+        ids.claim(3);
+        TestSupport.checkEquals(2, ids.nextFree(0), "next free skips claimed IDs");
+        TestSupport.checkEquals(2, ids.claimNext(0), "claimNext claims the next free ID");
+        TestSupport.checkEquals(4, ids.claimNext(0), "claimNext after the gap");
+        TestSupport.checkEquals(1 << 16, ids.nextFree(1 << 16), "next free in a chunk without IDs");
+    }
+
+    private static void claimBlock() {
+        IdAllocator ids = new IdAllocator();
+        ids.claim(10);
+        TestSupport.checkEquals(11, ids.claimBlock(5), "block starts after the highest ID");
+        for (int id = 11; id < 16; id++) {
+            TestSupport.check(ids.isInUse(id), "ID " + id + " of the block is in use");
+        }
+        TestSupport.checkEquals(16, ids.claimBlock(1), "next block");
+        TestSupport.checkThrows(IllegalArgumentException.class, () -> ids.claimBlock(0), "empty block");
+    }
+
+    //Claims every ID of a chunk in order and releases them again, which converts the chunk both ways
+    private static void fillAndDrainChunk() {
+        IdAllocator ids = new IdAllocator();
+        int chunkSize = 1 << 16;
+        for (int id = 0; id < chunkSize; id++) {
+            TestSupport.checkEquals(id, ids.claimNext(0), "claimNext while filling the chunk");
+        }
+        TestSupport.checkEquals(chunkSize, ids.nextFree(0), "full chunk is skipped");
+        for (int id = chunkSize - 1; id >= 0; id -= 2) {
+            TestSupport.check(ids.release(id), "release " + id);
+        }
+        for (int id = 0; id < chunkSize; id++) {
+            TestSupport.checkEquals(id % 2 == 0, ids.isInUse(id), "ID " + id + " after releasing every other one");
+        }
+        TestSupport.checkEquals(1, ids.nextFree(0), "first released ID is free");
+        for (int id = 0; id < chunkSize; id += 2) {
+            TestSupport.check(ids.release(id), "release " + id);
+        }
+        TestSupport.checkEquals(0, ids.size(), "size of the drained chunk");
+        TestSupport.checkEquals(0, ids.nextFree(0), "drained chunk is free again");
+    }
+
+    //Random claims and releases over two chunks have to agree with a BitSet
+    private static void matchesBitSet() {
+        Random random = new Random(16);
+        for (int round = 0; round < 10; round++) {
+            IdAllocator ids = new IdAllocator();
+            BitSet expected = new BitSet();
+            int range = round % 2 == 0 ? 140_000 : 70_000;
+            for (int i = 0; i < 200_000; i++) {
+                int id = random.nextInt(range);
+                switch (random.nextInt(4)) {
+                    case 0, 1 -> {
+                        TestSupport.checkEquals(!expected.get(id), ids.claim(id), "claim " + id);
+                        expected.set(id);
+                    }
+                    case 2 -> {
+                        TestSupport.checkEquals(expected.get(id), ids.release(id), "release " + id);
+                        expected.clear(id);
+                    }
+                    default -> TestSupport.checkEquals(expected.nextClearBit(id), ids.nextFree(id), "nextFree " + id);
+                }
+                TestSupport.checkEquals(expected.get(id), ids.isInUse(id), "isInUse " + id);
+            }
+            TestSupport.checkEquals(expected.cardinality(), ids.size(), "size");
+        }
+    }
+
+    private static void concurrentClaims() throws Exception {
+        IdAllocator ids = new IdAllocator();
+        ConcurrentHashMap<Integer, Boolean> claimed = new ConcurrentHashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                workers.add(pool.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        int id = ids.claimNext(0);
+                        TestSupport.check(claimed.put(id, true) == null, "ID " + id + " was handed out twice");
+                        if (i % 3 == 0) {
+                            claimed.remove(id);
+                            ids.release(id);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        TestSupport.checkEquals(claimed.size(), ids.size(), "size after concurrent claims");
+    }
+}
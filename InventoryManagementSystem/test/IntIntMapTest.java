@@ -0,0 +1,56 @@
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Tests of IntIntMap against a HashMap, including growing, removing and iterating by slot.
+ */
+
+public class IntIntMapTest {
+    public static void main(String[] args) {
+        basics();
+        matchesHashMap();
+        System.out.println("IntIntMapTest passed");
+    }
+
+    private static void basics() {
+        IntIntMap map = new IntIntMap();
+        TestSupport.check(map.isEmpty(), "new map is empty");
+        map.put(7, 3);
+        TestSupport.checkEquals(5, map.add(7, 2), "add returns the new value");
+        TestSupport.checkEquals(4, map.add(8, 4), "add to a missing key starts at 0");
+        TestSupport.checkEquals(-1, map.getOrDefault(9, -1), "missing key");
+        TestSupport.check(map.remove(7) && !map.remove(7), "remove only once");
+
+        IntIntMap copy = new IntIntMap(map);
+        TestSupport.checkEquals(map, copy, "copy equals the original");
+        copy.put(1, 1);
+        TestSupport.check(!map.containsKey(1), "copy doesn't share the table");
+    }
+
+    private static void matchesHashMap() {
+        Random random = new Random(16);
+        IntIntMap map = new IntIntMap();
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(5_000) - 100;
+            if (random.nextInt(3) == 0) {
+                TestSupport.checkEquals(expected.remove(key) != null, map.remove(key), "remove " + key);
+            } else {
+                map.put(key, i);
+                expected.put(key, i);
+            }
+        }
+        TestSupport.checkEquals(expected.size(), map.size(), "size");
+
+        int visited = 0;
+        for (int slot = map.first(); slot >= 0; slot = map.next(slot)) {
+            TestSupport.checkEquals(expected.get(map.keyAt(slot)), map.valueAt(slot), "value of " + map.keyAt(slot));
+            visited++;
+        }
+        TestSupport.checkEquals(expected.size(), visited, "entries visited by slot");
+
+        int[] sum = new int[1];
+        map.forEach((key, value) -> sum[0] += value);
+        TestSupport.checkEquals(expected.values().stream().mapToInt(Integer::intValue).sum(), sum[0], "sum of forEach");
+    }
+}
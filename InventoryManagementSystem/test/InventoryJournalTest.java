@@ -0,0 +1,86 @@
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tests of recovering an InventoryManager from its journal: every kind of entry is replayed,
+ * and a torn entry at the end of the journal is cut off without losing the entries before it.
+ */
+
+public class InventoryJournalTest {
+    public static void main(String[] args) throws Exception {
+        replay();
+        tornTail();
+        System.out.println("InventoryJournalTest passed");
+    }
+
+    private static void replay() throws Exception {
+        Path directory = TestSupport.newDirectory("journal-replay");
+        String snapshot = directory.resolve("inventory.snapshot").toString();
+        String journal = directory.resolve("inventory.journal").toString();
+
+        InventoryManager manager = new InventoryManager();
+        manager.openJournal(snapshot, journal);
+        manager.addItem(new FragileItem("Vase", 3001, 10, 1.5, "Glass vase", 40));
+        manager.addItem(new GroceryItem("Milk", 3002, 20, "2030-01-01", "Fresh milk", 2.5));
+        manager.setQuantity(3001, 7);
+        manager.setPrice(3001, 55.5);
+        manager.removeItem(3002);
+        manager.addItemToCart("journal", 3001, 2);
+        manager.createOrder("journal");
+        manager.closeJournal();
+
+        InventoryManager recovered = new InventoryManager();
+        recovered.openJournal(snapshot, journal);
+        try {
+            InventoryItem vase = recovered.getItem(3001);
+            TestSupport.check(vase != null, "added item is recovered");
+            TestSupport.checkEquals(5, vase.getQuantity(), "quantity after the set and the order");
+            TestSupport.checkEquals(55.5, vase.getPrice(), "journaled price");
+            TestSupport.check(recovered.getItem(3002) == null, "removed item stays removed");
+            TestSupport.checkEquals(1L, recovered.getOpenOrderCount(), "open orders");
+            TestSupport.checkEquals(vase.calculateValue(5), recovered.getTotalValue(), "total value of the recovered items");
+            TestSupport.checkEquals(1, recovered.getItemsInPriceRange(55, 56).size(), "price index after the replay");
+        } finally {
+            recovered.closeJournal();
+        }
+    }
+
+    private static void tornTail() throws Exception {
+        Path directory = TestSupport.newDirectory("journal-torn");
+        String snapshot = directory.resolve("inventory.snapshot").toString();
+        Path journal = directory.resolve("inventory.journal");
+
+        InventoryManager manager = new InventoryManager();
+        manager.openJournal(snapshot, journal.toString());
+        manager.addItem(new FragileItem("Bowl", 3003, 4, 0.5, "Glass bowl", 10));
+        manager.setPrice(3003, 20);
+        manager.closeJournal();
+
+        //A crash in the middle of the last write leaves only part of the entry
+        long length;
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            length = channel.size() - 3;
+            channel.truncate(length);
+        }
+
+        InventoryManager recovered = new InventoryManager();
+        recovered.openJournal(snapshot, journal.toString());
+        TestSupport.checkEquals(10.0, recovered.getItem(3003).getPrice(), "torn price change is not replayed");
+        TestSupport.checkEquals(4, recovered.getItem(3003).getQuantity(), "entries before the torn one are replayed");
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+            TestSupport.check(channel.size() < length, "torn entry is cut off the file");
+        }
+
+        //New entries continue after the cut, so the next recovery sees them
+        recovered.setPrice(3003, 30);
+        recovered.closeJournal();
+        InventoryManager again = new InventoryManager();
+        again.openJournal(snapshot, journal.toString());
+        try {
+            TestSupport.checkEquals(30.0, again.getItem(3003).getPrice(), "entry appended after the cut");
+        } finally {
+            again.closeJournal();
+        }
+    }
+}
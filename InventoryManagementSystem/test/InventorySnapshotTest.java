@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests of the binary snapshot: every item type is saved and loaded with all its fields,
+ * and a damaged file is rejected with an IOException without touching the item IDs in use.
+ */
+
+public class InventorySnapshotTest {
+    private static final int[] IDS = {4001, 4002, 4003, 4004, 4005};
+
+    public static void main(String[] args) throws Exception {
+        Path directory = TestSupport.newDirectory("snapshot");
+        Path file = directory.resolve("inventory.ser");
+        InventoryManager manager = newInventory();
+        //Saved with the .ser extension, the CSV copy is written next to it as .csv
+        manager.saveInventory(file.toString());
+
+        roundTrip(manager, file);
+        damagedFiles(file, directory.resolve("damaged.ser"));
+        System.out.println("InventorySnapshotTest passed");
+    }
+
+    private static InventoryManager newInventory() {
+        InventoryManager manager = new InventoryManager();
+        manager.addItem(new GroceryItem("Milk", 4001, 10, LocalDate.of(2030, 5, 1), "Shared description", 2.5));
+        manager.addItem(new ElectronicsItem("TV", 4002, 2, LocalDate.of(2031, 1, 15), "Big screen", 500));
+        manager.addItem(new FragileItem("Vase", 4003, 3, 1.5, "Shared description", 40));
+        InventoryItem hammer = new InventoryItem("Hammer", 4004, 7, null, false, false, 12);
+        hammer.setCategory("Tools");
+        manager.addItem(hammer);
+        manager.addItem(new InventoryItem("Nails", 4005, 0, "Box of nails", false, false, 3));
+        return manager;
+    }
+
+    private static void roundTrip(InventoryManager manager, Path file) throws IOException {
+        TestSupport.check(!Files.exists(file.resolveSibling(file.getFileName() + ".tmp")), "no temporary file is left");
+
+        InventoryManager loaded = new InventoryManager();
+        loaded.loadInventory(file.toString());
+        TestSupport.checkEquals(IDS.length, loaded.getItems().size(), "number of loaded items");
+        for (int id : IDS) {
+            InventoryItem saved = manager.getItem(id);
+            InventoryItem item = loaded.getItem(id);
+            TestSupport.checkEquals(saved.getClass(), item.getClass(), "type of item " + id);
+            TestSupport.checkEquals(saved.getName(), item.getName(), "name of item " + id);
+            TestSupport.checkEquals(saved.getDescription(), item.getDescription(), "description of item " + id);
+            TestSupport.checkEquals(saved.getCategory(), item.getCategory(), "category of item " + id);
+            TestSupport.checkEquals(saved.getQuantity(), item.getQuantity(), "quantity of item " + id);
+            TestSupport.checkEquals(saved.getPrice(), item.getPrice(), "price of item " + id);
+            TestSupport.checkEquals(saved.isBreakable(), item.isBreakable(), "breakable of item " + id);
+            TestSupport.checkEquals(saved.isPerishable(), item.isPerishable(), "perishable of item " + id);
+        }
+        TestSupport.checkEquals(LocalDate.of(2030, 5, 1), ((GroceryItem) loaded.getItem(4001)).getExpirationLocalDate(),
+                "expiration date");
+        TestSupport.checkEquals(LocalDate.of(2031, 1, 15), ((ElectronicsItem) loaded.getItem(4002)).getWarrantyDate(),
+                "warranty date");
+        TestSupport.checkEquals(1.5, ((FragileItem) loaded.getItem(4003)).getWeight(), "weight");
+        TestSupport.checkEquals(loaded.getItem(4001).getDescriptionCode(), loaded.getItem(4003).getDescriptionCode(),
+                "equal descriptions share their code");
+        TestSupport.checkEquals(manager.getTotalValue(), loaded.getTotalValue(), "total value");
+        TestSupport.checkEquals(1, loaded.getItemsByCategory("tools").size(), "category index of the loaded items");
+    }
+
+    //Truncated and randomly damaged copies may only fail with an IOException, and leave the IDs as they were
+    private static void damagedFiles(Path file, Path damaged) throws IOException {
+        byte[] good = Files.readAllBytes(file);
+        boolean[] inUse = idsInUse();
+
+        Files.write(damaged, Arrays.copyOf(good, good.length / 2));
+        TestSupport.checkThrows(IOException.class, () -> InventorySnapshot.read(damaged), "truncated snapshot");
+        TestSupport.check(Arrays.equals(inUse, idsInUse()), "IDs in use after the truncated snapshot");
+
+        Random random = new Random(16);
+        for (int i = 0; i < 2_000; i++) {
+            byte[] bytes = good.clone();
+            for (int j = 0; j < 3; j++) {
+                bytes[random.nextInt(bytes.length)] = (byte) random.nextInt(256);
+            }
+            Files.write(damaged, bytes);
+            try {
+                InventorySnapshot.read(damaged);
+            } catch (IOException e) {
+                TestSupport.check(Arrays.equals(inUse, idsInUse()), "IDs in use after a rejected snapshot");
+            }
+        }
+    }
+
+    private static boolean[] idsInUse() {
+        boolean[] inUse = new boolean[IDS.length];
+        for (int i = 0; i < IDS.length; i++) {
+            inUse[i] = InventoryItem.isIdInUse(IDS[i]);
+        }
+        return inUse;
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests of the OrderPipeline: orders queued before close are all placed, orders which can't be placed give
+ * the cart back, and producers racing with close either get a future which completes or an exception.
+ */
+
+public class OrderPipelineTest {
+    public static void main(String[] args) throws Exception {
+        closeAfterSubmits();
+        notPlacedOrder();
+        submitAfterClose();
+        submitsRacingClose();
+        System.out.println("OrderPipelineTest passed");
+    }
+
+    private static void closeAfterSubmits() throws Exception {
+        InventoryManager manager = new InventoryManager();
+        manager.addItem(new InventoryItem("Pen", 5001, 1_000, "Blue pen", false, false, 1));
+        CompletableFuture<?>[] orders = new CompletableFuture<?>[200];
+        for (int i = 0; i < orders.length; i++) {
+            manager.addItemToCart("close" + i, 5001, 1);
+            orders[i] = manager.createOrderAsync("close" + i);
+        }
+        manager.closeJournal();
+
+        for (CompletableFuture<?> order : orders) {
+            TestSupport.check(order.isDone() && !order.isCompletedExceptionally(), "order queued before close is placed");
+        }
+        TestSupport.checkEquals(800, manager.getItem(5001).getQuantity(), "stock after the orders");
+        TestSupport.checkEquals(200L, manager.getOpenOrderCount(), "open orders");
+    }
+
+    private static void notPlacedOrder() {
+        InventoryManager manager = new InventoryManager();
+        manager.addItem(new InventoryItem("Ink", 5002, 1, "Black ink", false, false, 5));
+        manager.addItemToCart("short", 5002, 1);
+        //The stock runs out after the cart was filled
+        manager.setQuantity(5002, 0);
+        CompletionException error = TestSupport.checkThrows(CompletionException.class,
+                () -> manager.createOrderAsync("short").join(), "order without enough stock");
+        TestSupport.check(error.getCause() instanceof IllegalArgumentException, "not enough stock is an IllegalArgumentException");
+        TestSupport.check(!manager.getCart("short").isEmpty(), "cart gets its items back");
+        TestSupport.checkEquals(0, manager.getItem(5002).getQuantity(), "stock is not taken");
+    }
+
+    private static void submitAfterClose() {
+        OrderPipeline pipeline = new OrderPipeline(new InventoryManager(), 8, 4);
+        pipeline.close();
+        TestSupport.checkThrows(IllegalStateException.class, () -> pipeline.submit(new IntIntMap(), () -> { }),
+                "submit after close");
+    }
+
+    //Every future handed out while close runs has to complete, none may be left behind by the consumer
+    private static void submitsRacingClose() throws Exception {
+        InventoryManager manager = new InventoryManager();
+        manager.addItem(new InventoryItem("Clip", 5003, 100_000_000, "Paper clip", false, false, 1));
+        for (int round = 0; round < 100; round++) {
+            OrderPipeline pipeline = new OrderPipeline(manager, 8, 4);
+            ConcurrentLinkedQueue<CompletableFuture<Order>> orders = new ConcurrentLinkedQueue<>();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] producers = new Thread[4];
+            for (int t = 0; t < producers.length; t++) {
+                producers[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    while (true) {
+                        IntIntMap items = new IntIntMap();
+                        items.put(5003, 1);
+                        try {
+                            orders.add(pipeline.submit(items, () -> { }));
+                        } catch (IllegalStateException e) {
+                            return;
+                        }
+                    }
+                });
+                producers[t].start();
+            }
+            start.countDown();
+            Thread.sleep(round % 3);
+            pipeline.close();
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            for (CompletableFuture<Order> order : orders) {
+                TestSupport.check(order.get(10, TimeUnit.SECONDS) != null, "order submitted before close is placed");
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Class with the checks the tests share. The tests are plain programs without a test framework,
+ * a failed check throws an AssertionError which ends the run.
+ */
+
+public final class TestSupport {
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    private TestSupport() {
+
+    }
+
+    public static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void checkEquals(Object expected, Object actual, String message) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError(message + ", expected " + expected + " but was " + actual);
+        }
+    }
+
+    /**
+     * Runs an action which has to throw an exception of the given type.
+     *
+     * @return The thrown exception.
+     */
+    public static <T extends Throwable> T checkThrows(Class<T> type, Action action, String message) {
+        try {
+            action.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e)) {
+                return type.cast(e);
+            }
+            throw new AssertionError(message + ", threw " + e, e);
+        }
+        throw new AssertionError(message + ", nothing was thrown");
+    }
+
+    /**
+     * Creates an empty directory for the files of a test.
+     */
+    public static Path newDirectory(String prefix) throws IOException {
+        Path directory = Files.createTempDirectory(prefix);
+        directory.toFile().deleteOnExit();
+        return directory;
+    }
+}